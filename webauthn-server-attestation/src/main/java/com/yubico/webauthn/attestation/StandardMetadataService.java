@@ -13,6 +13,7 @@ import com.google.common.hash.Hashing;
 import com.google.common.io.CharStreams;
 import com.google.common.io.Closeables;
 import com.yubico.internal.util.ExceptionUtil;
+import com.yubico.internal.util.FlightRecorder;
 import com.yubico.webauthn.attestation.matcher.ExtensionMatcher;
 import com.yubico.webauthn.attestation.matcher.FingerprintMatcher;
 import com.yubico.webauthn.attestation.resolver.SimpleResolver;
@@ -43,6 +44,20 @@ public class StandardMetadataService implements MetadataService {
     private static final String TRANSPORTS = "transports";
     private static final String TRANSPORTS_EXT_OID = "1.3.6.1.4.1.45724.2.1.1";
 
+    /**
+     * A Java Flight Recorder event for each {@link #getAttestation(X509Certificate)} call, recording whether the
+     * attestation was found in the cache and whether it is trusted.
+     */
+    private static final FlightRecorder.EventType LOOKUP_EVENT = FlightRecorder.eventType(
+        "com.yubico.webauthn.attestation.MetadataLookup",
+        "WebAuthn Metadata Lookup",
+        "WebAuthn",
+        ImmutableMap.of(
+            "cacheHit", boolean.class,
+            "outcome", String.class
+        )
+    );
+
     private static final Map<String, DeviceMatcher> DEFAULT_DEVICE_MATCHERS = ImmutableMap.of(
             ExtensionMatcher.SELECTOR_TYPE, new ExtensionMatcher(),
             FingerprintMatcher.SELECTOR_TYPE, new FingerprintMatcher()
@@ -114,9 +129,19 @@ public class StandardMetadataService implements MetadataService {
     }
 
     public Attestation getAttestation(@NonNull final X509Certificate attestationCertificate) throws CertificateEncodingException {
+        final FlightRecorder.Event event = LOOKUP_EVENT.begin();
         try {
             final String fingerprint = Hashing.sha1().hashBytes(attestationCertificate.getEncoded()).toString();
-            return cache.get(fingerprint, () -> lookupAttestation(attestationCertificate));
+            final boolean[] loaded = { false };
+            final Attestation attestation = cache.get(fingerprint, () -> {
+                loaded[0] = true;
+                return lookupAttestation(attestationCertificate);
+            });
+            event
+                .set("cacheHit", !loaded[0])
+                .set("outcome", attestation.isTrusted() ? "TRUSTED" : "UNTRUSTED")
+                .commit();
+            return attestation;
         } catch (ExecutionException e) {
             throw ExceptionUtil.wrapAndLog(logger, "Failed to look up attestation information for certificate: " + attestationCertificate, e);
         }
@@ -0,0 +1,148 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.data.AssertionRequest;
+import com.yubico.webauthn.data.AuthenticatorAssertionResponse;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.ClientAssertionExtensionOutputs;
+import com.yubico.webauthn.data.PublicKeyCredential;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import com.yubico.webauthn.data.PublicKeyCredentialRequestOptions;
+import com.yubico.webauthn.data.RelyingPartyIdentity;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Shared fixture for the JMH benchmarks: a single valid assertion and a credential repository that knows about it.
+ * <p>
+ * The values are the same as the defaults in <code>RelyingPartyAssertionSpec</code>.
+ */
+final class BenchmarkData {
+
+    static final RelyingPartyIdentity RP_ID = RelyingPartyIdentity.builder().name("Test party").id("localhost").build();
+
+    static final ByteArray AUTHENTICATOR_DATA = hex("49960de5880e8c687434170f6476605b8fe4aeb9a28632c7995cf3ba831d97630100000539");
+    static final ByteArray CLIENT_DATA_JSON = new ByteArray(
+        "{\"challenge\":\"AAEBAgMFCA0VIjdZEGl5Yls\",\"origin\":\"localhost\",\"hashAlgorithm\":\"SHA-256\",\"type\":\"webauthn.get\",\"tokenBinding\":{\"status\":\"supported\"}}"
+            .getBytes(StandardCharsets.UTF_8)
+    );
+    static final ByteArray CHALLENGE = base64Url("AAEBAgMFCA0VIjdZEGl5Yls");
+    static final ByteArray CREDENTIAL_ID = base64Url("aqFjEQkzH8I55SnmIyNM632MsPI_qZ60aGTSHZMwcKY");
+    static final ByteArray CREDENTIAL_PUBLIC_KEY_X509 = hex("3059301306072a8648ce3d020106082a8648ce3d03010703420004d8020a2ec718c2c595bb890fcdaf9b81cc742118efdbb8812ac4a9dd5ace2990ec22a48faf1544df0fe5fe0e2e7a69720e63a83d7f46aa022f1323eaf7967762");
+    static final ByteArray SIGNATURE = hex("30450221008d478e4c24894d261c7fd3790363ba9687facf4dd1d59610933a2c292cffc3d902205069264c167833d239d6af4c7bf7326c4883fb8c3517a2c86318aa3060d8b441");
+
+    static final String USERNAME = "foo-user";
+    static final ByteArray USER_HANDLE = hex("6d8972d9603ce4f3fa5d520ce6d024bf");
+
+    private BenchmarkData() {
+    }
+
+    static PublicKey credentialPublicKey() {
+        try {
+            return KeyFactory.getInstance("ECDSA", new BouncyCastleCrypto().getProvider())
+                .generatePublic(new X509EncodedKeySpec(CREDENTIAL_PUBLIC_KEY_X509.getBytes()));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static RegisteredCredential registeredCredential() {
+        return RegisteredCredential.builder()
+            .credentialId(CREDENTIAL_ID)
+            .userHandle(USER_HANDLE)
+            .publicKey(credentialPublicKey())
+            .signatureCount(0)
+            .build();
+    }
+
+    static CredentialRepository credentialRepository() {
+        final RegisteredCredential credential = registeredCredential();
+
+        return new CredentialRepository() {
+            @Override
+            public Set<PublicKeyCredentialDescriptor> getCredentialIdsForUsername(String username) {
+                return Collections.singleton(PublicKeyCredentialDescriptor.builder().id(CREDENTIAL_ID).build());
+            }
+
+            @Override
+            public Optional<ByteArray> getUserHandleForUsername(String username) {
+                return USERNAME.equals(username) ? Optional.of(USER_HANDLE) : Optional.empty();
+            }
+
+            @Override
+            public Optional<String> getUsernameForUserHandle(ByteArray userHandle) {
+                return USER_HANDLE.equals(userHandle) ? Optional.of(USERNAME) : Optional.empty();
+            }
+
+            @Override
+            public Optional<RegisteredCredential> lookup(ByteArray credentialId, ByteArray userHandle) {
+                return CREDENTIAL_ID.equals(credentialId) ? Optional.of(credential) : Optional.empty();
+            }
+
+            @Override
+            public Set<RegisteredCredential> lookupAll(ByteArray credentialId) {
+                return CREDENTIAL_ID.equals(credentialId) ? Collections.singleton(credential) : Collections.emptySet();
+            }
+        };
+    }
+
+    static RelyingParty.RelyingPartyBuilder relyingParty() {
+        return RelyingParty.builder()
+            .rp(RP_ID)
+            .origins(Collections.singletonList(RP_ID.getId()))
+            .preferredPubkeyParams(Collections.emptyList())
+            .credentialRepository(credentialRepository());
+    }
+
+    static AssertionRequest assertionRequest() {
+        return AssertionRequest.builder()
+            .username(Optional.of(USERNAME))
+            .publicKeyCredentialRequestOptions(PublicKeyCredentialRequestOptions.builder()
+                .rpId(Optional.of(RP_ID.getId()))
+                .challenge(CHALLENGE)
+                .allowCredentials(Optional.of(Collections.singletonList(PublicKeyCredentialDescriptor.builder().id(CREDENTIAL_ID).build())))
+                .build()
+            )
+            .build();
+    }
+
+    static PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> assertionResponse() {
+        try {
+            return PublicKeyCredential.<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs>builder()
+                .id(CREDENTIAL_ID)
+                .response(new AuthenticatorAssertionResponse(AUTHENTICATOR_DATA, CLIENT_DATA_JSON, SIGNATURE, USER_HANDLE))
+                .clientExtensionResults(ClientAssertionExtensionOutputs.builder().build())
+                .build();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static FinishAssertionOptions finishAssertionOptions() {
+        return FinishAssertionOptions.builder()
+            .request(assertionRequest())
+            .response(assertionResponse())
+            .build();
+    }
+
+    private static ByteArray hex(String hex) {
+        try {
+            return ByteArray.fromHex(hex);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static ByteArray base64Url(String base64) {
+        try {
+            return ByteArray.fromBase64Url(base64);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
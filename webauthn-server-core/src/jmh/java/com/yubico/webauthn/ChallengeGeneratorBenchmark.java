@@ -0,0 +1,82 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.data.ByteArray;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares {@link StripedChallengeGenerator} and {@link RandomChallengeGenerator} throughput with a varying number of
+ * threads generating challenges at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(ChallengeGeneratorBenchmark.CHALLENGES_PER_INVOCATION)
+public class ChallengeGeneratorBenchmark {
+
+    static final int CHALLENGES_PER_INVOCATION = 4096;
+
+    @Param({ "1", "2", "4", "8", "16", "32", "64" })
+    public int threads;
+
+    private ChallengeGenerator random;
+    private ChallengeGenerator striped;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() {
+        random = new RandomChallengeGenerator();
+        striped = StripedChallengeGenerator.builder().build();
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public void randomChallengeGenerator(Blackhole blackhole) throws ExecutionException, InterruptedException {
+        generate(random, blackhole);
+    }
+
+    @Benchmark
+    public void stripedChallengeGenerator(Blackhole blackhole) throws ExecutionException, InterruptedException {
+        generate(striped, blackhole);
+    }
+
+    private void generate(ChallengeGenerator generator, Blackhole blackhole) throws ExecutionException, InterruptedException {
+        final int perThread = CHALLENGES_PER_INVOCATION / threads;
+        final List<Callable<ByteArray>> tasks = new ArrayList<>(threads);
+        for (int i = 0; i < threads; ++i) {
+            tasks.add(() -> {
+                ByteArray last = null;
+                for (int j = 0; j < perThread; ++j) {
+                    last = generator.generateChallenge();
+                }
+                return last;
+            });
+        }
+        for (Future<ByteArray> result : executor.invokeAll(tasks)) {
+            blackhole.consume(result.get());
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.data.ByteArray;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Compares {@link PooledBouncyCastleCrypto} with {@link BouncyCastleCrypto}, which looks up a new JCA engine and curve
+ * for every call, in one thread and in as many threads as there are processors.
+ */
+public class CryptoBenchmark {
+
+    @State(Scope.Benchmark)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public abstract static class Base {
+
+        @Param({ "BouncyCastleCrypto", "PooledBouncyCastleCrypto" })
+        public String implementation;
+
+        private Crypto crypto;
+        private PublicKey publicKey;
+        private ByteArray encodedPublicKey;
+        private ByteArray signedBytes;
+
+        @Setup
+        public void setup() {
+            crypto = implementation.equals("BouncyCastleCrypto") ? new BouncyCastleCrypto() : new PooledBouncyCastleCrypto();
+            publicKey = BenchmarkData.credentialPublicKey();
+
+            // The uncompressed EC point at the end of the X.509 encoding
+            final byte[] x509 = BenchmarkData.CREDENTIAL_PUBLIC_KEY_X509.getBytes();
+            encodedPublicKey = new ByteArray(Arrays.copyOfRange(x509, x509.length - 65, x509.length));
+
+            signedBytes = BenchmarkData.AUTHENTICATOR_DATA.concat(crypto.hash(BenchmarkData.CLIENT_DATA_JSON));
+        }
+
+        @Benchmark
+        public boolean verifySignature() {
+            return crypto.verifySignature(publicKey, signedBytes, BenchmarkData.SIGNATURE);
+        }
+
+        @Benchmark
+        public PublicKey decodePublicKey() {
+            return crypto.decodePublicKey(encodedPublicKey);
+        }
+
+        @Benchmark
+        public ByteArray hash() {
+            return crypto.hash(BenchmarkData.CLIENT_DATA_JSON);
+        }
+
+    }
+
+    @Threads(1)
+    public static class SingleThread extends Base {
+    }
+
+    @Threads(Threads.MAX)
+    public static class AllProcessors extends Base {
+    }
+
+}
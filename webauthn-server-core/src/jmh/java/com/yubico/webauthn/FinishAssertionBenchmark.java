@@ -0,0 +1,68 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.data.AssertionResult;
+import com.yubico.webauthn.data.AuthenticatorAssertionResponse;
+import com.yubico.webauthn.data.AuthenticatorData;
+import com.yubico.webauthn.exception.AssertionFailedException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures a complete {@link RelyingParty#finishAssertion(FinishAssertionOptions)} call.
+ * <p>
+ * Run with the <code>gc</code> profiler (enabled by default in the <code>jmh</code> task) and compare
+ * <code>gc.alloc.rate.norm</code> to see the per-assertion allocation cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FinishAssertionBenchmark {
+
+    private RelyingParty rp;
+    private FinishAssertionOptions options;
+
+    @Setup
+    public void setup() {
+        rp = BenchmarkData.relyingParty().build();
+        options = BenchmarkData.finishAssertionOptions();
+    }
+
+    @Benchmark
+    public AssertionResult finishAssertion() throws AssertionFailedException {
+        return rp.finishAssertion(options);
+    }
+
+    /**
+     * The step-by-step reference implementation, for comparison with the single-pass engine run by {@link
+     * #finishAssertion()}.
+     */
+    @Benchmark
+    public AssertionResult finishAssertionStepByStep() {
+        return rp._finishAssertion(options.getRequest(), options.getResponse(), options.getCallerTokenBindingId()).run();
+    }
+
+    @Benchmark
+    public AssertionResult parseAndFinishAssertion() throws AssertionFailedException {
+        return rp.finishAssertion(BenchmarkData.finishAssertionOptions());
+    }
+
+    /**
+     * Accesses the parsed authenticator data as many times as a single assertion ceremony does.
+     */
+    @Benchmark
+    public void parsedAuthenticatorDataAccess(Blackhole bh) {
+        final AuthenticatorAssertionResponse response = options.getResponse().getResponse();
+        for (int i = 0; i < 6; ++i) {
+            AuthenticatorData authData = response.getParsedAuthenticatorData();
+            bh.consume(authData.getFlags());
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.yubico.webauthn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures {@link RelyingParty#finishAssertions(List, java.util.concurrent.Executor)} throughput with a varying
+ * number of executor threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(FinishAssertionsBatchBenchmark.BATCH_SIZE)
+public class FinishAssertionsBatchBenchmark {
+
+    static final int BATCH_SIZE = 1024;
+
+    @Param({ "1", "2", "4", "8", "16" })
+    public int threads;
+
+    private RelyingParty rp;
+    private List<FinishAssertionOptions> batch;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() {
+        rp = BenchmarkData.relyingParty().build();
+        batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; ++i) {
+            batch.add(BenchmarkData.finishAssertionOptions());
+        }
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public List<AssertionOutcome> finishAssertions() {
+        return rp.finishAssertions(batch, executor);
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.yubico.webauthn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares {@link OriginMatcher#fromPatterns(java.util.Collection)} with a linear scan over the same number of exact
+ * origins, as done before the introduction of {@link RelyingPartyContext}.
+ * <p>
+ * Half of the configured patterns are exact origins and half are subdomain patterns, each for a different tenant.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OriginMatcherBenchmark {
+
+    @Param({ "10", "1000", "10000" })
+    public int origins;
+
+    private List<String> exactOrigins;
+    private OriginMatcher matcher;
+
+    private String lastExactOrigin;
+    private String lastSubdomainOrigin;
+    private String unknownOrigin;
+
+    @Setup
+    public void setup() {
+        exactOrigins = new ArrayList<>(origins);
+        final List<String> patterns = new ArrayList<>(origins);
+        for (int i = 0; i < origins; ++i) {
+            exactOrigins.add("https://tenant" + i + ".example.com");
+            patterns.add(i % 2 == 0
+                ? "https://tenant" + i + ".example.com"
+                : "https://*.tenant" + i + ".example.org:{443,8443}"
+            );
+        }
+        matcher = OriginMatcher.fromPatterns(patterns);
+
+        lastExactOrigin = "https://tenant" + (origins - 2) + ".example.com";
+        lastSubdomainOrigin = "https://login.tenant" + (origins - 1) + ".example.org:8443";
+        unknownOrigin = "https://evil.example.net";
+    }
+
+    @Benchmark
+    public boolean linearScanHit() {
+        return exactOrigins.stream().anyMatch(o -> o.equals(lastExactOrigin));
+    }
+
+    @Benchmark
+    public boolean linearScanMiss() {
+        return exactOrigins.stream().anyMatch(o -> o.equals(unknownOrigin));
+    }
+
+    @Benchmark
+    public boolean matcherExactHit() {
+        return matcher.isAllowed(lastExactOrigin);
+    }
+
+    @Benchmark
+    public boolean matcherSubdomainHit() {
+        return matcher.isAllowed(lastSubdomainOrigin);
+    }
+
+    @Benchmark
+    public boolean matcherMiss() {
+        return matcher.isAllowed(unknownOrigin);
+    }
+
+}
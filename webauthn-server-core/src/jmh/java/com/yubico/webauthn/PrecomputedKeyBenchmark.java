@@ -0,0 +1,77 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.data.ByteArray;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.jce.interfaces.ECPublicKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares {@link PooledBouncyCastleCrypto#verifySignature(PublicKey, ByteArray, ByteArray)} for a hot key, which is
+ * verified with a precomputed table, with cold keys, which each come around again only after the {@link
+ * PrecomputedKeyVerifier} has forgotten them.
+ * <p>
+ * As in a ceremony, where the credential repository returns a newly built key each time, every call decodes the key
+ * before verifying with it.
+ * <p>
+ * The <code>baseline</code> implementation is the plain {@link BouncyCastleCrypto}, which shows whether tracking keys
+ * makes cold keys any slower.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PrecomputedKeyBenchmark {
+
+    private static final int COLD_KEYS = 4 * PrecomputedKeyVerifier.DEFAULT_CAPACITY;
+
+    @Param({ "hot", "cold" })
+    public String key;
+
+    @Param({ "pooled", "baseline" })
+    public String implementation;
+
+    private Crypto crypto;
+    private ByteArray[] publicKeys;
+    private ByteArray[] signatures;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        crypto = implementation.equals("pooled") ? new PooledBouncyCastleCrypto() : new BouncyCastleCrypto();
+
+        final int count = key.equals("hot") ? 1 : COLD_KEYS;
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("ECDSA", BouncyCastleCrypto.provider);
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        final Signature signer = Signature.getInstance("SHA256withECDSA", BouncyCastleCrypto.provider);
+
+        publicKeys = new ByteArray[count];
+        signatures = new ByteArray[count];
+        for (int i = 0; i < count; ++i) {
+            final KeyPair keypair = generator.generateKeyPair();
+            signer.initSign(keypair.getPrivate());
+            signer.update(BenchmarkData.AUTHENTICATOR_DATA.getBytes());
+            publicKeys[i] = new ByteArray(((ECPublicKey) keypair.getPublic()).getQ().getEncoded(false));
+            signatures[i] = new ByteArray(signer.sign());
+        }
+    }
+
+    @Benchmark
+    public boolean verifySignature() {
+        final int i = next;
+        next = (next + 1) % publicKeys.length;
+        return crypto.verifySignature(crypto.decodePublicKey(publicKeys[i]), BenchmarkData.AUTHENTICATOR_DATA, signatures[i]);
+    }
+
+}
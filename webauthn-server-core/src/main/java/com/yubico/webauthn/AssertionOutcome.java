@@ -0,0 +1,37 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.data.AssertionResult;
+import java.util.Optional;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * The outcome of {@link RelyingParty#tryFinishAssertion(FinishAssertionOptions)}: either an {@link AssertionResult}
+ * or a {@link CeremonyFailure} describing why {@link RelyingParty#finishAssertion(FinishAssertionOptions)} would have
+ * failed for the same input.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class AssertionOutcome {
+
+    @NonNull
+    private final Optional<AssertionResult> result;
+
+    @NonNull
+    private final Optional<CeremonyFailure> failure;
+
+    static AssertionOutcome success(@NonNull AssertionResult result) {
+        return new AssertionOutcome(Optional.of(result), Optional.empty());
+    }
+
+    static AssertionOutcome failure(@NonNull CeremonyFailure failure) {
+        return new AssertionOutcome(Optional.empty(), Optional.of(failure));
+    }
+
+    public boolean isSuccess() {
+        return result.isPresent();
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+
+/**
+ * A non-blocking variant of {@link CredentialRepository}, used by the asynchronous ceremony methods of {@link
+ * RelyingParty}.
+ * <p>
+ * Each method has the same semantics as the {@link CredentialRepository} method of the same name, but returns a
+ * {@link CompletionStage} instead of blocking until the result is available.
+ */
+public interface AsyncCredentialRepository {
+
+    CompletionStage<Set<PublicKeyCredentialDescriptor>> getCredentialIdsForUsername(String username);
+
+    CompletionStage<Optional<ByteArray>> getUserHandleForUsername(String username);
+
+    CompletionStage<Optional<String>> getUsernameForUserHandle(ByteArray userHandle);
+
+    CompletionStage<Optional<RegisteredCredential>> lookup(ByteArray credentialId, ByteArray userHandle);
+
+    CompletionStage<Set<RegisteredCredential>> lookupAll(ByteArray credentialId);
+
+    /**
+     * Adapt a blocking {@link CredentialRepository} by running each of its calls on <code>executor</code>.
+     * <p>
+     * This keeps the blocking I/O off the threads that call the asynchronous methods of {@link RelyingParty}, but
+     * <code>executor</code> still needs enough threads to cover the concurrent repository calls.
+     */
+    static AsyncCredentialRepository fromBlocking(CredentialRepository credentialRepository, Executor executor) {
+        return new BlockingAsyncCredentialRepository(credentialRepository, executor);
+    }
+
+}
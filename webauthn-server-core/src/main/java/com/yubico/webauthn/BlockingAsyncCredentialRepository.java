@@ -0,0 +1,53 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+
+
+/**
+ * Runs the calls of a blocking {@link CredentialRepository} on an {@link Executor}.
+ *
+ * @see AsyncCredentialRepository#fromBlocking(CredentialRepository, Executor)
+ */
+@AllArgsConstructor
+class BlockingAsyncCredentialRepository implements AsyncCredentialRepository {
+
+    @NonNull
+    private final CredentialRepository credentialRepository;
+
+    @NonNull
+    private final Executor executor;
+
+    @Override
+    public CompletionStage<Set<PublicKeyCredentialDescriptor>> getCredentialIdsForUsername(String username) {
+        return CompletableFuture.supplyAsync(() -> credentialRepository.getCredentialIdsForUsername(username), executor);
+    }
+
+    @Override
+    public CompletionStage<Optional<ByteArray>> getUserHandleForUsername(String username) {
+        return CompletableFuture.supplyAsync(() -> credentialRepository.getUserHandleForUsername(username), executor);
+    }
+
+    @Override
+    public CompletionStage<Optional<String>> getUsernameForUserHandle(ByteArray userHandle) {
+        return CompletableFuture.supplyAsync(() -> credentialRepository.getUsernameForUserHandle(userHandle), executor);
+    }
+
+    @Override
+    public CompletionStage<Optional<RegisteredCredential>> lookup(ByteArray credentialId, ByteArray userHandle) {
+        return CompletableFuture.supplyAsync(() -> credentialRepository.lookup(credentialId, userHandle), executor);
+    }
+
+    @Override
+    public CompletionStage<Set<RegisteredCredential>> lookupAll(ByteArray credentialId) {
+        return CompletableFuture.supplyAsync(() -> credentialRepository.lookupAll(credentialId), executor);
+    }
+
+}
@@ -10,6 +10,7 @@
 package com.yubico.webauthn;
 
 import com.yubico.webauthn.data.ByteArray;
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
 import java.security.MessageDigest;
@@ -27,7 +28,7 @@ import org.bouncycastle.math.ec.ECPoint;
 
 class BouncyCastleCrypto implements Crypto {
 
-    private static final Provider provider = new BouncyCastleProvider();
+    static final Provider provider = new BouncyCastleProvider();
 
     public Provider getProvider() {
         return provider;
@@ -41,23 +42,35 @@ class BouncyCastleCrypto implements Crypto {
     @Override
     public boolean verifySignature(PublicKey publicKey, ByteArray signedBytes, ByteArray signature) {
         try {
-            Signature ecdsaSignature = Signature.getInstance("SHA256withECDSA", provider);
+            Signature ecdsaSignature = sha256WithEcdsaSignature();
             ecdsaSignature.initVerify(publicKey);
             ecdsaSignature.update(signedBytes.getBytes());
             return ecdsaSignature.verify(signature.getBytes());
         } catch (GeneralSecurityException e) {
-            throw new RuntimeException(
-                String.format(
-                    "Failed to verify signature. This could be a problem with your JVM environment, or a bug in webauthn-server-core. Public key: %s, signed data: %s , signature: %s",
-                    publicKey,
-                    signedBytes.getBase64Url(),
-                    signature.getBase64Url()
-                ),
-                e
-            );
+            throw verificationFailed(publicKey, signedBytes, signature, e);
         }
     }
 
+    /**
+     * @return a {@link Signature} for verifying signatures by EC credential and attestation keys. Callers must
+     * initialize it before each use.
+     */
+    Signature sha256WithEcdsaSignature() throws NoSuchAlgorithmException {
+        return Signature.getInstance("SHA256withECDSA", provider);
+    }
+
+    static RuntimeException verificationFailed(PublicKey publicKey, ByteArray signedBytes, ByteArray signature, GeneralSecurityException e) {
+        return new RuntimeException(
+            String.format(
+                "Failed to verify signature. This could be a problem with your JVM environment, or a bug in webauthn-server-core. Public key: %s, signed data: %s , signature: %s",
+                publicKey,
+                signedBytes.getBase64Url(),
+                signature.getBase64Url()
+            ),
+            e
+        );
+    }
+
     @Override
     public PublicKey decodePublicKey(ByteArray encodedPublicKey) {
         try {
@@ -101,6 +114,6 @@ class BouncyCastleCrypto implements Crypto {
 
     @Override
     public ByteArray hash(String str) {
-        return hash(new ByteArray(str.getBytes()));
+        return hash(new ByteArray(str.getBytes(StandardCharsets.UTF_8)));
     }
 }
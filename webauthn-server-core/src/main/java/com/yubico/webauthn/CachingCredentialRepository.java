@@ -0,0 +1,89 @@
+package com.yubico.webauthn;
+
+import COSE.CoseException;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import java.io.IOException;
+import java.security.PublicKey;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+
+
+/**
+ * Adapts a {@link CoseCredentialRepository} to a {@link CredentialRepository}, decoding public keys through a {@link
+ * PublicKeyCache}.
+ *
+ * @see PublicKeyCache#decorate(CoseCredentialRepository)
+ */
+@AllArgsConstructor
+final class CachingCredentialRepository implements CredentialRepository {
+
+    @NonNull
+    private final CoseCredentialRepository credentialRepository;
+
+    @NonNull
+    private final PublicKeyCache cache;
+
+    @Override
+    public Set<PublicKeyCredentialDescriptor> getCredentialIdsForUsername(String username) {
+        return credentialRepository.getCredentialIdsForUsername(username);
+    }
+
+    @Override
+    public Optional<ByteArray> getUserHandleForUsername(String username) {
+        return credentialRepository.getUserHandleForUsername(username);
+    }
+
+    @Override
+    public Optional<String> getUsernameForUserHandle(ByteArray userHandle) {
+        return credentialRepository.getUsernameForUserHandle(userHandle);
+    }
+
+    @Override
+    public Optional<RegisteredCredential> lookup(ByteArray credentialId, ByteArray userHandle) {
+        return credentialRepository.lookup(credentialId, userHandle).map(this::decode);
+    }
+
+    @Override
+    public Set<RegisteredCredential> lookupAll(ByteArray credentialId) {
+        return Collections.unmodifiableSet(
+            credentialRepository.lookupAll(credentialId).stream()
+                .map(this::decode)
+                .collect(Collectors.toSet())
+        );
+    }
+
+    @Override
+    public Map<ByteArray, RegisteredCredential> lookupBatch(Map<ByteArray, ByteArray> userHandlesByCredentialId) {
+        final Map<ByteArray, CoseCredential> found = credentialRepository.lookupBatch(userHandlesByCredentialId);
+        final Map<ByteArray, RegisteredCredential> result = new HashMap<>(found.size());
+        found.forEach((credentialId, credential) -> result.put(credentialId, decode(credential)));
+        return result;
+    }
+
+    private RegisteredCredential decode(CoseCredential credential) {
+        final PublicKey publicKey;
+        try {
+            publicKey = cache.importCoseP256PublicKey(credential.getCredentialId(), credential.getPublicKeyCose());
+        } catch (CoseException | IOException | RuntimeException e) {
+            throw new IllegalArgumentException(
+                "Could not decode public key of credential: " + credential.getCredentialId().getBase64Url(),
+                e
+            );
+        }
+
+        return RegisteredCredential.builder()
+            .credentialId(credential.getCredentialId())
+            .userHandle(credential.getUserHandle())
+            .publicKey(publicKey)
+            .signatureCount(credential.getSignatureCount())
+            .build();
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.yubico.webauthn;
+
+import java.util.Arrays;
+import java.util.Optional;
+import lombok.NonNull;
+
+
+/**
+ * Describes why a registration or authentication ceremony failed, without the cost of constructing an exception.
+ * <p>
+ * The failure message is the same as that of the exception thrown by the corresponding throwing method of {@link
+ * RelyingParty}, but is not formatted until {@link #getMessage()} is called.
+ */
+public final class CeremonyFailure {
+
+    private final CeremonyFailureReason reason;
+    private final String messageTemplate;
+    private final Object[] messageArgs;
+    private final Throwable cause;
+
+    private CeremonyFailure(@NonNull CeremonyFailureReason reason, @NonNull String messageTemplate, @NonNull Object[] messageArgs, Throwable cause) {
+        this.reason = reason;
+        this.messageTemplate = messageTemplate;
+        this.messageArgs = messageArgs;
+        this.cause = cause;
+    }
+
+    static CeremonyFailure of(CeremonyFailureReason reason, String messageTemplate, Object... messageArgs) {
+        return new CeremonyFailure(reason, messageTemplate, messageArgs, null);
+    }
+
+    /**
+     * Report an {@link IllegalArgumentException} thrown by a validation helper as a failure with the same message and
+     * cause.
+     */
+    static CeremonyFailure fromException(CeremonyFailureReason reason, IllegalArgumentException e) {
+        return new CeremonyFailure(reason, String.valueOf(e.getMessage()), new Object[0], e.getCause());
+    }
+
+    static CeremonyFailure withCause(CeremonyFailureReason reason, String message, Throwable cause) {
+        return new CeremonyFailure(reason, message, new Object[0], cause);
+    }
+
+    public CeremonyFailureReason getReason() {
+        return reason;
+    }
+
+    public String getMessage() {
+        return messageArgs.length == 0 ? messageTemplate : String.format(messageTemplate, messageArgs);
+    }
+
+    public Optional<Throwable> getCause() {
+        return Optional.ofNullable(cause);
+    }
+
+    /**
+     * @return the exception that the throwing variants of the ceremony methods report this failure as.
+     */
+    IllegalArgumentException toException() {
+        return new IllegalArgumentException(getMessage(), cause);
+    }
+
+    @Override
+    public String toString() {
+        return "CeremonyFailure(reason=" + reason + ", message=" + getMessage() + ")";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        } else if (!(o instanceof CeremonyFailure)) {
+            return false;
+        } else {
+            final CeremonyFailure other = (CeremonyFailure) o;
+            return reason == other.reason
+                && messageTemplate.equals(other.messageTemplate)
+                && Arrays.equals(messageArgs, other.messageArgs);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * reason.hashCode() + messageTemplate.hashCode();
+    }
+
+}
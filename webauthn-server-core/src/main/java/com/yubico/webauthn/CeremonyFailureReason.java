@@ -0,0 +1,125 @@
+package com.yubico.webauthn;
+
+
+/**
+ * The reason why a registration or authentication ceremony failed, as reported by {@link CeremonyFailure#getReason()}.
+ */
+public enum CeremonyFailureReason {
+
+    /**
+     * Neither a username nor a user handle was given, or no user was found for the one that was given.
+     */
+    USER_NOT_FOUND,
+
+    /**
+     * The credential was not in the <code>allowCredentials</code> of the request.
+     */
+    CREDENTIAL_NOT_ALLOWED,
+
+    /**
+     * The credential was not found in the credential repository.
+     */
+    CREDENTIAL_NOT_FOUND,
+
+    /**
+     * The credential is registered to a different user than the one identified in the request or response.
+     */
+    USER_HANDLE_MISMATCH,
+
+    /**
+     * The credential is already registered.
+     */
+    CREDENTIAL_ALREADY_REGISTERED,
+
+    /**
+     * A required part of the response was missing or could not be processed.
+     */
+    MALFORMED_RESPONSE,
+
+    /**
+     * The <code>type</code> in the client data was wrong.
+     */
+    WRONG_CLIENT_DATA_TYPE,
+
+    /**
+     * The challenge in the client data did not match the one in the request.
+     */
+    WRONG_CHALLENGE,
+
+    /**
+     * The challenge has already been used in a successful authentication ceremony, or the replay cache was too full
+     * to remember it.
+     *
+     * @see RelyingParty#getReplayCache()
+     */
+    REPLAYED_CHALLENGE,
+
+    /**
+     * The origin in the client data was not accepted.
+     */
+    WRONG_ORIGIN,
+
+    /**
+     * The token binding in the client data did not match the one given by the caller.
+     */
+    TOKEN_BINDING_MISMATCH,
+
+    /**
+     * The RP ID hash in the authenticator data did not match the RP ID or the AppID.
+     */
+    WRONG_RP_ID_HASH,
+
+    /**
+     * User verification was required but the UV flag was not set.
+     */
+    USER_VERIFICATION_REQUIRED,
+
+    /**
+     * The UP flag was not set.
+     */
+    USER_PRESENCE_REQUIRED,
+
+    /**
+     * The response contained extensions that were not requested.
+     */
+    UNREQUESTED_EXTENSIONS,
+
+    /**
+     * The assertion or attestation signature was invalid.
+     */
+    INVALID_SIGNATURE,
+
+    /**
+     * The signature counter did not increase.
+     */
+    SIGNATURE_COUNTER_NOT_INCREASED,
+
+    /**
+     * The attestation statement format is not supported.
+     */
+    UNSUPPORTED_ATTESTATION_FORMAT,
+
+    /**
+     * The attestation type could not be determined.
+     */
+    UNKNOWN_ATTESTATION_TYPE,
+
+    /**
+     * No trust anchors were available for verifying the attestation.
+     */
+    NO_ATTESTATION_TRUST_ANCHORS,
+
+    /**
+     * The attestation was not trusted and untrusted attestation is not allowed.
+     */
+    UNTRUSTED_ATTESTATION,
+
+    /**
+     * An unexpected exception was thrown while verifying one assertion of a batch, for example because its signature
+     * could not be decoded. The exception is the {@link CeremonyFailure#getCause() cause} of the failure.
+     *
+     * @see RelyingParty#finishAssertions(java.util.List)
+     */
+    VERIFICATION_ERROR
+
+}
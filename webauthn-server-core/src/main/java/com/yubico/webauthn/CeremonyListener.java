@@ -0,0 +1,71 @@
+package com.yubico.webauthn;
+
+import java.util.Optional;
+
+
+/**
+ * Receives timings of each step of the registration and authentication ceremonies verified by a {@link RelyingParty},
+ * and their outcomes.
+ * <p>
+ * Steps are named after the numbered steps of the ceremonies in the Web Authentication specification:
+ * <code>"Step1"</code>, <code>"Step2"</code> and so on, with <code>"Step0"</code> for identifying the user of an
+ * authentication ceremony. Steps that have nothing to do, such as step 5 of the authentication ceremony, are not
+ * reported. The replay check of {@link RelyingParty#getReplayCache()}, which is not part of the specification, is
+ * reported as {@value #REPLAY_CHECK_STEP}. Steps are reported in the order they are run, which depends on {@link
+ * RelyingParty#isValidateCheapestFirst()}.
+ * <p>
+ * All callbacks for one ceremony are made on the thread that verifies it, but callbacks for different ceremonies may
+ * be made concurrently, so implementations must be thread-safe. They should also be fast, since they are called
+ * inline; any exception they throw propagates to the caller of the {@link RelyingParty} method.
+ * <p>
+ * All methods do nothing by default.
+ *
+ * @see RelyingParty#getCeremonyListener()
+ */
+public interface CeremonyListener {
+
+    /**
+     * The name under which the replay check of {@link RelyingParty#getReplayCache()} is reported.
+     */
+    String REPLAY_CHECK_STEP = "ReplayCheck";
+
+    /**
+     * Called before the first step of a ceremony.
+     */
+    default void ceremonyStarted(CeremonyType ceremony) {
+    }
+
+    /**
+     * Called when a step begins.
+     */
+    default void stepStarted(CeremonyType ceremony, String step) {
+    }
+
+    /**
+     * Called when a step ends, whether it succeeded or not.
+     *
+     * @param durationNanos the time spent in the step, as measured by {@link System#nanoTime()}.
+     */
+    default void stepFinished(CeremonyType ceremony, String step, long durationNanos) {
+    }
+
+    /**
+     * Called when a ceremony ends with a result, after {@link #stepFinished(CeremonyType, String, long)} for its last
+     * step.
+     *
+     * @param failureReason the reason the ceremony failed, or empty if it succeeded.
+     * @param durationNanos the time spent in the whole ceremony, as measured by {@link System#nanoTime()}.
+     */
+    default void ceremonyFinished(CeremonyType ceremony, Optional<CeremonyFailureReason> failureReason, long durationNanos) {
+    }
+
+    /**
+     * Called instead of {@link #ceremonyFinished(CeremonyType, Optional, long)} when a ceremony ends with an unexpected
+     * exception, for example from the credential repository.
+     *
+     * @param durationNanos the time spent in the whole ceremony, as measured by {@link System#nanoTime()}.
+     */
+    default void ceremonyAborted(CeremonyType ceremony, RuntimeException exception, long durationNanos) {
+    }
+
+}
@@ -0,0 +1,226 @@
+package com.yubico.webauthn;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+import static com.yubico.internal.util.ExceptionUtil.assure;
+
+
+/**
+ * Counts the ceremonies verified by a {@link RelyingParty}, and keeps latency histograms of them and of each of their
+ * steps, without any external metrics library.
+ * <p>
+ * For each {@link CeremonyType}, this keeps one histogram of all ceremonies, one of successful ceremonies, one for each
+ * {@link CeremonyFailureReason} that has occurred, and one for each step, as well as a count of ceremonies aborted by
+ * an exception. Comparing the step histograms tells for example whether a slow ceremony is waiting for the credential
+ * repository (step 2 of the authentication ceremony) or for signature verification (step 16).
+ * <p>
+ * Recording takes no locks: counters are {@link LongAdder}s and histograms are fixed-size arrays of buckets, both
+ * striped between threads. Each histogram takes about 5 KB per stripe. Percentiles are accurate to within 1/16 of the
+ * reported value.
+ *
+ * @see RelyingParty#getMetrics()
+ */
+public final class CeremonyMetrics implements CeremonyListener {
+
+    private final int stripes;
+    private final Clock clock;
+    private final Instant started;
+    private final Map<CeremonyType, PerCeremony> ceremonies = new EnumMap<>(CeremonyType.class);
+
+    /**
+     * @param stripes the number of stripes in each histogram, rounded up to a power of two. Default: the number of
+     * available processors, but at most 4.
+     * @param clock the clock used to compute rates. Default: {@link Clock#systemUTC()}.
+     */
+    @Builder
+    private CeremonyMetrics(Integer stripes, Clock clock) {
+        final int requestedStripes = stripes == null ? Math.min(4, Runtime.getRuntime().availableProcessors()) : stripes;
+        assure(requestedStripes > 0 && requestedStripes <= 64, "Number of stripes must be between 1 and 64.");
+
+        int stripeCount = Integer.highestOneBit(requestedStripes);
+        if (stripeCount < requestedStripes) {
+            stripeCount <<= 1;
+        }
+        this.stripes = stripeCount;
+        this.clock = clock == null ? Clock.systemUTC() : clock;
+        this.started = this.clock.instant();
+
+        for (CeremonyType ceremony : CeremonyType.values()) {
+            ceremonies.put(ceremony, new PerCeremony());
+        }
+    }
+
+    @Override
+    public void stepFinished(CeremonyType ceremony, String step, long durationNanos) {
+        ceremonies.get(ceremony).steps.computeIfAbsent(step, s -> new LatencyHistogram(stripes)).record(durationNanos);
+    }
+
+    @Override
+    public void ceremonyFinished(CeremonyType ceremony, Optional<CeremonyFailureReason> failureReason, long durationNanos) {
+        final PerCeremony metrics = ceremonies.get(ceremony);
+        metrics.all.record(durationNanos);
+        if (failureReason.isPresent()) {
+            metrics.failure(failureReason.get()).record(durationNanos);
+        } else {
+            metrics.successes.record(durationNanos);
+        }
+    }
+
+    @Override
+    public void ceremonyAborted(CeremonyType ceremony, RuntimeException exception, long durationNanos) {
+        final PerCeremony metrics = ceremonies.get(ceremony);
+        metrics.all.record(durationNanos);
+        metrics.aborted.increment();
+    }
+
+    /**
+     * @return the current counts and latencies. Rates are averages over the time since this object was created.
+     */
+    public Snapshot snapshot() {
+        final Instant now = clock.instant();
+        final Duration elapsed = Duration.between(started, now);
+        final long elapsedNanos = elapsed.toNanos();
+
+        final Map<CeremonyType, CeremonySnapshot> result = new EnumMap<>(CeremonyType.class);
+        for (Map.Entry<CeremonyType, PerCeremony> entry : ceremonies.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().snapshot(elapsedNanos));
+        }
+
+        return new Snapshot(now, elapsed, Collections.unmodifiableMap(result));
+    }
+
+    private final class PerCeremony {
+        private final LatencyHistogram all = new LatencyHistogram(stripes);
+        private final LatencyHistogram successes = new LatencyHistogram(stripes);
+        private final AtomicReferenceArray<LatencyHistogram> failures = new AtomicReferenceArray<>(CeremonyFailureReason.values().length);
+        private final LongAdder aborted = new LongAdder();
+        private final ConcurrentHashMap<String, LatencyHistogram> steps = new ConcurrentHashMap<>();
+
+        /**
+         * @return the histogram for <code>reason</code>, created on first use so that reasons that never occur take no
+         * memory.
+         */
+        private LatencyHistogram failure(CeremonyFailureReason reason) {
+            final LatencyHistogram existing = failures.get(reason.ordinal());
+            if (existing != null) {
+                return existing;
+            }
+            failures.compareAndSet(reason.ordinal(), null, new LatencyHistogram(stripes));
+            return failures.get(reason.ordinal());
+        }
+
+        private CeremonySnapshot snapshot(long elapsedNanos) {
+            final Map<CeremonyFailureReason, LatencySnapshot> failureSnapshots = new EnumMap<>(CeremonyFailureReason.class);
+            for (CeremonyFailureReason reason : CeremonyFailureReason.values()) {
+                final LatencyHistogram histogram = failures.get(reason.ordinal());
+                if (histogram != null) {
+                    failureSnapshots.put(reason, histogram.snapshot(elapsedNanos));
+                }
+            }
+
+            final Map<String, LatencySnapshot> stepSnapshots = new TreeMap<>();
+            for (Map.Entry<String, LatencyHistogram> step : steps.entrySet()) {
+                stepSnapshots.put(step.getKey(), step.getValue().snapshot(elapsedNanos));
+            }
+
+            return CeremonySnapshot.builder()
+                .all(all.snapshot(elapsedNanos))
+                .successes(successes.snapshot(elapsedNanos))
+                .failures(Collections.unmodifiableMap(failureSnapshots))
+                .aborted(aborted.sum())
+                .steps(Collections.unmodifiableMap(stepSnapshots))
+                .build();
+        }
+    }
+
+    /**
+     * The counts and latencies of all ceremonies at one point in time.
+     */
+    @Value
+    public static class Snapshot {
+
+        /**
+         * When this snapshot was taken.
+         */
+        @NonNull
+        private final Instant timestamp;
+
+        /**
+         * The time since the {@link CeremonyMetrics} was created, over which rates are averaged.
+         */
+        @NonNull
+        private final Duration elapsed;
+
+        @NonNull
+        private final Map<CeremonyType, CeremonySnapshot> ceremonies;
+
+        public CeremonySnapshot getCeremony(CeremonyType ceremony) {
+            return ceremonies.get(ceremony);
+        }
+
+    }
+
+    /**
+     * The counts and latencies of one {@link CeremonyType}.
+     */
+    @Value
+    @Builder
+    public static class CeremonySnapshot {
+
+        /**
+         * All ceremonies, whether they succeeded, failed or were aborted.
+         */
+        @NonNull
+        private final LatencySnapshot all;
+
+        @NonNull
+        private final LatencySnapshot successes;
+
+        /**
+         * Failed ceremonies by failure reason. Reasons that have not occurred are absent.
+         */
+        @NonNull
+        private final Map<CeremonyFailureReason, LatencySnapshot> failures;
+
+        /**
+         * The number of ceremonies aborted by an exception.
+         */
+        private final long aborted;
+
+        /**
+         * The latencies of each step, by the step names reported to {@link CeremonyListener}.
+         */
+        @NonNull
+        private final Map<String, LatencySnapshot> steps;
+
+    }
+
+    /**
+     * The count, rate and latency percentiles of one kind of event. All durations are in nanoseconds.
+     */
+    @Value
+    @Builder
+    public static class LatencySnapshot {
+        private final long count;
+        private final double ratePerSecond;
+        private final long meanNanos;
+        private final long p50Nanos;
+        private final long p99Nanos;
+        private final long p999Nanos;
+        private final long maxNanos;
+    }
+
+}
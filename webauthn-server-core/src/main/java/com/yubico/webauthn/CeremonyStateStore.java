@@ -0,0 +1,33 @@
+package com.yubico.webauthn;
+
+import java.util.Optional;
+
+
+/**
+ * Holds the state of registration and authentication ceremonies &ndash; typically the request returned by {@link
+ * RelyingParty#startRegistration(StartRegistrationOptions)} or {@link RelyingParty#startAssertion(StartAssertionOptions)}
+ * &ndash; between the start and finish calls.
+ * <p>
+ * Implementations must be thread-safe, and must never return the same stored value from {@link #take(Object)} more
+ * than once, so that a pending ceremony cannot be finished twice.
+ *
+ * @param <K> the type of the keys that identify pending ceremonies, for example a random request ID.
+ * @param <V> the type of the stored ceremony state.
+ * @see InMemoryCeremonyStateStore
+ */
+public interface CeremonyStateStore<K, V> {
+
+    /**
+     * Store <code>value</code> under <code>key</code> until it is taken or expires, replacing any previous value for
+     * the same key.
+     */
+    void put(K key, V value);
+
+    /**
+     * Atomically remove and return the value stored under <code>key</code>.
+     *
+     * @return the stored value, or empty if there is none or it has expired.
+     */
+    Optional<V> take(K key);
+
+}
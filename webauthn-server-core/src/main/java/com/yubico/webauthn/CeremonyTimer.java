@@ -0,0 +1,159 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.attestation.MetadataService;
+import java.util.Optional;
+
+
+/**
+ * Reports the steps of one ceremony to a {@link CeremonyListener}, and the ceremony itself as a span to a {@link
+ * Tracer}.
+ * <p>
+ * {@link #NONE} is used when there is neither a listener nor a tracer; its methods return immediately, so that
+ * verification without them neither reads the clock nor allocates anything.
+ */
+final class CeremonyTimer {
+
+    static final CeremonyTimer NONE = new CeremonyTimer(null, null, null, null);
+
+    private final CeremonyListener listener;
+    private final Tracer tracer;
+    private final Tracer.Span span;
+    private final CeremonyType ceremony;
+    private long ceremonyStart;
+    private String step;
+    private long stepStart;
+
+    private CeremonyTimer(CeremonyListener listener, Tracer tracer, Tracer.Span span, CeremonyType ceremony) {
+        this.listener = listener;
+        this.tracer = tracer;
+        this.span = span;
+        this.ceremony = ceremony;
+    }
+
+    /**
+     * @param rpId the RP ID to add to the ceremony span.
+     */
+    static CeremonyTimer start(Optional<CeremonyListener> listener, Optional<Tracer> tracer, CeremonyType ceremony, String rpId) {
+        if (!listener.isPresent() && !tracer.isPresent()) {
+            return NONE;
+        }
+
+        final Tracer.Span span = tracer.map(t ->
+            t.startSpan("webauthn." + ceremony.name().toLowerCase(), Optional.empty())
+                .setAttribute("webauthn.rp_id", rpId)
+        ).orElse(null);
+        final CeremonyTimer timer = new CeremonyTimer(listener.orElse(null), tracer.orElse(null), span, ceremony);
+        if (timer.listener != null) {
+            timer.listener.ceremonyStarted(ceremony);
+            timer.ceremonyStart = System.nanoTime();
+        }
+        return timer;
+    }
+
+    /**
+     * Add an attribute to the ceremony span, if there is one.
+     */
+    void setAttribute(String key, String value) {
+        if (span != null && value != null) {
+            span.setAttribute(key, value);
+        }
+    }
+
+    /**
+     * Add an attribute to the ceremony span, if there is one.
+     */
+    void setAttribute(String key, long value) {
+        if (span != null) {
+            span.setAttribute(key, value);
+        }
+    }
+
+    /**
+     * @return <code>credentialRepository</code>, wrapped to open child spans of the ceremony span if there is one.
+     */
+    CredentialRepository trace(CredentialRepository credentialRepository) {
+        return span == null ? credentialRepository : new TracingCredentialRepository(credentialRepository, tracer, span);
+    }
+
+    /**
+     * @return <code>metadataService</code>, wrapped to open child spans of the ceremony span if there is one.
+     */
+    MetadataService trace(MetadataService metadataService) {
+        return span == null ? metadataService : new TracingMetadataService(metadataService, tracer, span);
+    }
+
+    /**
+     * End the current step, if any, and begin the step named <code>name</code>.
+     */
+    void step(String name) {
+        if (this != NONE) {
+            endStep();
+            step = name;
+            if (listener != null) {
+                listener.stepStarted(ceremony, name);
+                stepStart = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * End the current step and report the ceremony as ended with the given outcome.
+     */
+    void finish(Optional<CeremonyFailure> failure) {
+        if (this != NONE) {
+            final String lastStep = step;
+            endStep();
+            if (listener != null) {
+                listener.ceremonyFinished(ceremony, failure.map(CeremonyFailure::getReason), System.nanoTime() - ceremonyStart);
+            }
+            if (span != null) {
+                if (failure.isPresent()) {
+                    endSpan("FAILURE", lastStep)
+                        .setAttribute("webauthn.failure_reason", failure.get().getReason().name())
+                        .end();
+                } else {
+                    span.setAttribute("webauthn.outcome", "SUCCESS").end();
+                }
+            }
+        }
+    }
+
+    /**
+     * End the current step and report the ceremony as ended with the given exception.
+     */
+    void abort(RuntimeException exception) {
+        if (this != NONE) {
+            final String lastStep = step;
+            endStep();
+            if (listener != null) {
+                listener.ceremonyAborted(ceremony, exception, System.nanoTime() - ceremonyStart);
+            }
+            if (span != null) {
+                endSpan("ABORTED", lastStep)
+                    .setAttribute("error.type", exception.getClass().getName())
+                    .end();
+            }
+        }
+    }
+
+    private Tracer.Span endSpan(String outcome, String failureStep) {
+        span
+            .setAttribute("webauthn.outcome", outcome)
+            .setAttribute("error", true);
+        if (failureStep != null) {
+            span.setAttribute("webauthn.failure_step", failureStep);
+        }
+        return span;
+    }
+
+    private void endStep() {
+        if (step != null) {
+            final String ended = step;
+            step = null;
+            if (listener != null) {
+                listener.stepFinished(ceremony, ended, System.nanoTime() - stepStart);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.yubico.webauthn;
+
+
+/**
+ * The kind of ceremony reported to a {@link CeremonyListener}.
+ */
+public enum CeremonyType {
+
+    /**
+     * {@link RelyingParty#finishRegistration(FinishRegistrationOptions)} and its variants.
+     */
+    REGISTRATION,
+
+    /**
+     * {@link RelyingParty#finishAssertion(FinishAssertionOptions)} and its variants.
+     */
+    ASSERTION
+
+}
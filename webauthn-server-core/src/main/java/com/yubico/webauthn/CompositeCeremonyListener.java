@@ -0,0 +1,50 @@
+package com.yubico.webauthn;
+
+import java.util.Optional;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+
+
+/**
+ * Reports every callback to two {@link CeremonyListener}s, in order.
+ */
+@AllArgsConstructor
+final class CompositeCeremonyListener implements CeremonyListener {
+
+    @NonNull
+    private final CeremonyListener first;
+
+    @NonNull
+    private final CeremonyListener second;
+
+    @Override
+    public void ceremonyStarted(CeremonyType ceremony) {
+        first.ceremonyStarted(ceremony);
+        second.ceremonyStarted(ceremony);
+    }
+
+    @Override
+    public void stepStarted(CeremonyType ceremony, String step) {
+        first.stepStarted(ceremony, step);
+        second.stepStarted(ceremony, step);
+    }
+
+    @Override
+    public void stepFinished(CeremonyType ceremony, String step, long durationNanos) {
+        first.stepFinished(ceremony, step, durationNanos);
+        second.stepFinished(ceremony, step, durationNanos);
+    }
+
+    @Override
+    public void ceremonyFinished(CeremonyType ceremony, Optional<CeremonyFailureReason> failureReason, long durationNanos) {
+        first.ceremonyFinished(ceremony, failureReason, durationNanos);
+        second.ceremonyFinished(ceremony, failureReason, durationNanos);
+    }
+
+    @Override
+    public void ceremonyAborted(CeremonyType ceremony, RuntimeException exception, long durationNanos) {
+        first.ceremonyAborted(ceremony, exception, durationNanos);
+        second.ceremonyAborted(ceremony, exception, durationNanos);
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.data.ByteArray;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+
+/**
+ * A {@link RegisteredCredential} whose public key is still in the COSE encoding it was registered with.
+ *
+ * @see CoseCredentialRepository
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Builder
+public class CoseCredential {
+
+    @NonNull
+    private final ByteArray credentialId;
+
+    @NonNull
+    private final ByteArray userHandle;
+
+    @NonNull
+    private final ByteArray publicKeyCose;
+
+    private final long signatureCount;
+
+}
@@ -0,0 +1,42 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+
+/**
+ * A variant of {@link CredentialRepository} for storage that keeps public keys in COSE form, such as the
+ * <code>publicKeyCose</code> of a registration result.
+ * <p>
+ * Each method has the same semantics as the {@link CredentialRepository} method of the same name, but returns the
+ * public keys undecoded. Use {@link PublicKeyCache#decorate(CoseCredentialRepository)} to adapt it to a {@link
+ * CredentialRepository} that decodes each key only once.
+ */
+public interface CoseCredentialRepository {
+
+    Set<PublicKeyCredentialDescriptor> getCredentialIdsForUsername(String username);
+
+    Optional<ByteArray> getUserHandleForUsername(String username);
+
+    Optional<String> getUsernameForUserHandle(ByteArray userHandle);
+
+    Optional<CoseCredential> lookup(ByteArray credentialId, ByteArray userHandle);
+
+    Set<CoseCredential> lookupAll(ByteArray credentialId);
+
+    /**
+     * @see CredentialRepository#lookupBatch(Map)
+     */
+    default Map<ByteArray, CoseCredential> lookupBatch(Map<ByteArray, ByteArray> userHandlesByCredentialId) {
+        Map<ByteArray, CoseCredential> result = new HashMap<>(userHandlesByCredentialId.size());
+        userHandlesByCredentialId.forEach((credentialId, userHandle) ->
+            lookup(credentialId, userHandle).ifPresent(credential -> result.put(credentialId, credential))
+        );
+        return result;
+    }
+
+}
@@ -2,6 +2,8 @@ package com.yubico.webauthn;
 
 import com.yubico.webauthn.data.ByteArray;
 import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -18,4 +20,23 @@ public interface CredentialRepository {
 
     Set<RegisteredCredential> lookupAll(ByteArray credentialId);
 
+    /**
+     * Look up several credentials at once, for example using a single database query.
+     * <p>
+     * This is used by {@link RelyingParty#finishAssertions(java.util.List)}. The default implementation calls {@link
+     * #lookup(ByteArray, ByteArray)} once for each entry; implementations backed by remote storage should override it.
+     *
+     * @param userHandlesByCredentialId the user handle to look up each credential ID for, as in {@link
+     *                                  #lookup(ByteArray, ByteArray)}.
+     * @return the credentials that were found, keyed by credential ID. Credential IDs that were not found must be absent
+     * from the returned map.
+     */
+    default Map<ByteArray, RegisteredCredential> lookupBatch(Map<ByteArray, ByteArray> userHandlesByCredentialId) {
+        Map<ByteArray, RegisteredCredential> result = new HashMap<>(userHandlesByCredentialId.size());
+        userHandlesByCredentialId.forEach((credentialId, userHandle) ->
+            lookup(credentialId, userHandle).ifPresent(credential -> result.put(credentialId, credential))
+        );
+        return result;
+    }
+
 }
@@ -0,0 +1,409 @@
+package com.yubico.webauthn;
+
+import com.yubico.internal.util.FlightRecorder;
+import com.yubico.webauthn.data.AssertionRequest;
+import com.yubico.webauthn.data.AssertionResult;
+import com.yubico.webauthn.data.AuthenticatorAssertionResponse;
+import com.yubico.webauthn.data.AuthenticatorData;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.ClientAssertionExtensionOutputs;
+import com.yubico.webauthn.data.CollectedClientData;
+import com.yubico.webauthn.data.PublicKeyCredential;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import com.yubico.webauthn.data.PublicKeyCredentialRequestOptions;
+import com.yubico.webauthn.data.UserVerificationRequirement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import lombok.Builder;
+
+
+/**
+ * Runs the same validations as {@link FinishAssertionSteps}, in the same order and with the same failure messages, but
+ * in a single method without intermediate step objects or warnings list copies.
+ * <p>
+ * {@link FinishAssertionSteps} is kept as the step-by-step reference implementation that the test suite inspects;
+ * this class is what {@link RelyingParty#finishAssertion(FinishAssertionOptions)} runs. Any change to one must be
+ * mirrored in the other.
+ * <p>
+ * If <code>validateCheapestFirst</code> is set, step 1 and steps 4 through 14 are instead run before any credential
+ * repository lookup, so that malformed or forged responses are rejected without I/O. The failure messages are the same
+ * in both modes, but a response with several faults may be rejected for a different one of them.
+ * <p>
+ * If a <code>replayCache</code> is given, the request's challenge is checked against it before anything else, and added
+ * to it when the assertion has been verified. This check is not part of the specification and has no counterpart in
+ * {@link FinishAssertionSteps}.
+ * <p>
+ * If a <code>listener</code> is given, the start and end of each step are reported to it. If a <code>tracer</code> is
+ * given, the ceremony is reported to it as a span, with a child span for each credential repository call.
+ * <p>
+ * If an <code>executor</code> is given, the credential repository lookups of steps 0 and 2 are started on it as soon as
+ * the ceremony begins, and step 1 and steps 4 through 14 run in the meantime as if <code>validateCheapestFirst</code>
+ * were set. If one of those fails, the lookups are cancelled if they have not yet started, and their results are
+ * discarded otherwise. Step 0 is then reported to the <code>listener</code> as the time spent waiting for the lookups.
+ */
+@Builder
+class FinishAssertionSinglePass {
+
+    private static final String CLIENT_DATA_TYPE = "webauthn.get";
+
+    private final AssertionRequest request;
+    private final PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> response;
+    private final Optional<ByteArray> callerTokenBindingId;
+    private final RelyingPartyContext context;
+    private final Crypto crypto;
+    private final CredentialRepository credentialRepository;
+
+    @Builder.Default
+    private final boolean allowMissingTokenBinding = false;
+    @Builder.Default
+    private final boolean validateTypeAttribute = true;
+    @Builder.Default
+    private final boolean validateSignatureCounter = true;
+    @Builder.Default
+    private final boolean allowUnrequestedExtensions = false;
+    @Builder.Default
+    private final boolean validateCheapestFirst = false;
+    @Builder.Default
+    private final Optional<ReplayCache> replayCache = Optional.empty();
+    @Builder.Default
+    private final Optional<CeremonyListener> listener = Optional.empty();
+    @Builder.Default
+    private final Optional<Tracer> tracer = Optional.empty();
+    @Builder.Default
+    private final Optional<Executor> executor = Optional.empty();
+
+    public AssertionResult run() {
+        final AssertionOutcome outcome = outcome();
+        if (outcome.isSuccess()) {
+            return outcome.getResult().get();
+        } else {
+            throw outcome.getFailure().get().toException();
+        }
+    }
+
+    /**
+     * Like {@link #run()}, but reports validation failures as an {@link AssertionOutcome} instead of throwing
+     * exceptions.
+     */
+    public AssertionOutcome outcome() {
+        final FlightRecorder.Event event = FlightRecorderEvents.CEREMONY.begin();
+        final CeremonyTimer timer = CeremonyTimer.start(listener, tracer, CeremonyType.ASSERTION, context.getRpId());
+        timer.setAttribute("webauthn.credential_id_length", response.getId().size());
+        final CompletableFuture<PrefetchedCredentialRepository> prefetch = executor.map(e -> {
+            final CredentialRepository tracedRepository = timer.trace(credentialRepository);
+            return CompletableFuture.supplyAsync(() -> PrefetchedCredentialRepository.prefetch(tracedRepository, request, response), e);
+        }).orElse(null);
+        final AssertionOutcome outcome;
+        try {
+            outcome = verify(timer, prefetch);
+        } catch (RuntimeException e) {
+            timer.abort(e);
+            FlightRecorderEvents.commit(event, CeremonyType.ASSERTION, response.getId(), null, "ABORTED");
+            throw e;
+        } finally {
+            Futures.cancel(prefetch);
+        }
+        timer.finish(outcome.getFailure());
+        FlightRecorderEvents.commit(event, CeremonyType.ASSERTION, response.getId(), null, FlightRecorderEvents.outcome(outcome.getFailure()));
+        return outcome;
+    }
+
+    /**
+     * @param prefetch the credential repository lookups started on the <code>executor</code>, or <code>null</code>
+     * if there is no executor.
+     */
+    private AssertionOutcome verify(CeremonyTimer timer, CompletableFuture<PrefetchedCredentialRepository> prefetch) {
+        final boolean validateCheapestFirst = this.validateCheapestFirst || prefetch != null;
+        final AuthenticatorAssertionResponse assertionResponse = response.getResponse();
+        final ByteArray credentialId = response.getId();
+        final List<String> warnings = new ArrayList<>(0);
+        CeremonyFailure failure;
+
+        if ((failure = validateNotReplayed(timer)) != null) {
+            return AssertionOutcome.failure(failure);
+        }
+
+        if (validateCheapestFirst) {
+            if ((failure = validateAllowedCredential(timer)) != null || (failure = validateWithoutCredential(warnings, timer)) != null) {
+                return AssertionOutcome.failure(failure);
+            }
+        }
+
+        // Step 0: identify the user
+        timer.step("Step0");
+        final CredentialRepository credentialRepository = prefetch == null ? timer.trace(this.credentialRepository) : Futures.join(prefetch);
+        if (!request.getUsername().isPresent() && !assertionResponse.getUserHandle().isPresent()) {
+            return AssertionOutcome.failure(CeremonyFailure.of(
+                CeremonyFailureReason.USER_NOT_FOUND,
+                "At least one of username and user handle must be given; none was."
+            ));
+        }
+        final Optional<ByteArray> maybeUserHandle = assertionResponse.getUserHandle().isPresent()
+            ? assertionResponse.getUserHandle()
+            : credentialRepository.getUserHandleForUsername(request.getUsername().get());
+        if (!maybeUserHandle.isPresent()) {
+            return AssertionOutcome.failure(noUserFound());
+        }
+        final Optional<String> maybeUsername = request.getUsername().isPresent()
+            ? request.getUsername()
+            : credentialRepository.getUsernameForUserHandle(assertionResponse.getUserHandle().get());
+        if (!maybeUsername.isPresent()) {
+            return AssertionOutcome.failure(noUserFound());
+        }
+        final ByteArray userHandle = maybeUserHandle.get();
+
+        if (!validateCheapestFirst && (failure = validateAllowedCredential(timer)) != null) {
+            return AssertionOutcome.failure(failure);
+        }
+
+        // Steps 2 and 3
+        timer.step("Step2");
+        final Optional<RegisteredCredential> registration = credentialRepository.lookup(credentialId, userHandle);
+        if (!registration.isPresent()) {
+            return AssertionOutcome.failure(CeremonyFailure.of(
+                CeremonyFailureReason.CREDENTIAL_NOT_FOUND,
+                "Unknown credential: %s", credentialId
+            ));
+        }
+        final RegisteredCredential credential = registration.get();
+        if (!userHandle.equals(credential.getUserHandle())) {
+            return AssertionOutcome.failure(CeremonyFailure.of(
+                CeremonyFailureReason.USER_HANDLE_MISMATCH,
+                "User handle %s does not own credential %s", userHandle, credentialId
+            ));
+        }
+
+        if (!validateCheapestFirst && (failure = validateWithoutCredential(warnings, timer)) != null) {
+            return AssertionOutcome.failure(failure);
+        }
+
+        // Step 15
+        timer.step("Step15");
+        final ByteArray clientDataJsonHash = crypto.hash(assertionResponse.getClientDataJSON());
+        if (clientDataJsonHash == null) {
+            return AssertionOutcome.failure(CeremonyFailure.of(
+                CeremonyFailureReason.MALFORMED_RESPONSE,
+                "Failed to compute hash of client data"
+            ));
+        }
+
+        // Step 16
+        timer.step("Step16");
+        final FlightRecorder.Event verification = FlightRecorderEvents.SIGNATURE_VERIFICATION.begin();
+        final boolean signatureValid = crypto.verifySignature(
+            credential.publicKey,
+            assertionResponse.getAuthenticatorData().concat(clientDataJsonHash),
+            assertionResponse.getSignature()
+        );
+        FlightRecorderEvents.commit(verification, CeremonyType.ASSERTION, credentialId, null, FlightRecorderEvents.outcome(signatureValid));
+        if (!signatureValid) {
+            return AssertionOutcome.failure(CeremonyFailure.of(
+                CeremonyFailureReason.INVALID_SIGNATURE,
+                "Invalid assertion signature."
+            ));
+        }
+
+        // Step 17
+        timer.step("Step17");
+        final long assertionSignatureCount = assertionResponse.getParsedAuthenticatorData().getSignatureCounter();
+        final long storedSignatureCountBefore = credential.getSignatureCount();
+        final boolean signatureCounterValid = assertionSignatureCount == 0 || assertionSignatureCount > storedSignatureCountBefore;
+        if (validateSignatureCounter && !signatureCounterValid) {
+            return AssertionOutcome.failure(CeremonyFailure.of(
+                CeremonyFailureReason.SIGNATURE_COUNTER_NOT_INCREASED,
+                "Signature counter must increase. Stored value: %s, received value: %s",
+                storedSignatureCountBefore, assertionSignatureCount
+            ));
+        }
+
+        // Only remember the challenge once the assertion is known to be valid, so that a forged assertion can't use up a
+        // legitimate user's challenge
+        if (replayCache.isPresent()) {
+            timer.step(CeremonyListener.REPLAY_CHECK_STEP);
+            if (!replayCache.get().add(request.getPublicKeyCredentialRequestOptions().getChallenge())) {
+                return AssertionOutcome.failure(replayed());
+            }
+        }
+
+        return AssertionOutcome.success(AssertionResult.builder()
+            .credentialId(credentialId)
+            .signatureCount(assertionSignatureCount)
+            .signatureCounterValid(signatureCounterValid)
+            .success(true)
+            .username(maybeUsername.get())
+            .userHandle(userHandle)
+            .warnings(warnings.isEmpty() ? Collections.emptyList() : warnings)
+            .build()
+        );
+    }
+
+    /**
+     * Runs the validations that need neither the credential repository nor any signature verification: the replay
+     * check if a <code>replayCache</code> is given, and step 1 and steps 4 through 14 if <code>validateCheapestFirst</code>
+     * is set.
+     *
+     * @return the same failure as {@link #outcome()} would report, if any of them fails.
+     */
+    Optional<CeremonyFailure> precheck() {
+        final CeremonyFailure replayFailure = validateNotReplayed(CeremonyTimer.NONE);
+        if (replayFailure != null) {
+            return Optional.of(replayFailure);
+        } else if (validateCheapestFirst) {
+            final CeremonyFailure failure = validateAllowedCredential(CeremonyTimer.NONE);
+            return Optional.ofNullable(failure == null ? validateWithoutCredential(new ArrayList<>(0), CeremonyTimer.NONE) : failure);
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return the failure, or <code>null</code> if there is no <code>replayCache</code> or the request's challenge is
+     * not in it.
+     */
+    private CeremonyFailure validateNotReplayed(CeremonyTimer timer) {
+        if (replayCache.isPresent()) {
+            timer.step(CeremonyListener.REPLAY_CHECK_STEP);
+            if (replayCache.get().contains(request.getPublicKeyCredentialRequestOptions().getChallenge())) {
+                return replayed();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Step 1.
+     *
+     * @return the failure, or <code>null</code> if the validation succeeded.
+     */
+    private CeremonyFailure validateAllowedCredential(CeremonyTimer timer) {
+        timer.step("Step1");
+        final Optional<List<PublicKeyCredentialDescriptor>> allowCredentials = request.getPublicKeyCredentialRequestOptions().getAllowCredentials();
+        if (allowCredentials.isPresent()) {
+            for (PublicKeyCredentialDescriptor allow : allowCredentials.get()) {
+                if (allow.getId().equals(response.getId())) {
+                    return null;
+                }
+            }
+            return CeremonyFailure.of(CeremonyFailureReason.CREDENTIAL_NOT_ALLOWED, "Unrequested credential ID: %s", response.getId());
+        }
+        return null;
+    }
+
+    /**
+     * Steps 4 through 14.
+     *
+     * @param warnings warnings produced are added to this list.
+     * @param timer the steps are reported to this.
+     * @return the failure, or <code>null</code> if all validations succeeded.
+     */
+    private CeremonyFailure validateWithoutCredential(List<String> warnings, CeremonyTimer timer) {
+        final AuthenticatorAssertionResponse assertionResponse = response.getResponse();
+        final PublicKeyCredentialRequestOptions requestOptions = request.getPublicKeyCredentialRequestOptions();
+
+        // Step 4; step 5 is a no-op
+        timer.step("Step4");
+        if (assertionResponse.getClientDataJSON() == null) {
+            return CeremonyFailure.of(CeremonyFailureReason.MALFORMED_RESPONSE, "Missing client data.");
+        }
+        if (assertionResponse.getAuthenticatorData() == null) {
+            return CeremonyFailure.of(CeremonyFailureReason.MALFORMED_RESPONSE, "Missing authenticator data.");
+        }
+        if (assertionResponse.getSignature() == null) {
+            return CeremonyFailure.of(CeremonyFailureReason.MALFORMED_RESPONSE, "Missing signature.");
+        }
+
+        // Step 6
+        timer.step("Step6");
+        final CollectedClientData clientData = assertionResponse.getClientData();
+        if (clientData == null) {
+            return CeremonyFailure.of(CeremonyFailureReason.MALFORMED_RESPONSE, "Missing client data.");
+        }
+
+        // Step 7
+        timer.step("Step7");
+        if (!CLIENT_DATA_TYPE.equals(clientData.getType())) {
+            final CeremonyFailure failure = CeremonyFailure.of(
+                CeremonyFailureReason.WRONG_CLIENT_DATA_TYPE,
+                "The \"type\" in the client data must be exactly \"%s\", was: %s", CLIENT_DATA_TYPE, clientData.getType()
+            );
+            if (validateTypeAttribute) {
+                return failure;
+            } else {
+                warnings.add(failure.getMessage());
+            }
+        }
+
+        // Step 8
+        timer.step("Step8");
+        if (!requestOptions.getChallenge().equals(clientData.getChallenge())) {
+            return CeremonyFailure.of(CeremonyFailureReason.WRONG_CHALLENGE, "Incorrect challenge.");
+        }
+
+        // Step 9
+        timer.step("Step9");
+        if (!context.isOriginAllowed(clientData.getOrigin())) {
+            return CeremonyFailure.of(CeremonyFailureReason.WRONG_ORIGIN, "Incorrect origin: %s", clientData.getOrigin());
+        }
+
+        // Step 10
+        timer.step("Step10");
+        try {
+            TokenBindingValidator.validate(clientData.getTokenBinding(), callerTokenBindingId);
+        } catch (IllegalArgumentException e) {
+            return CeremonyFailure.fromException(CeremonyFailureReason.TOKEN_BINDING_MISMATCH, e);
+        }
+
+        // Step 11
+        timer.step("Step11");
+        final AuthenticatorData authenticatorData = assertionResponse.getParsedAuthenticatorData();
+        if (!context.isRpIdHashAllowed(authenticatorData.getRpIdHash(), requestOptions.getExtensions().getAppid())) {
+            return CeremonyFailure.of(CeremonyFailureReason.WRONG_RP_ID_HASH, "Wrong RP ID hash.");
+        }
+
+        // Step 12
+        timer.step("Step12");
+        final boolean userVerificationRequired = requestOptions.getUserVerification() == UserVerificationRequirement.REQUIRED;
+        if (userVerificationRequired && !authenticatorData.getFlags().UV) {
+            return CeremonyFailure.of(CeremonyFailureReason.USER_VERIFICATION_REQUIRED, "User Verification is required.");
+        }
+
+        // Step 13
+        timer.step("Step13");
+        if (!userVerificationRequired && !authenticatorData.getFlags().UP) {
+            return CeremonyFailure.of(CeremonyFailureReason.USER_PRESENCE_REQUIRED, "User Presence is required.");
+        }
+
+        // Step 14
+        timer.step("Step14");
+        try {
+            ExtensionsValidation.validate(requestOptions.getExtensions(), response);
+        } catch (RuntimeException e) {
+            if (allowUnrequestedExtensions) {
+                warnings.add(e.getMessage());
+            } else if (e instanceof IllegalArgumentException) {
+                return CeremonyFailure.fromException(CeremonyFailureReason.UNREQUESTED_EXTENSIONS, (IllegalArgumentException) e);
+            } else {
+                throw e;
+            }
+        }
+
+        return null;
+    }
+
+    private static CeremonyFailure replayed() {
+        return CeremonyFailure.of(CeremonyFailureReason.REPLAYED_CHALLENGE, "Challenge has already been used.");
+    }
+
+    private CeremonyFailure noUserFound() {
+        return CeremonyFailure.of(
+            CeremonyFailureReason.USER_NOT_FOUND,
+            "No user found for username: %s, userHandle: %s",
+            request.getUsername(), response.getResponse().getUserHandle()
+        );
+    }
+
+}
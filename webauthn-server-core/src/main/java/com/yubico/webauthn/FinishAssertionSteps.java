@@ -9,7 +9,6 @@ import com.yubico.webauthn.data.ClientAssertionExtensionOutputs;
 import com.yubico.webauthn.data.CollectedClientData;
 import com.yubico.webauthn.data.PublicKeyCredential;
 import com.yubico.webauthn.data.UserVerificationRequirement;
-import com.yubico.webauthn.extension.appid.AppId;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
@@ -31,8 +30,7 @@ class FinishAssertionSteps {
     private final AssertionRequest request;
     private final PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> response;
     private final Optional<ByteArray> callerTokenBindingId;
-    private final List<String> origins;
-    private final String rpId;
+    private final RelyingPartyContext context;
     private final Crypto crypto;
     private final CredentialRepository credentialRepository;
 
@@ -144,7 +142,7 @@ class FinishAssertionSteps {
 
         @Override
         public Step2 nextStep() {
-            return new Step2(username, userHandle, allWarnings());
+            return new Step2(username, userHandle, credentialRepository.lookup(response.getId(), userHandle), allWarnings());
         }
 
         @Override
@@ -163,17 +161,16 @@ class FinishAssertionSteps {
     public class Step2 implements Step<Step1, Step3> {
         private final String username;
         private final ByteArray userHandle;
+        private final Optional<RegisteredCredential> registration;
         private final List<String> prevWarnings;
 
         @Override
         public Step3 nextStep() {
-            return new Step3(username, userHandle, allWarnings());
+            return new Step3(username, userHandle, registration, allWarnings());
         }
 
         @Override
         public void validate() {
-            Optional<RegisteredCredential> registration = credentialRepository.lookup(response.getId(), userHandle);
-
             assure(
                 registration.isPresent(),
                 "Unknown credential: %s",
@@ -192,6 +189,7 @@ class FinishAssertionSteps {
     public class Step3 implements Step<Step2, Step4> {
         private final String username;
         private final ByteArray userHandle;
+        private final Optional<RegisteredCredential> registration;
         private final List<String> prevWarnings;
 
         @Override
@@ -202,18 +200,14 @@ class FinishAssertionSteps {
         @Override
         public void validate() {
             assure(
-                maybeCredential().isPresent(),
+                registration.isPresent(),
                 "Unknown credential. Credential ID: %s, user handle: %s",
                 response.getId(), userHandle
             );
         }
 
-        private Optional<RegisteredCredential> maybeCredential() {
-            return credentialRepository.lookup(response.getId(), userHandle);
-        }
-
         public RegisteredCredential credential() {
-            return maybeCredential().get();
+            return registration.get();
         }
     }
 
@@ -361,7 +355,7 @@ class FinishAssertionSteps {
             final String responseOrigin;
             responseOrigin = response.getResponse().getClientData().getOrigin();
 
-            if (origins.stream().noneMatch(o -> o.equals(responseOrigin))) {
+            if (!context.isOriginAllowed(responseOrigin)) {
                 throw new IllegalArgumentException("Incorrect origin: " + responseOrigin);
             }
         }
@@ -399,22 +393,13 @@ class FinishAssertionSteps {
 
         @Override
         public void validate() {
-            try {
-                assure(
-                    crypto.hash(rpId).equals(response.getResponse().getParsedAuthenticatorData().getRpIdHash()),
-                    "Wrong RP ID hash."
-                );
-            } catch (IllegalArgumentException e) {
-                Optional<AppId> appid = request.getPublicKeyCredentialRequestOptions().getExtensions().getAppid();
-                if (appid.isPresent()) {
-                    assure(
-                        crypto.hash(appid.get().getId()).equals(response.getResponse().getParsedAuthenticatorData().getRpIdHash()),
-                        "Wrong RP ID hash."
-                    );
-                } else {
-                    throw e;
-                }
-            }
+            assure(
+                context.isRpIdHashAllowed(
+                    response.getResponse().getParsedAuthenticatorData().getRpIdHash(),
+                    request.getPublicKeyCredentialRequestOptions().getExtensions().getAppid()
+                ),
+                "Wrong RP ID hash."
+            );
         }
 
         @Override
@@ -544,7 +529,7 @@ class FinishAssertionSteps {
 
         @Override
         public Step17 nextStep() {
-            return new Step17(username, userHandle, allWarnings());
+            return new Step17(username, userHandle, credential, allWarnings());
         }
 
         public ByteArray signedBytes() {
@@ -556,6 +541,7 @@ class FinishAssertionSteps {
     public class Step17 implements Step<Step16, Finished> {
         private final String username;
         private final ByteArray userHandle;
+        private final RegisteredCredential credential;
         private final List<String> prevWarnings;
 
         @Override
@@ -580,9 +566,7 @@ class FinishAssertionSteps {
         }
 
         private long storedSignatureCountBefore() {
-            return credentialRepository.lookup(response.getId(), userHandle)
-                .map(RegisteredCredential::getSignatureCount)
-                .orElse(0L);
+            return credential.getSignatureCount();
         }
 
         private long assertionSignatureCount() {
@@ -0,0 +1,426 @@
+package com.yubico.webauthn;
+
+import COSE.CoseException;
+import com.yubico.internal.util.FlightRecorder;
+import com.yubico.webauthn.attestation.Attestation;
+import com.yubico.webauthn.attestation.MetadataService;
+import com.yubico.webauthn.data.AttestationObject;
+import com.yubico.webauthn.data.AttestationType;
+import com.yubico.webauthn.data.AuthenticatorAttestationResponse;
+import com.yubico.webauthn.data.AuthenticatorData;
+import com.yubico.webauthn.data.AuthenticatorSelectionCriteria;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.ClientRegistrationExtensionOutputs;
+import com.yubico.webauthn.data.CollectedClientData;
+import com.yubico.webauthn.data.PublicKeyCredential;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import com.yubico.webauthn.data.RegistrationResult;
+import com.yubico.webauthn.data.UserVerificationRequirement;
+import java.io.IOException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * Runs the same validations as {@link FinishRegistrationSteps}, in the same order and with the same failure messages,
+ * but in a single method. The client data hash, attestation statement verifier, attestation type, trust resolver and
+ * resolved trust anchor are each computed exactly once.
+ * <p>
+ * {@link FinishRegistrationSteps} is kept as the step-by-step reference implementation that the test suite inspects;
+ * this class is what {@link RelyingParty#finishRegistration(FinishRegistrationOptions)} runs. Any change to one must be
+ * mirrored in the other.
+ * <p>
+ * If a <code>listener</code> is given, the start and end of each step are reported to it. If a <code>tracer</code> is
+ * given, the ceremony is reported to it as a span, with a child span for each credential repository and metadata
+ * service call.
+ * <p>
+ * If an <code>executor</code> is given, trust resolution (the attestation type and steps 15 and 16) and the duplicate
+ * check of step 17 are started on it as soon as the attestation statement format is known, and run concurrently with
+ * the signature verification of step 14. The results are then examined in step order, so the ceremony fails for the
+ * same reason as without an executor, but the credential repository and metadata service may be called even when an
+ * earlier step fails. Steps 15 through 17 are then reported to the <code>listener</code> as the time spent waiting for
+ * their results.
+ */
+@Builder
+@Slf4j
+class FinishRegistrationSinglePass {
+
+    private static final String CLIENT_DATA_TYPE = "webauthn.create";
+
+    private final PublicKeyCredentialCreationOptions request;
+    private final PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> response;
+    private final Optional<ByteArray> callerTokenBindingId;
+    private final RelyingPartyContext context;
+    private final Crypto crypto;
+    private final Boolean allowUntrustedAttestation;
+    private final Optional<MetadataService> metadataService;
+    private final CredentialRepository credentialRepository;
+
+    @Builder.Default
+    private final Boolean allowUnrequestedExtensions = false;
+    @Builder.Default
+    private final Boolean allowMissingTokenBinding = false;
+    @Builder.Default
+    private final Boolean validateTypeAttribute = true;
+    @Builder.Default
+    private final Optional<CeremonyListener> listener = Optional.empty();
+    @Builder.Default
+    private final Optional<Tracer> tracer = Optional.empty();
+    @Builder.Default
+    private final Optional<Executor> executor = Optional.empty();
+
+    public RegistrationResult run() {
+        final RegistrationOutcome outcome = outcome();
+        if (outcome.isSuccess()) {
+            return outcome.getResult().get();
+        } else {
+            throw outcome.getFailure().get().toException();
+        }
+    }
+
+    /**
+     * Like {@link #run()}, but reports validation failures as a {@link RegistrationOutcome} instead of throwing
+     * exceptions.
+     */
+    public RegistrationOutcome outcome() {
+        final FlightRecorder.Event event = FlightRecorderEvents.CEREMONY.begin();
+        final CeremonyTimer timer = CeremonyTimer.start(listener, tracer, CeremonyType.REGISTRATION, context.getRpId());
+        timer.setAttribute("webauthn.credential_id_length", response.getId().size());
+        timer.setAttribute("webauthn.attestation_format", attestationFormat());
+        final RegistrationOutcome outcome;
+        try {
+            outcome = verify(timer);
+        } catch (RuntimeException e) {
+            timer.abort(e);
+            FlightRecorderEvents.commit(event, CeremonyType.REGISTRATION, response.getId(), attestationFormat(), "ABORTED");
+            throw e;
+        }
+        timer.finish(outcome.getFailure());
+        FlightRecorderEvents.commit(event, CeremonyType.REGISTRATION, response.getId(), attestationFormat(), FlightRecorderEvents.outcome(outcome.getFailure()));
+        return outcome;
+    }
+
+    private RegistrationOutcome verify(CeremonyTimer timer) {
+        final CredentialRepository credentialRepository = timer.trace(this.credentialRepository);
+        final Optional<MetadataService> metadataService = this.metadataService.map(timer::trace);
+        final AuthenticatorAttestationResponse attestationResponse = response.getResponse();
+        final List<String> warnings = new ArrayList<>(0);
+
+        // Step 2
+        timer.step("Step2");
+        final CollectedClientData clientData = attestationResponse.getClientData();
+        if (clientData == null) {
+            return RegistrationOutcome.failure(CeremonyFailure.of(CeremonyFailureReason.MALFORMED_RESPONSE, "Client data must not be null."));
+        }
+
+        // Step 3
+        timer.step("Step3");
+        if (!CLIENT_DATA_TYPE.equals(clientData.getType())) {
+            final CeremonyFailure failure = CeremonyFailure.of(
+                CeremonyFailureReason.WRONG_CLIENT_DATA_TYPE,
+                "The \"type\" in the client data must be exactly \"%s\", was: %s", CLIENT_DATA_TYPE, clientData.getType()
+            );
+            if (validateTypeAttribute) {
+                return RegistrationOutcome.failure(failure);
+            } else {
+                warnings.add(failure.getMessage());
+            }
+        }
+
+        // Step 4
+        timer.step("Step4");
+        if (!request.getChallenge().equals(clientData.getChallenge())) {
+            return RegistrationOutcome.failure(CeremonyFailure.of(CeremonyFailureReason.WRONG_CHALLENGE, "Incorrect challenge."));
+        }
+
+        // Step 5
+        timer.step("Step5");
+        if (!context.isOriginAllowed(clientData.getOrigin())) {
+            return RegistrationOutcome.failure(CeremonyFailure.of(CeremonyFailureReason.WRONG_ORIGIN, "Incorrect origin: %s", clientData.getOrigin()));
+        }
+
+        // Step 6
+        timer.step("Step6");
+        try {
+            TokenBindingValidator.validate(clientData.getTokenBinding(), callerTokenBindingId);
+        } catch (IllegalArgumentException e) {
+            return RegistrationOutcome.failure(CeremonyFailure.fromException(CeremonyFailureReason.TOKEN_BINDING_MISMATCH, e));
+        }
+
+        // Step 7
+        timer.step("Step7");
+        final ByteArray clientDataJsonHash = crypto.hash(attestationResponse.getClientDataJSON());
+        if (clientDataJsonHash == null) {
+            return RegistrationOutcome.failure(CeremonyFailure.of(CeremonyFailureReason.MALFORMED_RESPONSE, "Failed to compute hash of client data"));
+        }
+
+        // Step 8
+        timer.step("Step8");
+        final AttestationObject attestation = attestationResponse.getAttestation();
+        if (attestation == null) {
+            return RegistrationOutcome.failure(CeremonyFailure.of(CeremonyFailureReason.MALFORMED_RESPONSE, "Malformed attestation object."));
+        }
+        final AuthenticatorData authenticatorData = attestation.getAuthenticatorData();
+
+        // Step 9
+        timer.step("Step9");
+        if (!context.getRpIdHash().equals(authenticatorData.getRpIdHash())) {
+            return RegistrationOutcome.failure(CeremonyFailure.of(CeremonyFailureReason.WRONG_RP_ID_HASH, "Wrong RP ID hash."));
+        }
+
+        // Step 10
+        timer.step("Step10");
+        final boolean userVerificationRequired = request.getAuthenticatorSelection().map(AuthenticatorSelectionCriteria::getUserVerification).orElse(UserVerificationRequirement.PREFERRED) == UserVerificationRequirement.REQUIRED;
+        if (userVerificationRequired && !authenticatorData.getFlags().UV) {
+            return RegistrationOutcome.failure(CeremonyFailure.of(CeremonyFailureReason.USER_VERIFICATION_REQUIRED, "User Verification is required."));
+        }
+
+        // Step 11
+        timer.step("Step11");
+        if (!userVerificationRequired && !authenticatorData.getFlags().UP) {
+            return RegistrationOutcome.failure(CeremonyFailure.of(CeremonyFailureReason.USER_PRESENCE_REQUIRED, "User Presence is required."));
+        }
+
+        // Step 12
+        timer.step("Step12");
+        try {
+            ExtensionsValidation.validate(request.getExtensions(), response);
+        } catch (RuntimeException e) {
+            if (allowUnrequestedExtensions) {
+                warnings.add(e.getMessage());
+            } else if (e instanceof IllegalArgumentException) {
+                return RegistrationOutcome.failure(CeremonyFailure.fromException(CeremonyFailureReason.UNREQUESTED_EXTENSIONS, (IllegalArgumentException) e));
+            } else {
+                throw e;
+            }
+        }
+
+        // Step 13
+        timer.step("Step13");
+        final AttestationStatementVerifier attestationStatementVerifier = attestationStatementVerifier(attestation.getFormat());
+        if (attestationStatementVerifier == null) {
+            return RegistrationOutcome.failure(CeremonyFailure.of(
+                CeremonyFailureReason.UNSUPPORTED_ATTESTATION_FORMAT,
+                "Unsupported attestation statement format: %s", attestation.getFormat()
+            ));
+        }
+
+        final CompletableFuture<TrustOutcome> trust;
+        final CompletableFuture<Boolean> registered;
+        if (executor.isPresent()) {
+            trust = CompletableFuture.supplyAsync(() -> resolveTrust(attestation, attestationStatementVerifier, metadataService, CeremonyTimer.NONE), executor.get());
+            registered = CompletableFuture.supplyAsync(() -> isRegistered(credentialRepository), executor.get());
+        } else {
+            trust = null;
+            registered = null;
+        }
+
+        try {
+            // Step 14
+            timer.step("Step14");
+            final FlightRecorder.Event verification = FlightRecorderEvents.SIGNATURE_VERIFICATION.begin();
+            try {
+                final boolean signatureValid = attestationStatementVerifier.verifyAttestationSignature(attestation, clientDataJsonHash);
+                FlightRecorderEvents.commit(verification, CeremonyType.REGISTRATION, response.getId(), attestation.getFormat(), FlightRecorderEvents.outcome(signatureValid));
+                if (!signatureValid) {
+                    return RegistrationOutcome.failure(CeremonyFailure.of(CeremonyFailureReason.INVALID_SIGNATURE, "Invalid attestation signature."));
+                }
+            } catch (IllegalArgumentException e) {
+                FlightRecorderEvents.commit(verification, CeremonyType.REGISTRATION, response.getId(), attestation.getFormat(), FlightRecorderEvents.outcome(false));
+                return RegistrationOutcome.failure(CeremonyFailure.fromException(CeremonyFailureReason.MALFORMED_RESPONSE, e));
+            }
+
+            // Steps 15 and 16
+            final TrustOutcome trustOutcome;
+            if (trust == null) {
+                trustOutcome = resolveTrust(attestation, attestationStatementVerifier, metadataService, timer);
+            } else {
+                timer.step("Step15");
+                trustOutcome = Futures.join(trust);
+                timer.step("Step16");
+            }
+            if (trustOutcome.getFailure() != null) {
+                return RegistrationOutcome.failure(trustOutcome.getFailure());
+            }
+            warnings.addAll(trustOutcome.getWarnings());
+
+            // Step 17
+            timer.step("Step17");
+            if (registered == null ? isRegistered(credentialRepository) : Futures.join(registered)) {
+                return RegistrationOutcome.failure(CeremonyFailure.of(
+                    CeremonyFailureReason.CREDENTIAL_ALREADY_REGISTERED,
+                    "Credential ID is already registered: %s", response.getId()
+                ));
+            }
+
+            // Steps 18 and 19 are left to the caller
+
+            return RegistrationOutcome.success(RegistrationResult.builder()
+                .keyId(PublicKeyCredentialDescriptor.builder()
+                    .type(response.getType())
+                    .id(response.getId())
+                    .build()
+                )
+                .attestationTrusted(trustOutcome.isAttestationTrusted())
+                .attestationType(trustOutcome.getAttestationType())
+                .attestationMetadata(trustOutcome.getAttestationMetadata())
+                .publicKeyCose(authenticatorData.getAttestationData().get().getCredentialPublicKey())
+                .warnings(warnings.isEmpty() ? Collections.emptyList() : warnings)
+                .build()
+            );
+        } finally {
+            Futures.cancel(trust, registered);
+        }
+    }
+
+    /**
+     * Resolve the attestation type at the end of step 14, then run steps 15 and 16.
+     *
+     * @param timer steps 15 and 16 are reported to this. Must be {@link CeremonyTimer#NONE} when not run in the
+     * ceremony's own thread.
+     */
+    private TrustOutcome resolveTrust(
+        AttestationObject attestation,
+        AttestationStatementVerifier attestationStatementVerifier,
+        Optional<MetadataService> metadataService,
+        CeremonyTimer timer
+    ) {
+        final List<String> warnings = new ArrayList<>(0);
+
+        final AttestationType attestationType;
+        try {
+            attestationType = attestationStatementVerifier.getAttestationType(attestation);
+        } catch (IOException | CoseException | CertificateException e) {
+            return TrustOutcome.failure(CeremonyFailure.withCause(CeremonyFailureReason.UNKNOWN_ATTESTATION_TYPE, "Failed to resolve attestation type.", e));
+        }
+
+        // Step 15
+        timer.step("Step15");
+        final Optional<AttestationTrustResolver> trustResolver = trustResolver(attestation, attestationType, metadataService);
+        if (!(attestationType == AttestationType.SELF_ATTESTATION || attestationType == AttestationType.NONE || trustResolver.isPresent())) {
+            return TrustOutcome.failure(CeremonyFailure.of(CeremonyFailureReason.NO_ATTESTATION_TRUST_ANCHORS, "Failed to obtain attestation trust anchors."));
+        }
+
+        // Step 16
+        timer.step("Step16");
+        Optional<Attestation> attestationMetadata = Optional.empty();
+        if (trustResolver.isPresent()) {
+            try {
+                attestationMetadata = Optional.of(trustResolver.get().resolveTrustAnchor(attestation));
+            } catch (CertificateEncodingException e) {
+                log.debug("Failed to resolve trust anchor for attestation: {}", attestation, e);
+                warnings.add("Failed to resolve trust anchor: " + e);
+            }
+        }
+
+        final boolean attestationTrusted;
+        switch (attestationType) {
+            case SELF_ATTESTATION:
+                if (!allowUntrustedAttestation) {
+                    return TrustOutcome.failure(CeremonyFailure.of(CeremonyFailureReason.UNTRUSTED_ATTESTATION, "Self attestation is not allowed."));
+                }
+                attestationTrusted = false;
+                break;
+
+            case BASIC:
+                attestationTrusted = attestationMetadata.filter(Attestation::isTrusted).isPresent();
+                if (!allowUntrustedAttestation && !attestationTrusted) {
+                    return TrustOutcome.failure(CeremonyFailure.of(CeremonyFailureReason.UNTRUSTED_ATTESTATION, "Failed to derive trust for attestation key."));
+                }
+                break;
+
+            case NONE:
+                if (!allowUntrustedAttestation) {
+                    return TrustOutcome.failure(CeremonyFailure.of(CeremonyFailureReason.UNTRUSTED_ATTESTATION, "No attestation is not allowed."));
+                }
+                attestationTrusted = false;
+                break;
+
+            default:
+                throw new UnsupportedOperationException("Attestation type not implemented: " + attestationType);
+        }
+
+        return new TrustOutcome(null, attestationType, attestationTrusted, attestationMetadata, warnings);
+    }
+
+    /**
+     * Step 17.
+     */
+    private boolean isRegistered(CredentialRepository credentialRepository) {
+        return !credentialRepository.lookupAll(response.getId()).isEmpty();
+    }
+
+    /**
+     * @return the attestation statement format, or <code>null</code> if the attestation object is missing.
+     */
+    private String attestationFormat() {
+        final AttestationObject attestation = response.getResponse().getAttestation();
+        return attestation == null ? null : attestation.getFormat();
+    }
+
+    private static AttestationStatementVerifier attestationStatementVerifier(String format) {
+        switch (format) {
+            case "fido-u2f":
+                return new FidoU2fAttestationStatementVerifier();
+            case "none":
+                return new NoneAttestationStatementVerifier();
+            case "packed":
+                return new PackedAttestationStatementVerifier();
+            default:
+                return null;
+        }
+    }
+
+    private Optional<AttestationTrustResolver> trustResolver(AttestationObject attestation, AttestationType attestationType, Optional<MetadataService> metadataService) {
+        switch (attestationType) {
+            case SELF_ATTESTATION:
+                return Optional.empty();
+
+            case BASIC:
+                switch (attestation.getFormat()) {
+                    case "fido-u2f":
+                    case "packed":
+                        return metadataService.map(KnownX509TrustAnchorsTrustResolver::new);
+                    default:
+                        throw new UnsupportedOperationException(String.format(
+                            "Attestation type %s is not supported for attestation statement format \"%s\".",
+                            attestationType, attestation.getFormat()
+                        ));
+                }
+
+            case NONE:
+                return Optional.empty();
+
+            default:
+                throw new UnsupportedOperationException("Attestation type not implemented: " + attestationType);
+        }
+    }
+
+    /**
+     * The attestation type and trust established by {@link #resolveTrust(AttestationObject, AttestationStatementVerifier,
+     * Optional, CeremonyTimer)}, or the failure that ended it.
+     */
+    @Value
+    private static class TrustOutcome {
+        private final CeremonyFailure failure;
+        private final AttestationType attestationType;
+        private final boolean attestationTrusted;
+        private final Optional<Attestation> attestationMetadata;
+        private final List<String> warnings;
+
+        private static TrustOutcome failure(CeremonyFailure failure) {
+            return new TrustOutcome(failure, null, false, Optional.empty(), Collections.emptyList());
+        }
+    }
+
+}
@@ -39,8 +39,7 @@ class FinishRegistrationSteps {
     private final PublicKeyCredentialCreationOptions request;
     private final PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> response;
     private final Optional<ByteArray> callerTokenBindingId;
-    private final List<String> origins;
-    private final String rpId;
+    private final RelyingPartyContext context;
     private final Crypto crypto;
     private final Boolean allowUntrustedAttestation;
     private final Optional<MetadataService> metadataService;
@@ -207,7 +206,7 @@ class FinishRegistrationSteps {
         @Override
         public void validate() {
             assure(
-                origins.stream().anyMatch(o -> o.equals(clientData.getOrigin())),
+                context.isOriginAllowed(clientData.getOrigin()),
                 "Incorrect origin: " + clientData.getOrigin()
             );
         }
@@ -282,7 +281,7 @@ class FinishRegistrationSteps {
         @Override
         public void validate() {
             assure(
-                crypto.hash(rpId).equals(response.getResponse().getAttestation().getAuthenticatorData().getRpIdHash()),
+                context.getRpIdHash().equals(response.getResponse().getAttestation().getAuthenticatorData().getRpIdHash()),
                 "Wrong RP ID hash."
             );
         }
@@ -0,0 +1,79 @@
+package com.yubico.webauthn;
+
+import com.yubico.internal.util.FlightRecorder;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+
+
+/**
+ * Emits a {@link FlightRecorderEvents#CREDENTIAL_REPOSITORY_CALL} event for each call to the wrapped repository.
+ * <p>
+ * {@link RelyingParty} only uses this on JVMs that have the flight recorder API.
+ */
+@AllArgsConstructor
+final class FlightRecorderCredentialRepository implements CredentialRepository {
+
+    @NonNull
+    private final CredentialRepository delegate;
+
+    @Override
+    public Set<PublicKeyCredentialDescriptor> getCredentialIdsForUsername(String username) {
+        return record("getCredentialIdsForUsername", 0, () -> delegate.getCredentialIdsForUsername(username), Set::size);
+    }
+
+    @Override
+    public Optional<ByteArray> getUserHandleForUsername(String username) {
+        return record("getUserHandleForUsername", 0, () -> delegate.getUserHandleForUsername(username), r -> r.isPresent() ? 1 : 0);
+    }
+
+    @Override
+    public Optional<String> getUsernameForUserHandle(ByteArray userHandle) {
+        return record("getUsernameForUserHandle", 0, () -> delegate.getUsernameForUserHandle(userHandle), r -> r.isPresent() ? 1 : 0);
+    }
+
+    @Override
+    public Optional<RegisteredCredential> lookup(ByteArray credentialId, ByteArray userHandle) {
+        return record("lookup", credentialId.size(), () -> delegate.lookup(credentialId, userHandle), r -> r.isPresent() ? 1 : 0);
+    }
+
+    @Override
+    public Set<RegisteredCredential> lookupAll(ByteArray credentialId) {
+        return record("lookupAll", credentialId.size(), () -> delegate.lookupAll(credentialId), Set::size);
+    }
+
+    @Override
+    public Map<ByteArray, RegisteredCredential> lookupBatch(Map<ByteArray, ByteArray> userHandlesByCredentialId) {
+        return record("lookupBatch", 0, () -> delegate.lookupBatch(userHandlesByCredentialId), Map::size);
+    }
+
+    private static <T> T record(String method, int credentialIdLength, Supplier<T> call, ToIntFunction<T> counter) {
+        final FlightRecorder.Event event = FlightRecorderEvents.CREDENTIAL_REPOSITORY_CALL.begin();
+        if (event == FlightRecorder.Event.NONE) {
+            return call.get();
+        }
+
+        event
+            .set("method", method)
+            .set("credentialIdLength", credentialIdLength);
+        try {
+            final T result = call.get();
+            final int results = counter.applyAsInt(result);
+            event
+                .set("results", results)
+                .set("outcome", results > 0 ? "FOUND" : "NOT_FOUND")
+                .commit();
+            return result;
+        } catch (RuntimeException e) {
+            event.set("outcome", e.getClass().getSimpleName()).commit();
+            throw e;
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.yubico.webauthn;
+
+import com.google.common.collect.ImmutableMap;
+import com.yubico.internal.util.FlightRecorder;
+import com.yubico.webauthn.data.ByteArray;
+import java.util.Optional;
+
+
+/**
+ * The Java Flight Recorder events emitted by {@link RelyingParty}. All of them are no-ops unless a flight recording
+ * that enables them is running.
+ */
+final class FlightRecorderEvents {
+
+    static final String CATEGORY = "WebAuthn";
+
+    /**
+     * One {@link RelyingParty#finishRegistration(FinishRegistrationOptions)} or {@link
+     * RelyingParty#finishAssertion(FinishAssertionOptions)} call or variant. The outcome is <code>SUCCESS</code>, a
+     * {@link CeremonyFailureReason}, or <code>ABORTED</code> if an exception was thrown.
+     */
+    static final FlightRecorder.EventType CEREMONY = FlightRecorder.eventType(
+        "com.yubico.webauthn.Ceremony",
+        "WebAuthn Ceremony",
+        CATEGORY,
+        ImmutableMap.of(
+            "ceremony", String.class,
+            "credentialIdLength", int.class,
+            "attestationFormat", String.class,
+            "outcome", String.class
+        )
+    );
+
+    /**
+     * One {@link CredentialRepository} method call. The outcome is <code>FOUND</code>, <code>NOT_FOUND</code>, or the
+     * name of the exception thrown.
+     */
+    static final FlightRecorder.EventType CREDENTIAL_REPOSITORY_CALL = FlightRecorder.eventType(
+        "com.yubico.webauthn.CredentialRepositoryCall",
+        "WebAuthn Credential Repository Call",
+        CATEGORY,
+        ImmutableMap.of(
+            "method", String.class,
+            "credentialIdLength", int.class,
+            "results", int.class,
+            "outcome", String.class
+        )
+    );
+
+    /**
+     * One assertion or attestation signature verification. The outcome is <code>VALID</code> or <code>INVALID</code>.
+     */
+    static final FlightRecorder.EventType SIGNATURE_VERIFICATION = FlightRecorder.eventType(
+        "com.yubico.webauthn.SignatureVerification",
+        "WebAuthn Signature Verification",
+        CATEGORY,
+        ImmutableMap.of(
+            "ceremony", String.class,
+            "credentialIdLength", int.class,
+            "attestationFormat", String.class,
+            "outcome", String.class
+        )
+    );
+
+    private FlightRecorderEvents() {
+    }
+
+    static String outcome(boolean valid) {
+        return valid ? "VALID" : "INVALID";
+    }
+
+    static String outcome(Optional<CeremonyFailure> failure) {
+        return failure.map(f -> f.getReason().name()).orElse("SUCCESS");
+    }
+
+    /**
+     * Set the fields common to {@link #CEREMONY} and {@link #SIGNATURE_VERIFICATION} and commit <code>event</code>.
+     *
+     * @param attestationFormat the attestation statement format, or <code>null</code> for authentication ceremonies.
+     */
+    static void commit(FlightRecorder.Event event, CeremonyType ceremony, ByteArray credentialId, String attestationFormat, String outcome) {
+        if (event != FlightRecorder.Event.NONE) {
+            event
+                .set("ceremony", ceremony.name())
+                .set("credentialIdLength", credentialId == null ? 0 : credentialId.size())
+                .set("attestationFormat", attestationFormat)
+                .set("outcome", outcome)
+                .commit();
+        }
+    }
+
+}
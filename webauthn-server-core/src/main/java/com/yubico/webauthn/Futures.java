@@ -0,0 +1,42 @@
+package com.yubico.webauthn;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+
+final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * Like {@link CompletableFuture#join()}, but rethrows unchecked exceptions without wrapping them, so that they
+     * propagate as they would have if the computation had run in the calling thread.
+     */
+    static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            } else {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Cancel each of <code>futures</code> that is not <code>null</code>, so that any that have not yet started never
+     * run.
+     */
+    static void cancel(CompletableFuture<?>... futures) {
+        for (CompletableFuture<?> future : futures) {
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+}
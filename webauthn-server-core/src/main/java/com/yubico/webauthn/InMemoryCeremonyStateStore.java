@@ -0,0 +1,157 @@
+package com.yubico.webauthn;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.NonNull;
+
+import static com.yubico.internal.util.ExceptionUtil.assure;
+
+
+/**
+ * A {@link CeremonyStateStore} that keeps ceremony state in memory, for a fixed time to live.
+ * <p>
+ * Values are kept in a {@link ConcurrentHashMap}, and {@link #take(Object)} removes them with a single atomic
+ * operation. Expiry is tracked with a timing wheel: a ring of slots, one per tick of the configured tick duration, where each
+ * stored value is also queued in the slot of the tick in which it expires. Because every value has the same time to
+ * live, a single ring of slightly more than <code>timeToLive / tickDuration</code> slots is enough. Expired values are
+ * swept out one slot at a time by whichever thread calls {@link #put(Object, Object)} or {@link #take(Object)} after a
+ * tick has passed, so insertion, removal and expiry all take amortised constant time regardless of how many values are
+ * stored.
+ * <p>
+ * A value is never returned after it has expired, even if it has not yet been swept out.
+ */
+public final class InMemoryCeremonyStateStore<K, V> implements CeremonyStateStore<K, V> {
+
+    private final ConcurrentHashMap<K, Entry<K, V>> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry<K, V>>[] wheel;
+    private final ReentrantLock sweepLock = new ReentrantLock();
+
+    private final long timeToLiveMillis;
+    private final long tickMillis;
+    private final Clock clock;
+
+    /**
+     * The most recent tick whose slot has been swept. Only written while holding {@link #sweepLock}.
+     */
+    private volatile long sweptTick;
+
+    /**
+     * @param timeToLive how long a stored value can be taken after it was put. Default: 10 minutes.
+     * @param tickDuration the granularity of expiry sweeps. Expired values are removed from memory at most this long
+     * after they expire. Default: 1 second.
+     * @param clock the clock used to expire values. Default: {@link Clock#systemUTC()}.
+     */
+    @Builder
+    @SuppressWarnings("unchecked")
+    private InMemoryCeremonyStateStore(Duration timeToLive, Duration tickDuration, Clock clock) {
+        this.timeToLiveMillis = (timeToLive == null ? Duration.ofMinutes(10) : timeToLive).toMillis();
+        this.tickMillis = (tickDuration == null ? Duration.ofSeconds(1) : tickDuration).toMillis();
+        this.clock = clock == null ? Clock.systemUTC() : clock;
+
+        assure(timeToLiveMillis > 0, "Time to live must be positive.");
+        assure(tickMillis > 0, "Tick duration must be positive.");
+
+        // One slot per tick of the time to live, plus one for the current tick and one for rounding
+        final long slots = timeToLiveMillis / tickMillis + 2;
+        assure(slots <= Integer.MAX_VALUE, "Tick duration is too short for the time to live.");
+        this.wheel = new Queue[(int) slots];
+        for (int i = 0; i < wheel.length; ++i) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+
+        this.sweptTick = this.clock.millis() / tickMillis;
+    }
+
+    @Override
+    public void put(@NonNull K key, @NonNull V value) {
+        final long now = clock.millis();
+        final Entry<K, V> entry = new Entry<>(key, value, now + timeToLiveMillis);
+        entries.put(key, entry);
+        wheel[slot(entry.expiresAt / tickMillis)].add(entry);
+        sweep(now);
+    }
+
+    @Override
+    public Optional<V> take(@NonNull K key) {
+        final long now = clock.millis();
+        final Entry<K, V> entry = entries.remove(key);
+        sweep(now);
+
+        if (entry == null || entry.isExpired(now)) {
+            return Optional.empty();
+        } else {
+            return Optional.of(entry.value);
+        }
+    }
+
+    /**
+     * @return the number of values stored, including expired values that have not yet been swept out.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Remove the values that expired in the ticks that have passed completely since the last sweep. If another thread
+     * is already sweeping, return immediately and let that thread do it.
+     */
+    private void sweep(long now) {
+        final long lastPassedTick = now / tickMillis - 1;
+        if (lastPassedTick <= sweptTick || !sweepLock.tryLock()) {
+            return;
+        }
+
+        try {
+            // If nothing happened for longer than a full turn of the wheel, every slot needs sweeping exactly once
+            final long firstTick = Math.max(sweptTick + 1, lastPassedTick - wheel.length + 1);
+            for (long tick = firstTick; tick <= lastPassedTick; ++tick) {
+                sweepSlot(slot(tick), now);
+            }
+            sweptTick = lastPassedTick;
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    private void sweepSlot(int slot, long now) {
+        final Queue<Entry<K, V>> queue = wheel[slot];
+        // Only values put by a thread that stalled for a whole time to live can be in a passed slot but not expired
+        final List<Entry<K, V>> notYetExpired = new ArrayList<>(0);
+
+        Entry<K, V> entry;
+        while ((entry = queue.poll()) != null) {
+            if (entry.isExpired(now)) {
+                // Only remove this entry, not a newer value that has since been put under the same key
+                entries.remove(entry.key, entry);
+            } else {
+                notYetExpired.add(entry);
+            }
+        }
+        queue.addAll(notYetExpired);
+    }
+
+    private int slot(long tick) {
+        return (int) (tick % wheel.length);
+    }
+
+    @AllArgsConstructor
+    private static final class Entry<K, V> {
+        private final K key;
+        private final V value;
+        private final long expiresAt;
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+}
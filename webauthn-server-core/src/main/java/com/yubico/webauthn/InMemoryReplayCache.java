@@ -0,0 +1,244 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.data.ByteArray;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import lombok.Builder;
+import lombok.NonNull;
+
+import static com.yubico.internal.util.ExceptionUtil.assure;
+
+
+/**
+ * A {@link ReplayCache} that remembers challenges in memory for a fixed time window.
+ * <p>
+ * The window is divided into a number of time buckets. Each challenge is added to the bucket of the current time, and
+ * a whole bucket is forgotten at once when it falls out of the window, so there is no per-challenge expiry work. Each
+ * bucket is split into shards by the hash of the challenge, to spread contention between threads, and may have a Bloom
+ * filter in front of it so that most lookups of challenges that were never added don't touch the shards at all. No
+ * locks are taken.
+ * <p>
+ * The number of remembered challenges is capped at {@link #maxEntries}. Challenges are never forgotten before they
+ * leave the window: while the cache is full, {@link #add(ByteArray)} refuses new challenges by returning
+ * <code>false</code>, until the oldest bucket leaves the window.
+ */
+public final class InMemoryReplayCache implements ReplayCache {
+
+    private static final int BLOOM_BITS_PER_ENTRY = 10;
+    private static final int BLOOM_HASHES = 7;
+
+    private final AtomicReferenceArray<Bucket> buckets;
+    private final long bucketMillis;
+    private final int shards;
+    private final int maxEntriesPerBucket;
+    private final long maxEntries;
+    private final boolean bloomFilter;
+    private final Clock clock;
+
+    /**
+     * @param window how long a challenge is remembered after it is added. This should be at least as long as the
+     * pending requests are kept. Default: 10 minutes.
+     * @param buckets the number of buckets the window is divided into. Default: 10.
+     * @param shards the number of shards in each bucket. Default: 16.
+     * @param maxEntries the maximum number of challenges to remember. Default: 1,000,000.
+     * @param bloomFilter whether to put a Bloom filter in front of each bucket. This costs about 10 bits per entry of
+     * the maximum capacity. Default: <code>false</code>.
+     * @param clock the clock used to assign challenges to buckets. Default: {@link Clock#systemUTC()}.
+     */
+    @Builder
+    private InMemoryReplayCache(Duration window, Integer buckets, Integer shards, Long maxEntries, Boolean bloomFilter, Clock clock) {
+        final long windowMillis = (window == null ? Duration.ofMinutes(10) : window).toMillis();
+        final int bucketCount = buckets == null ? 10 : buckets;
+        this.shards = shards == null ? 16 : shards;
+        this.maxEntries = maxEntries == null ? 1_000_000 : maxEntries;
+        this.bloomFilter = bloomFilter != null && bloomFilter;
+        this.clock = clock == null ? Clock.systemUTC() : clock;
+
+        assure(bucketCount > 0, "Number of buckets must be positive.");
+        assure(this.shards > 0, "Number of shards must be positive.");
+        assure(windowMillis >= bucketCount, "Window must be at least one millisecond per bucket.");
+        assure(this.maxEntries > 0, "Maximum number of entries must be positive.");
+
+        this.bucketMillis = windowMillis / bucketCount;
+
+        // One more bucket than the window is divided into, so that a challenge added at the very end of a bucket is
+        // still remembered a whole window later
+        this.buckets = new AtomicReferenceArray<>(bucketCount + 1);
+        this.maxEntriesPerBucket = (int) Math.min(Integer.MAX_VALUE, Math.max(1, this.maxEntries / this.buckets.length()));
+    }
+
+    @Override
+    public boolean contains(@NonNull ByteArray challenge) {
+        final long currentEpoch = clock.millis() / bucketMillis;
+        final int hash = challenge.hashCode();
+        for (int i = 0; i < buckets.length(); ++i) {
+            final Bucket bucket = buckets.get(i);
+            if (isLive(bucket, currentEpoch) && bucket.mightContain(hash) && bucket.contains(challenge, hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean add(@NonNull ByteArray challenge) {
+        final long currentEpoch = clock.millis() / bucketMillis;
+        final int hash = challenge.hashCode();
+        final Bucket current = currentBucket(currentEpoch);
+
+        if (!current.add(challenge, hash)) {
+            return false;
+        }
+
+        // Check the other buckets after adding, so that of two threads adding the same challenge to different buckets
+        // at least one sees the other's addition
+        long total = 0;
+        boolean remembered = false;
+        for (int i = 0; i < buckets.length(); ++i) {
+            final Bucket bucket = buckets.get(i);
+            if (isLive(bucket, currentEpoch)) {
+                remembered |= bucket != current && bucket.contains(challenge, hash);
+                total += bucket.size.get();
+            }
+        }
+
+        // Refuse the challenge if an older bucket already remembers it, or if the cache is full
+        if (remembered || total > maxEntries) {
+            current.remove(challenge, hash);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of challenges currently remembered.
+     */
+    public long size() {
+        final long currentEpoch = clock.millis() / bucketMillis;
+        long total = 0;
+        for (int i = 0; i < buckets.length(); ++i) {
+            final Bucket bucket = buckets.get(i);
+            if (isLive(bucket, currentEpoch)) {
+                total += bucket.size.get();
+            }
+        }
+        return total;
+    }
+
+    private boolean isLive(Bucket bucket, long currentEpoch) {
+        return bucket != null && bucket.epoch > currentEpoch - buckets.length();
+    }
+
+    private Bucket currentBucket(long currentEpoch) {
+        final int index = (int) (currentEpoch % buckets.length());
+        while (true) {
+            final Bucket bucket = buckets.get(index);
+            if (bucket != null && bucket.epoch >= currentEpoch) {
+                return bucket;
+            }
+            final Bucket fresh = new Bucket(currentEpoch);
+            if (buckets.compareAndSet(index, bucket, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private final class Bucket {
+        private final long epoch;
+        private final Set<ByteArray>[] shardSets;
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicLongArray bloomBits;
+
+        @SuppressWarnings("unchecked")
+        private Bucket(long epoch) {
+            this.epoch = epoch;
+            this.shardSets = new Set[shards];
+            for (int i = 0; i < shards; ++i) {
+                shardSets[i] = ConcurrentHashMap.newKeySet();
+            }
+            this.bloomBits = bloomFilter
+                ? new AtomicLongArray((int) Math.min(Integer.MAX_VALUE, ((long) maxEntriesPerBucket * BLOOM_BITS_PER_ENTRY + 63) / 64))
+                : null;
+        }
+
+        private Set<ByteArray> shard(int hash) {
+            return shardSets[Math.floorMod(hash, shards)];
+        }
+
+        private boolean contains(ByteArray challenge, int hash) {
+            return shard(hash).contains(challenge);
+        }
+
+        private boolean add(ByteArray challenge, int hash) {
+            if (bloomBits != null) {
+                final int hash2 = mix(hash);
+                for (int i = 0; i < BLOOM_HASHES; ++i) {
+                    final long bit = bloomBit(hash, hash2, i);
+                    final int word = (int) (bit >>> 6);
+                    final long mask = 1L << bit;
+                    long old;
+                    do {
+                        old = bloomBits.get(word);
+                    } while ((old & mask) == 0 && !bloomBits.compareAndSet(word, old, old | mask));
+                }
+            }
+
+            if (shard(hash).add(challenge)) {
+                size.incrementAndGet();
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        /**
+         * Undo an {@link #add(ByteArray, int)} that returned <code>true</code>. The Bloom filter bits stay set.
+         */
+        private void remove(ByteArray challenge, int hash) {
+            if (shard(hash).remove(challenge)) {
+                size.decrementAndGet();
+            }
+        }
+
+        private boolean mightContain(int hash) {
+            if (bloomBits == null) {
+                return true;
+            }
+            final int hash2 = mix(hash);
+            for (int i = 0; i < BLOOM_HASHES; ++i) {
+                final long bit = bloomBit(hash, hash2, i);
+                if ((bloomBits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the index of the <code>i</code>th Bloom filter bit for a value with the given hashes, using double
+         * hashing.
+         */
+        private long bloomBit(int hash1, int hash2, int i) {
+            return Math.floorMod(hash1 + (long) i * hash2, (long) bloomBits.length() * 64);
+        }
+    }
+
+    /**
+     * The finalisation step of MurmurHash3, used to derive a second, independent hash from {@link ByteArray#hashCode()}.
+     */
+    private static int mix(int hash) {
+        int h = hash;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h | 1;
+    }
+
+}
@@ -0,0 +1,173 @@
+package com.yubico.webauthn;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+import static com.yubico.internal.util.ExceptionUtil.assure;
+
+
+/**
+ * A {@link Tracer} that keeps the most recently finished spans in a fixed-size ring buffer in memory, for tests and
+ * local analysis.
+ * <p>
+ * Recording a span takes no locks. When the buffer is full, each finished span overwrites the oldest one.
+ */
+public final class InMemoryTracer implements Tracer {
+
+    private final AtomicReferenceArray<FinishedSpan> buffer;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong nextSpanId = new AtomicLong(1);
+    private final Clock clock;
+
+    /**
+     * @param capacity the number of finished spans to keep. Default: 1024.
+     * @param clock the clock used for span start times. Default: {@link Clock#systemUTC()}.
+     */
+    @Builder
+    private InMemoryTracer(Integer capacity, Clock clock) {
+        final int bufferCapacity = capacity == null ? 1024 : capacity;
+        assure(bufferCapacity > 0, "Capacity must be positive.");
+
+        this.buffer = new AtomicReferenceArray<>(bufferCapacity);
+        this.clock = clock == null ? Clock.systemUTC() : clock;
+    }
+
+    @Override
+    public Span startSpan(@NonNull String name, @NonNull Optional<Span> parent) {
+        return new RecordingSpan(
+            nextSpanId.getAndIncrement(),
+            parent.filter(RecordingSpan.class::isInstance).map(p -> ((RecordingSpan) p).spanId),
+            name
+        );
+    }
+
+    /**
+     * @return the finished spans still in the buffer, oldest first. Spans finished concurrently with this call may or
+     * may not be included.
+     */
+    public List<FinishedSpan> getFinishedSpans() {
+        final long end = written.get();
+        final long start = Math.max(0, end - buffer.length());
+        final List<FinishedSpan> result = new ArrayList<>((int) (end - start));
+        for (long i = start; i < end; ++i) {
+            final FinishedSpan span = buffer.get((int) (i % buffer.length()));
+            if (span != null) {
+                result.add(span);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * @return the finished spans still in the buffer that are children of <code>parent</code>, oldest first.
+     */
+    public List<FinishedSpan> getChildren(FinishedSpan parent) {
+        final List<FinishedSpan> result = new ArrayList<>();
+        for (FinishedSpan span : getFinishedSpans()) {
+            if (span.getParentSpanId().isPresent() && span.getParentSpanId().get() == parent.getSpanId()) {
+                result.add(span);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Forget all finished spans.
+     */
+    public void clear() {
+        for (int i = 0; i < buffer.length(); ++i) {
+            buffer.set(i, null);
+        }
+    }
+
+    private void finished(FinishedSpan span) {
+        buffer.set((int) (written.getAndIncrement() % buffer.length()), span);
+    }
+
+    private final class RecordingSpan implements Span {
+        private final long spanId;
+        private final Optional<Long> parentSpanId;
+        private final String name;
+        private final Instant startTime = clock.instant();
+        private final long startNanos = System.nanoTime();
+        private final Map<String, Object> attributes = new HashMap<>();
+
+        private RecordingSpan(long spanId, Optional<Long> parentSpanId, String name) {
+            this.spanId = spanId;
+            this.parentSpanId = parentSpanId;
+            this.name = name;
+        }
+
+        @Override
+        public Span setAttribute(String key, String value) {
+            attributes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Span setAttribute(String key, long value) {
+            attributes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Span setAttribute(String key, boolean value) {
+            attributes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public void end() {
+            finished(new FinishedSpan(
+                spanId,
+                parentSpanId,
+                name,
+                startTime,
+                System.nanoTime() - startNanos,
+                Collections.unmodifiableMap(attributes)
+            ));
+        }
+    }
+
+    /**
+     * A span recorded by an {@link InMemoryTracer}.
+     */
+    @Value
+    public static class FinishedSpan {
+
+        /**
+         * Unique among the spans of one {@link InMemoryTracer}.
+         */
+        private final long spanId;
+
+        @NonNull
+        private final Optional<Long> parentSpanId;
+
+        @NonNull
+        private final String name;
+
+        @NonNull
+        private final Instant startTime;
+
+        private final long durationNanos;
+
+        /**
+         * Values are {@link String}s, {@link Long}s or {@link Boolean}s.
+         */
+        @NonNull
+        private final Map<String, Object> attributes;
+
+    }
+
+}
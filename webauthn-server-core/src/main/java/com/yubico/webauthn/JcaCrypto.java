@@ -0,0 +1,368 @@
+package com.yubico.webauthn;
+
+import com.yubico.internal.util.BinaryUtil;
+import com.yubico.webauthn.data.ByteArray;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import static com.yubico.internal.util.ExceptionUtil.assure;
+
+
+/**
+ * A {@link Crypto} that verifies ES256 signatures and computes SHA-256 hashes with JCA providers of your choice, for
+ * example a platform provider such as SunEC, or a provider backed by native code.
+ * <p>
+ * For each of the two operations, the first of the given providers that implements it and passes a known-answer test
+ * is used. If <code>selectFastest</code> is set, all providers that pass are instead timed with a short micro-benchmark
+ * when this object is built, and the fastest one is used.
+ * <p>
+ * Public keys are decoded into keys of the signature provider, if it has an <code>EC</code> key factory. Keys of other
+ * types that the signature provider rejects are rebuilt by that key factory on each use. Like the default
+ * implementation, this reuses one engine instance per thread.
+ *
+ * <pre>
+ * RelyingParty.builder()
+ *     .crypto(JcaCrypto.builder()
+ *         .providers(Arrays.asList(Security.getProvider("SunEC"), new BouncyCastleProvider()))
+ *         .selectFastest(true)
+ *         .build())
+ *     ...
+ * </pre>
+ */
+@Slf4j
+public final class JcaCrypto implements Crypto {
+
+    private static final String SIGNATURE_ALGORITHM = "SHA256withECDSA";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    // A P-256 assertion signature over authenticatorData || SHA-256(clientDataJSON)
+    private static final PublicKey KNOWN_PUBLIC_KEY = decodeKnownPublicKey("3059301306072a8648ce3d020106082a8648ce3d03010703420004d8020a2ec718c2c595bb890fcdaf9b81cc742118efdbb8812ac4a9dd5ace2990ec22a48faf1544df0fe5fe0e2e7a69720e63a83d7f46aa022f1323eaf7967762");
+    private static final byte[] KNOWN_SIGNED_BYTES = BinaryUtil.fromHex("49960de5880e8c687434170f6476605b8fe4aeb9a28632c7995cf3ba831d97630100000539697f55dc01c2716b5bc25516137cea3d0eee5fa3d7cd5b8c8fa512f82b8a8e31");
+    private static final byte[] KNOWN_SIGNATURE = BinaryUtil.fromHex("30450221008d478e4c24894d261c7fd3790363ba9687facf4dd1d59610933a2c292cffc3d902205069264c167833d239d6af4c7bf7326c4883fb8c3517a2c86318aa3060d8b441");
+
+    // SHA-256("abc"), from FIPS 180-2
+    private static final byte[] KNOWN_DIGEST_INPUT = { 'a', 'b', 'c' };
+    private static final byte[] KNOWN_DIGEST = BinaryUtil.fromHex("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+
+    private static final int BENCHMARK_WARMUP_ITERATIONS = 200;
+    private static final int BENCHMARK_ITERATIONS = 500;
+
+    private final Provider signatureProvider;
+    private final Provider digestProvider;
+    private final ThreadLocal<Signature> signature;
+    private final ThreadLocal<MessageDigest> digest;
+    private final ThreadLocal<KeyFactory> keyFactory;
+    private final boolean translateKeys;
+    private final Crypto keyDecoder = new PooledBouncyCastleCrypto();
+
+    /**
+     * Class names and algorithm names of the key types that the signature provider has rejected.
+     */
+    private final Set<String> rejectedKeyTypes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param providers the JCA providers to choose from, in order of preference. Default: only the Bouncy Castle
+     * provider.
+     * @param selectFastest if <code>true</code>, time each provider that passes the known-answer test and use the
+     * fastest, instead of the first. Default: <code>false</code>.
+     * @throws IllegalArgumentException if none of the <code>providers</code> passes the known-answer test for one of
+     * the operations.
+     */
+    @Builder
+    private JcaCrypto(List<Provider> providers, Boolean selectFastest) {
+        final List<Provider> candidates = providers == null
+            ? Collections.singletonList(BouncyCastleCrypto.provider)
+            : providers;
+        assure(!candidates.isEmpty(), "At least one provider must be given.");
+
+        final boolean fastest = selectFastest != null && selectFastest;
+        this.signatureProvider = select(candidates, fastest, "Signature", SIGNATURE_ALGORITHM, JcaCrypto::testSignature, JcaCrypto::benchmarkSignature);
+        this.digestProvider = select(candidates, fastest, "MessageDigest", DIGEST_ALGORITHM, JcaCrypto::testDigest, JcaCrypto::benchmarkDigest);
+
+        final Provider signatureProvider = this.signatureProvider;
+        final Provider digestProvider = this.digestProvider;
+        this.signature = ThreadLocal.withInitial(() -> newSignature(signatureProvider));
+        this.digest = ThreadLocal.withInitial(() -> newDigest(digestProvider));
+        this.keyFactory = ThreadLocal.withInitial(() -> newKeyFactory(signatureProvider));
+        this.translateKeys = signatureProvider.getService("KeyFactory", "EC") != null;
+
+        log.debug("Using {} for {} and {} for {}", signatureProvider.getName(), SIGNATURE_ALGORITHM, digestProvider.getName(), DIGEST_ALGORITHM);
+    }
+
+    /**
+     * @return the provider used by {@link #verifySignature(PublicKey, ByteArray, ByteArray)}.
+     */
+    public Provider getSignatureProvider() {
+        return signatureProvider;
+    }
+
+    /**
+     * @return the provider used by {@link #hash(ByteArray)}.
+     */
+    public Provider getDigestProvider() {
+        return digestProvider;
+    }
+
+    @Override
+    public boolean verifySignature(X509Certificate attestationCertificate, ByteArray signedBytes, ByteArray signature) {
+        return verifySignature(attestationCertificate.getPublicKey(), signedBytes, signature);
+    }
+
+    @Override
+    public boolean verifySignature(PublicKey publicKey, ByteArray signedBytes, ByteArray signature) {
+        final Signature ecdsaSignature = this.signature.get();
+        try {
+            initVerify(ecdsaSignature, publicKey);
+            ecdsaSignature.update(signedBytes.getBytes());
+            return ecdsaSignature.verify(signature.getBytes());
+        } catch (GeneralSecurityException e) {
+            throw BouncyCastleCrypto.verificationFailed(publicKey, signedBytes, signature, e);
+        }
+    }
+
+    @Override
+    public PublicKey decodePublicKey(ByteArray encodedPublicKey) {
+        final PublicKey publicKey = keyDecoder.decodePublicKey(encodedPublicKey);
+        if (translateKeys) {
+            try {
+                return translateKey(publicKey, keyFactory.get());
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException(
+                    "Failed to decode public key: " + encodedPublicKey.getBase64Url(),
+                    e
+                );
+            }
+        } else {
+            return publicKey;
+        }
+    }
+
+    @Override
+    public ByteArray hash(ByteArray bytes) {
+        final MessageDigest sha256 = digest.get();
+        sha256.update(bytes.asByteBuffer());
+        return new ByteArray(sha256.digest());
+    }
+
+    @Override
+    public ByteArray hash(String str) {
+        return new ByteArray(digest.get().digest(str.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @FunctionalInterface
+    private interface KnownAnswerTest {
+        /**
+         * @return <code>true</code> if the provider gave the known answers.
+         */
+        boolean run(Provider provider) throws GeneralSecurityException;
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        void run() throws GeneralSecurityException;
+    }
+
+    @FunctionalInterface
+    private interface Benchmark {
+        /**
+         * Create the engines and keys for the benchmark, so that the returned operation only does the work that is
+         * repeated in each ceremony.
+         */
+        Operation prepare(Provider provider) throws GeneralSecurityException;
+    }
+
+    private static Provider select(List<Provider> providers, boolean fastest, String type, String algorithm, KnownAnswerTest test, Benchmark benchmark) {
+        final List<Provider> passed = new ArrayList<>(providers.size());
+        for (Provider provider : providers) {
+            if (provider.getService(type, algorithm) == null) {
+                continue;
+            }
+            try {
+                if (test.run(provider)) {
+                    passed.add(provider);
+                    if (!fastest) {
+                        break;
+                    }
+                } else {
+                    log.warn("JCA provider {} failed the known-answer test for {}", provider.getName(), algorithm);
+                }
+            } catch (GeneralSecurityException | RuntimeException e) {
+                log.warn("JCA provider {} failed the known-answer test for {}", provider.getName(), algorithm, e);
+            }
+        }
+        assure(!passed.isEmpty(), "None of the given providers passed the known-answer test for %s.", algorithm);
+
+        if (passed.size() == 1) {
+            return passed.get(0);
+        }
+
+        Provider best = null;
+        long bestNanos = Long.MAX_VALUE;
+        for (Provider provider : passed) {
+            final long nanos = time(provider, benchmark);
+            log.debug("JCA provider {} took {} ns for {} runs of {}", provider.getName(), nanos, BENCHMARK_ITERATIONS, algorithm);
+            if (best == null || nanos < bestNanos) {
+                best = provider;
+                bestNanos = nanos;
+            }
+        }
+        return best;
+    }
+
+    private static long time(Provider provider, Benchmark benchmark) {
+        try {
+            final Operation operation = benchmark.prepare(provider);
+            for (int i = 0; i < BENCHMARK_WARMUP_ITERATIONS; ++i) {
+                operation.run();
+            }
+            final long start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_ITERATIONS; ++i) {
+                operation.run();
+            }
+            return System.nanoTime() - start;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            log.warn("JCA provider {} failed the benchmark", provider.getName(), e);
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Keys decoded by this library are Bouncy Castle keys with the algorithm name <code>ECDSA</code>, which some
+     * providers, SunEC among them, reject. Those get the key rebuilt from its point and curve by their own
+     * <code>EC</code> key factory. Once a key type has been rejected, keys of that type are rebuilt right away.
+     */
+    private void initVerify(Signature signature, PublicKey publicKey) throws GeneralSecurityException {
+        final String keyType = publicKey.getClass().getName() + "/" + publicKey.getAlgorithm();
+        if (translateKeys && rejectedKeyTypes.contains(keyType)) {
+            signature.initVerify(translateKey(publicKey, keyFactory.get()));
+            return;
+        }
+
+        try {
+            signature.initVerify(publicKey);
+        } catch (InvalidKeyException e) {
+            if (!translateKeys) {
+                throw e;
+            }
+            final PublicKey translated;
+            try {
+                translated = translateKey(publicKey, keyFactory.get());
+            } catch (GeneralSecurityException | ClassCastException f) {
+                e.addSuppressed(f);
+                throw e;
+            }
+            signature.initVerify(translated);
+            rejectedKeyTypes.add(keyType);
+        }
+    }
+
+    /**
+     * @return a key of the provider of <code>keyFactory</code> with the same point and curve as
+     * <code>publicKey</code>.
+     * @throws ClassCastException if <code>publicKey</code> is not an EC key.
+     */
+    private static PublicKey translateKey(PublicKey publicKey, KeyFactory keyFactory) throws GeneralSecurityException {
+        final ECPublicKey ecKey = (ECPublicKey) publicKey;
+        return keyFactory.generatePublic(new ECPublicKeySpec(ecKey.getW(), ecKey.getParams()));
+    }
+
+    /**
+     * @return {@link #KNOWN_PUBLIC_KEY} as a key of <code>provider</code>, if it has an <code>EC</code> key factory.
+     */
+    private static PublicKey knownPublicKey(Provider provider) throws GeneralSecurityException {
+        return provider.getService("KeyFactory", "EC") == null
+            ? KNOWN_PUBLIC_KEY
+            : translateKey(KNOWN_PUBLIC_KEY, KeyFactory.getInstance("EC", provider));
+    }
+
+    private static boolean testSignature(Provider provider) throws GeneralSecurityException {
+        final PublicKey publicKey = knownPublicKey(provider);
+        final Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM, provider);
+
+        signature.initVerify(publicKey);
+        signature.update(KNOWN_SIGNED_BYTES);
+        final boolean acceptsValid = signature.verify(KNOWN_SIGNATURE);
+
+        final byte[] tampered = KNOWN_SIGNED_BYTES.clone();
+        tampered[tampered.length - 1] ^= 1;
+        signature.initVerify(publicKey);
+        signature.update(tampered);
+        final boolean rejectsInvalid = !signature.verify(KNOWN_SIGNATURE);
+
+        return acceptsValid && rejectsInvalid;
+    }
+
+    private static Operation benchmarkSignature(Provider provider) throws GeneralSecurityException {
+        final PublicKey publicKey = knownPublicKey(provider);
+        final Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM, provider);
+        return () -> {
+            signature.initVerify(publicKey);
+            signature.update(KNOWN_SIGNED_BYTES);
+            signature.verify(KNOWN_SIGNATURE);
+        };
+    }
+
+    private static boolean testDigest(Provider provider) throws GeneralSecurityException {
+        return MessageDigest.isEqual(
+            MessageDigest.getInstance(DIGEST_ALGORITHM, provider).digest(KNOWN_DIGEST_INPUT),
+            KNOWN_DIGEST
+        );
+    }
+
+    private static Operation benchmarkDigest(Provider provider) throws GeneralSecurityException {
+        final MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM, provider);
+        return () -> digest.digest(KNOWN_DIGEST_INPUT);
+    }
+
+    private static PublicKey decodeKnownPublicKey(String hex) {
+        try {
+            return KeyFactory.getInstance("ECDSA", BouncyCastleCrypto.provider)
+                .generatePublic(new X509EncodedKeySpec(BinaryUtil.fromHex(hex)));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Signature newSignature(@NonNull Provider provider) {
+        try {
+            return Signature.getInstance(SIGNATURE_ALGORITHM, provider);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static MessageDigest newDigest(@NonNull Provider provider) {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM, provider);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static KeyFactory newKeyFactory(@NonNull Provider provider) {
+        try {
+            return KeyFactory.getInstance("EC", provider);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
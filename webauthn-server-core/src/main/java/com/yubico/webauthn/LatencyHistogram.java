@@ -0,0 +1,119 @@
+package com.yubico.webauthn;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * A fixed-size, lock-free histogram of durations in nanoseconds.
+ * <p>
+ * Values below 16 are counted exactly. Larger values are counted in buckets of 16 sub-buckets per power of two, so the
+ * value reported for a percentile is at most 1/16 higher than the true value. Values above {@link
+ * #MAX_BUCKETED_NANOS}, 2<sup>41</sup> - 1 ns or about 36.6 minutes, are counted in the highest bucket. The buckets are
+ * striped by the ID of the recording thread, to spread contention, and merged when a snapshot is taken.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    /**
+     * The highest value of the highest bucket.
+     */
+    static final long MAX_BUCKETED_NANOS = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private final AtomicLongArray counts;
+    private final int stripeMask;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param stripes the number of stripes. Must be a power of two.
+     */
+    LatencyHistogram(int stripes) {
+        this.counts = new AtomicLongArray(stripes * BUCKETS);
+        this.stripeMask = stripes - 1;
+    }
+
+    void record(long nanos) {
+        final long value = Math.max(0, nanos);
+        final int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        counts.incrementAndGet(stripe * BUCKETS + bucket(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @param elapsedNanos the time over which the values were recorded, used to compute the rate.
+     */
+    CeremonyMetrics.LatencySnapshot snapshot(long elapsedNanos) {
+        final long[] merged = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < counts.length(); ++i) {
+            final long c = counts.get(i);
+            merged[i % BUCKETS] += c;
+            total += c;
+        }
+
+        // The highest value of a bucket may be higher than any value actually recorded
+        final long maxNanos = max.get();
+        return CeremonyMetrics.LatencySnapshot.builder()
+            .count(total)
+            .ratePerSecond(elapsedNanos > 0 ? total * 1e9 / elapsedNanos : 0)
+            .meanNanos(total > 0 ? sum.sum() / total : 0)
+            .p50Nanos(Math.min(maxNanos, percentile(merged, total, 0.5)))
+            .p99Nanos(Math.min(maxNanos, percentile(merged, total, 0.99)))
+            .p999Nanos(Math.min(maxNanos, percentile(merged, total, 0.999)))
+            .maxNanos(maxNanos)
+            .build();
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the highest value counted in <code>bucket</code>.
+     */
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    private static long percentile(long[] counts, long total, double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        final long target = Math.max(1, (long) Math.ceil(quantile * total));
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; ++i) {
+            cumulative += counts[i];
+            if (cumulative >= target) {
+                return highestValue(i);
+            }
+        }
+        return highestValue(counts.length - 1);
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.yubico.webauthn;
+
+import java.util.Collection;
+
+
+/**
+ * Decides which origins are acceptable in the client data of registration and authentication ceremonies, in addition
+ * to the exact origins listed in {@link RelyingParty#getOrigins()}.
+ */
+public interface OriginMatcher {
+
+    /**
+     * @param origin the <code>origin</code> member of the collected client data. May be <code>null</code>.
+     * @return <code>true</code> if and only if <code>origin</code> is acceptable.
+     */
+    boolean isAllowed(String origin);
+
+    /**
+     * Create an {@link OriginMatcher} from a set of origin patterns.
+     * <p>
+     * Each pattern has the form <code>scheme://host</code> or <code>scheme://host:ports</code>, where:
+     * <ul>
+     * <li><code>host</code> is either a host name, which must match exactly, or <code>*.</code> followed by a domain
+     * name, which matches any subdomain at any depth &ndash; but not the domain itself. For example,
+     * <code>https://*.example.com</code> matches <code>https://a.example.com</code> and
+     * <code>https://a.b.example.com</code> but not <code>https://example.com</code>.</li>
+     * <li><code>ports</code> is either a single port number or a comma-separated set of port numbers in braces, for
+     * example <code>https://*.example.com:{8443,9443}</code>. A pattern without a port only matches origins without a
+     * port.</li>
+     * </ul>
+     * <p>
+     * Matching takes time proportional to the number of labels in the host name of the matched origin, regardless of
+     * the number of patterns.
+     *
+     * @throws IllegalArgumentException if any of the <code>patterns</code> is malformed.
+     */
+    static OriginMatcher fromPatterns(Collection<String> patterns) {
+        return PatternOriginMatcher.compile(patterns);
+    }
+
+}
@@ -37,7 +37,7 @@ import org.bouncycastle.asn1.DEROctetString;
 @Slf4j
 class PackedAttestationStatementVerifier implements AttestationStatementVerifier, X5cAttestationStatementVerifier {
 
-    private final BouncyCastleCrypto crypto = new BouncyCastleCrypto();
+    private final BouncyCastleCrypto crypto = new PooledBouncyCastleCrypto();
 
     @Override
     public AttestationType getAttestationType(AttestationObject attestation) {
@@ -142,7 +142,7 @@ class PackedAttestationStatementVerifier implements AttestationStatementVerifier
                 // TODO support other signature algorithms
                 Signature ecdsaSignature;
                 try {
-                    ecdsaSignature = Signature.getInstance("SHA256withECDSA", crypto.getProvider());
+                    ecdsaSignature = crypto.sha256WithEcdsaSignature();
                 } catch (NoSuchAlgorithmException e) {
                     throw ExceptionUtil.wrapAndLog(log, "Failed to get a Signature instance for SHA256withECDSA", e);
                 }
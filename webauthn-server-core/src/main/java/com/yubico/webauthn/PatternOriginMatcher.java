@@ -0,0 +1,225 @@
+package com.yubico.webauthn;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import lombok.AllArgsConstructor;
+
+import static com.yubico.internal.util.ExceptionUtil.assure;
+
+
+/**
+ * The {@link OriginMatcher} returned by {@link OriginMatcher#fromPatterns(Collection)}.
+ * <p>
+ * Exact patterns are expanded into a hash set of normalised origins, one per port. Subdomain patterns are stored in a
+ * trie keyed by the labels of their domain in reverse order, so that matching walks the labels of the origin's host
+ * name from right to left and never looks at unrelated patterns.
+ */
+class PatternOriginMatcher implements OriginMatcher {
+
+    private static final String SCHEME_SEPARATOR = "://";
+    private static final String WILDCARD_PREFIX = "*.";
+    private static final int NO_PORT = -1;
+    private static final int MAX_PORT = 65535;
+    private static final int MAX_PORT_DIGITS = 5;
+
+    private final Set<String> exactOrigins;
+    private final Node subdomainRoot;
+
+    private PatternOriginMatcher(Set<String> exactOrigins, Node subdomainRoot) {
+        this.exactOrigins = exactOrigins;
+        this.subdomainRoot = subdomainRoot;
+    }
+
+    static PatternOriginMatcher compile(Collection<String> patterns) {
+        final Set<String> exactOrigins = new HashSet<>();
+        final Node subdomainRoot = new Node();
+
+        for (String pattern : patterns) {
+            assure(pattern != null, "Origin pattern must not be null.");
+            final int schemeEnd = pattern.indexOf(SCHEME_SEPARATOR);
+            assure(schemeEnd > 0, "Origin pattern must start with a scheme: %s", pattern);
+
+            final String scheme = pattern.substring(0, schemeEnd).toLowerCase(Locale.ROOT);
+            final String authority = pattern.substring(schemeEnd + SCHEME_SEPARATOR.length());
+            assure(authority.indexOf('@') < 0, "Origin pattern must not contain user info: %s", pattern);
+            final int portStart = portSeparatorIndex(authority);
+            final String host = (portStart < 0 ? authority : authority.substring(0, portStart)).toLowerCase(Locale.ROOT);
+            final Set<Integer> ports = portStart < 0
+                ? Collections.singleton(NO_PORT)
+                : parsePortSet(authority.substring(portStart + 1), pattern);
+
+            if (host.startsWith(WILDCARD_PREFIX)) {
+                final String domain = host.substring(WILDCARD_PREFIX.length());
+                assure(!hasEmptyLabel(domain) && !domain.contains("*"), "Malformed origin pattern: %s", pattern);
+
+                final String[] labels = domain.split("\\.");
+                Node node = subdomainRoot;
+                for (int i = labels.length - 1; i >= 0; --i) {
+                    node = node.children.computeIfAbsent(labels[i], label -> new Node());
+                }
+                node.subdomainPorts.computeIfAbsent(scheme, s -> new HashSet<>()).addAll(ports);
+            } else {
+                assure(!hasEmptyLabel(host) && !host.contains("*"), "Malformed origin pattern: %s", pattern);
+                for (int port : ports) {
+                    exactOrigins.add(normalize(scheme, host, port));
+                }
+            }
+        }
+
+        return new PatternOriginMatcher(exactOrigins, subdomainRoot);
+    }
+
+    @Override
+    public boolean isAllowed(String origin) {
+        if (origin == null) {
+            return false;
+        }
+
+        final ParsedOrigin parsed = ParsedOrigin.parse(origin);
+        if (parsed == null) {
+            return false;
+        }
+
+        if (exactOrigins.contains(normalize(parsed.scheme, parsed.host, parsed.port))) {
+            return true;
+        }
+
+        final String[] labels = parsed.host.split("\\.");
+        Node node = subdomainRoot;
+        // Stop before the leftmost label, since a subdomain pattern does not match its own domain
+        for (int i = labels.length - 1; i > 0; --i) {
+            node = node.children.get(labels[i]);
+            if (node == null) {
+                return false;
+            }
+            final Set<Integer> ports = node.subdomainPorts.get(parsed.scheme);
+            if (ports != null && ports.contains(parsed.port)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String normalize(String scheme, String host, int port) {
+        if (port == NO_PORT) {
+            return scheme + SCHEME_SEPARATOR + host;
+        } else {
+            return scheme + SCHEME_SEPARATOR + host + ":" + port;
+        }
+    }
+
+    /**
+     * @return the index of the colon that separates the host from the port in <code>authority</code>, or -1 if there
+     * is none. Colons inside an IPv6 literal are ignored.
+     */
+    private static int portSeparatorIndex(String authority) {
+        final int hostEnd = authority.startsWith("[") ? authority.indexOf(']') : 0;
+        return authority.indexOf(':', Math.max(hostEnd, 0));
+    }
+
+    /**
+     * @return <code>true</code> if <code>host</code> is empty, or starts or ends with a dot or has two in a row.
+     */
+    private static boolean hasEmptyLabel(String host) {
+        return host.isEmpty() || host.startsWith(".") || host.endsWith(".") || host.contains("..");
+    }
+
+    /**
+     * @return the port number, or {@link #NO_PORT} if <code>port</code> is not one to {@link #MAX_PORT_DIGITS}
+     * decimal digits with a value of at most {@link #MAX_PORT}.
+     */
+    private static int parsePortNumber(String port) {
+        if (port.isEmpty() || port.length() > MAX_PORT_DIGITS) {
+            return NO_PORT;
+        }
+        int result = 0;
+        for (int i = 0; i < port.length(); ++i) {
+            final char c = port.charAt(i);
+            if (c < '0' || c > '9') {
+                return NO_PORT;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result <= MAX_PORT ? result : NO_PORT;
+    }
+
+    private static Set<Integer> parsePortSet(String ports, String pattern) {
+        if (ports.startsWith("{") && ports.endsWith("}")) {
+            final Set<Integer> result = new HashSet<>();
+            for (String port : ports.substring(1, ports.length() - 1).split(",")) {
+                result.add(parsePort(port.trim(), pattern));
+            }
+            return result;
+        } else {
+            return Collections.singleton(parsePort(ports, pattern));
+        }
+    }
+
+    private static int parsePort(String port, String pattern) {
+        final int result = parsePortNumber(port);
+        assure(result != NO_PORT, "Malformed port in origin pattern: %s", pattern);
+        return result;
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+
+        /**
+         * Ports allowed for subdomains of the domain that this node represents, by scheme.
+         */
+        private final Map<String, Set<Integer>> subdomainPorts = new HashMap<>();
+    }
+
+    @AllArgsConstructor
+    private static class ParsedOrigin {
+        private final String scheme;
+        private final String host;
+        private final int port;
+
+        /**
+         * @return the parsed origin, or <code>null</code> if <code>origin</code> is not of the form
+         * <code>scheme://host</code> or <code>scheme://host:port</code>, where <code>host</code> has no empty labels
+         * and <code>port</code> is a decimal number from 0 to 65535.
+         */
+        private static ParsedOrigin parse(String origin) {
+            final int schemeEnd = origin.indexOf(SCHEME_SEPARATOR);
+            if (schemeEnd <= 0) {
+                return null;
+            }
+
+            final String authority = origin.substring(schemeEnd + SCHEME_SEPARATOR.length());
+            if (authority.isEmpty() || authority.indexOf('/') >= 0 || authority.indexOf('?') >= 0 || authority.indexOf('#') >= 0
+                || authority.indexOf('@') >= 0) {
+                return null;
+            }
+
+            final int portStart = portSeparatorIndex(authority);
+            final int port;
+            if (portStart < 0) {
+                port = NO_PORT;
+            } else {
+                port = parsePortNumber(authority.substring(portStart + 1));
+                if (port == NO_PORT) {
+                    return null;
+                }
+            }
+
+            final String host = portStart < 0 ? authority : authority.substring(0, portStart);
+            if (hasEmptyLabel(host)) {
+                return null;
+            }
+
+            return new ParsedOrigin(
+                origin.substring(0, schemeEnd).toLowerCase(Locale.ROOT),
+                host.toLowerCase(Locale.ROOT),
+                port
+            );
+        }
+    }
+
+}
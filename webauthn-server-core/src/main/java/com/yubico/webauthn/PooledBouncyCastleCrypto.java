@@ -0,0 +1,111 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.data.ByteArray;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Optional;
+import org.bouncycastle.asn1.sec.SECNamedCurves;
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.jce.spec.ECParameterSpec;
+import org.bouncycastle.jce.spec.ECPublicKeySpec;
+import org.bouncycastle.math.ec.ECPoint;
+
+
+/**
+ * A {@link BouncyCastleCrypto} that reuses one {@link Signature} and {@link KeyFactory} per thread, builds the
+ * secp256r1 curve parameters only once, and hashes with the JDK's SHA-256 through {@link Sha256}. Signatures by keys
+ * that are verified often go through a {@link PrecomputedKeyVerifier} with precomputed tables.
+ * <p>
+ * Each <code>getInstance</code> call searches the provider's services and instantiates the engine reflectively, and
+ * {@link SECNamedCurves#getByName(String)} constructs the curve from scratch. For the short messages of a WebAuthn
+ * ceremony this costs about as much as the hashing itself. The engines are not thread-safe, so every thread gets its
+ * own; they are shared by all instances of this class. So is the {@link PrecomputedKeyVerifier}, since instances are
+ * also created per ceremony, for example by the attestation statement verifiers, and a key would otherwise never get
+ * hot.
+ */
+final class PooledBouncyCastleCrypto extends BouncyCastleCrypto {
+
+    private static final X9ECParameters CURVE = SECNamedCurves.getByName("secp256r1");
+    private static final ECParameterSpec CURVE_SPEC = new ECParameterSpec(CURVE.getCurve(), CURVE.getG(), CURVE.getN(), CURVE.getH());
+
+    private static final ThreadLocal<Signature> SIGNATURE = perThread(() -> Signature.getInstance("SHA256withECDSA", provider));
+    private static final ThreadLocal<KeyFactory> KEY_FACTORY = perThread(() -> KeyFactory.getInstance("ECDSA", provider));
+
+    private static final PrecomputedKeyVerifier HOT_KEYS = new PrecomputedKeyVerifier(PrecomputedKeyVerifier.DEFAULT_CAPACITY, PrecomputedKeyVerifier.DEFAULT_THRESHOLD);
+
+    @Override
+    public boolean verifySignature(PublicKey publicKey, ByteArray signedBytes, ByteArray signature) {
+        final Optional<Boolean> precomputed = HOT_KEYS.verify(publicKey, signedBytes, signature);
+        if (precomputed.isPresent()) {
+            return precomputed.get();
+        }
+
+        final Signature ecdsaSignature = SIGNATURE.get();
+        try {
+            ecdsaSignature.initVerify(publicKey);
+            ecdsaSignature.update(signedBytes.getBytes());
+            return ecdsaSignature.verify(signature.getBytes());
+        } catch (GeneralSecurityException e) {
+            throw verificationFailed(publicKey, signedBytes, signature, e);
+        }
+    }
+
+    /**
+     * @return this thread's {@link Signature} instance. It must not be used again until the caller is done with it.
+     */
+    @Override
+    Signature sha256WithEcdsaSignature() {
+        return SIGNATURE.get();
+    }
+
+    @Override
+    public PublicKey decodePublicKey(ByteArray encodedPublicKey) {
+        final ECPoint point;
+        try {
+            point = CURVE.getCurve().decodePoint(encodedPublicKey.getBytes());
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException(
+                "Could not parse user public key: " + encodedPublicKey.getBase64Url(),
+                e
+            );
+        }
+
+        try {
+            return KEY_FACTORY.get().generatePublic(new ECPublicKeySpec(point, CURVE_SPEC));
+        } catch (GeneralSecurityException e) { //This should not happen
+            throw new RuntimeException(
+                "Failed to decode public key: " + encodedPublicKey.getBase64Url(),
+                e
+            );
+        }
+    }
+
+    @Override
+    public ByteArray hash(ByteArray bytes) {
+        return Sha256.hash(bytes);
+    }
+
+    @Override
+    public ByteArray hash(String str) {
+        return Sha256.hash(str);
+    }
+
+    @FunctionalInterface
+    private interface EngineFactory<T> {
+        T create() throws NoSuchAlgorithmException;
+    }
+
+    private static <T> ThreadLocal<T> perThread(EngineFactory<T> factory) {
+        return ThreadLocal.withInitial(() -> {
+            try {
+                return factory.create();
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,195 @@
+package com.yubico.webauthn;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.yubico.webauthn.data.ByteArray;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.InvalidKeyException;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.jcajce.provider.asymmetric.util.ECUtil;
+import org.bouncycastle.math.ec.ECAlgorithms;
+import org.bouncycastle.math.ec.ECPoint;
+
+
+/**
+ * Verifies SHA256withECDSA signatures by frequently used secp256r1 keys with precomputed multiplier tables.
+ * <p>
+ * ECDSA verification is dominated by computing <code>u1 * G + u2 * Q</code>, which Bouncy Castle does with
+ * interleaved wNAF multiplications. Each needs a table of small multiples of its point, which Bouncy Castle keeps on
+ * the {@link ECPoint} instance. Keys are normally decoded anew for every ceremony, so the table of the public key
+ * <code>Q</code> is also computed anew, at about the cost of the multiplication itself. This class keeps the points of
+ * the {@link #capacity} most recently used keys. From a key's {@link #threshold}th verification on it verifies with
+ * the same point instance, whose table then stays computed, using Bouncy Castle's specialised secp256r1 arithmetic.
+ * <p>
+ * {@link #verify(PublicKey, ByteArray, ByteArray)} only handles keys that are hot, valid and on secp256r1, and
+ * signatures that are canonical DER. For anything else it declines, and the caller falls back to the JCA path, so
+ * malformed input is treated exactly as before.
+ */
+final class PrecomputedKeyVerifier {
+
+    static final int DEFAULT_CAPACITY = 256;
+    static final int DEFAULT_THRESHOLD = 4;
+
+    private static final X9ECParameters CURVE = CustomNamedCurves.getByName("secp256r1");
+    private static final ECPoint G = CURVE.getG();
+    private static final BigInteger N = CURVE.getN();
+
+    private final int capacity;
+    private final int threshold;
+    private final Cache<ECPoint, Entry> keys;
+
+    /**
+     * @param capacity the maximum number of keys to track.
+     * @param threshold the number of verifications by a key, including the current one, from which on it is verified
+     * with a precomputed table.
+     */
+    PrecomputedKeyVerifier(int capacity, int threshold) {
+        this.capacity = capacity;
+        this.threshold = threshold;
+        this.keys = CacheBuilder.newBuilder().maximumSize(capacity).build();
+    }
+
+    /**
+     * @return the verification result, or empty if <code>publicKey</code> or <code>signature</code> is not handled by
+     * this verifier.
+     */
+    Optional<Boolean> verify(PublicKey publicKey, ByteArray signedBytes, ByteArray signature) {
+        final ECPoint q = toCurvePoint(publicKey);
+        if (q == null) {
+            return Optional.empty();
+        }
+
+        final Entry entry = keys.asMap().computeIfAbsent(q, Entry::new);
+        if (!entry.valid || entry.uses.incrementAndGet() < threshold) {
+            return Optional.empty();
+        }
+
+        final BigInteger[] rs = decodeSignature(signature);
+        if (rs == null) {
+            return Optional.empty();
+        }
+
+        if (!entry.precomputed) {
+            precompute(entry);
+        }
+
+        return Optional.of(verify(entry.point, Sha256.hash(signedBytes), rs[0], rs[1]));
+    }
+
+    /**
+     * @return the number of keys currently tracked.
+     */
+    long size() {
+        return keys.size();
+    }
+
+    /**
+     * @return whether <code>publicKey</code> currently has a precomputed table.
+     */
+    boolean isPrecomputed(PublicKey publicKey) {
+        final ECPoint q = toCurvePoint(publicKey);
+        final Entry entry = q == null ? null : keys.getIfPresent(q);
+        return entry != null && entry.precomputed;
+    }
+
+    private static boolean verify(ECPoint q, ByteArray hash, BigInteger r, BigInteger s) {
+        if (r.signum() <= 0 || r.compareTo(N) >= 0 || s.signum() <= 0 || s.compareTo(N) >= 0) {
+            return false;
+        }
+
+        // The SHA-256 hash is exactly as long as the order of secp256r1, so it is not truncated
+        final BigInteger e = new BigInteger(1, hash.getBytes());
+        final BigInteger c = s.modInverse(N);
+        final BigInteger u1 = e.multiply(c).mod(N);
+        final BigInteger u2 = r.multiply(c).mod(N);
+
+        final ECPoint point = ECAlgorithms.sumOfTwoMultiplies(G, u1, q, u2).normalize();
+        return !point.isInfinity() && point.getAffineXCoord().toBigInteger().mod(N).equals(r);
+    }
+
+    /**
+     * Compute the table of <code>entry</code>'s point once, instead of in every thread that finds it missing. The
+     * table is sized for full-length scalars, so that it also covers every shorter one.
+     */
+    private static void precompute(Entry entry) {
+        synchronized (entry) {
+            if (!entry.precomputed) {
+                ECAlgorithms.sumOfTwoMultiplies(G, N.subtract(BigInteger.ONE), entry.point, N.subtract(BigInteger.ONE));
+                entry.precomputed = true;
+            }
+        }
+    }
+
+    /**
+     * @return the point of <code>publicKey</code> on this verifier's curve, or <code>null</code> if it is not a key on
+     * secp256r1.
+     */
+    private static ECPoint toCurvePoint(PublicKey publicKey) {
+        final ECPublicKeyParameters parameters;
+        try {
+            parameters = (ECPublicKeyParameters) ECUtil.generatePublicKeyParameter(publicKey);
+        } catch (InvalidKeyException | ClassCastException e) {
+            return null;
+        }
+
+        final ECDomainParameters domain = parameters.getParameters();
+        if (!domain.getCurve().equals(CURVE.getCurve()) || !domain.getG().equals(G) || !domain.getN().equals(N)) {
+            return null;
+        }
+        return CURVE.getCurve().importPoint(parameters.getQ()).normalize();
+    }
+    /**
+     * @return <code>r</code> and <code>s</code>, or <code>null</code> if <code>signature</code> is not a canonical DER
+     * encoding of them.
+     */
+    private static BigInteger[] decodeSignature(ByteArray signature) {
+        final byte[] encoded = signature.getBytes();
+        try {
+            final ASN1Primitive primitive = ASN1Primitive.fromByteArray(encoded);
+            if (!(primitive instanceof ASN1Sequence)) {
+                return null;
+            }
+
+            final ASN1Sequence sequence = (ASN1Sequence) primitive;
+            if (sequence.size() != 2
+                || !(sequence.getObjectAt(0) instanceof ASN1Integer)
+                || !(sequence.getObjectAt(1) instanceof ASN1Integer)
+                || !Arrays.equals(encoded, sequence.getEncoded(ASN1Encoding.DER))
+            ) {
+                return null;
+            }
+
+            return new BigInteger[] {
+                ((ASN1Integer) sequence.getObjectAt(0)).getValue(),
+                ((ASN1Integer) sequence.getObjectAt(1)).getValue(),
+            };
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static final class Entry {
+        private final ECPoint point;
+        private final boolean valid;
+        private final AtomicLong uses = new AtomicLong();
+        private volatile boolean precomputed = false;
+
+        private Entry(ECPoint point) {
+            this.point = point;
+            this.valid = point.isValid();
+        }
+    }
+
+}
@@ -0,0 +1,188 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.data.AssertionRequest;
+import com.yubico.webauthn.data.AuthenticatorAssertionResponse;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.PublicKeyCredential;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+
+
+/**
+ * A {@link CredentialRepository} that answers user handle, username and credential lookups from results fetched up
+ * front, and delegates everything else.
+ * <p>
+ * This lets the ceremony steps run unchanged on data that was fetched in bulk or asynchronously.
+ */
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+class PrefetchedCredentialRepository implements CredentialRepository {
+
+    @NonNull
+    private final CredentialRepository delegate;
+
+    @NonNull
+    private final Map<String, Optional<ByteArray>> userHandlesByUsername;
+
+    @NonNull
+    private final Map<ByteArray, Optional<String>> usernamesByUserHandle;
+
+    /**
+     * The user handle that each credential in {@link #credentials} was looked up for.
+     */
+    @NonNull
+    private final Map<ByteArray, ByteArray> userHandlesByCredentialId;
+
+    /**
+     * Results of {@link #lookup(ByteArray, ByteArray)}. Credential IDs in {@link #userHandlesByCredentialId} but not in
+     * this map were not found.
+     */
+    @NonNull
+    private final Map<ByteArray, RegisteredCredential> credentials;
+
+    /**
+     * Results of {@link #lookupAll(ByteArray)}.
+     */
+    @NonNull
+    private final Map<ByteArray, Set<RegisteredCredential>> allCredentials;
+
+    /**
+     * Resolve the user handles of all <code>assertions</code> and fetch their credentials using a single {@link
+     * CredentialRepository#lookupBatch(Map)} call.
+     */
+    static PrefetchedCredentialRepository prefetch(CredentialRepository delegate, Collection<FinishAssertionOptions> assertions) {
+        final Map<String, Optional<ByteArray>> userHandlesByUsername = new HashMap<>();
+        final Map<ByteArray, ByteArray> userHandlesByCredentialId = new HashMap<>(assertions.size());
+
+        for (FinishAssertionOptions assertion : assertions) {
+            final Optional<ByteArray> userHandle = assertion.getResponse().getResponse().getUserHandle()
+                .map(Optional::of)
+                .orElseGet(() -> assertion.getRequest().getUsername().flatMap(username ->
+                    userHandlesByUsername.computeIfAbsent(username, delegate::getUserHandleForUsername)
+                ));
+
+            // A credential ID claimed for several different user handles is left to an individual lookup
+            userHandle.ifPresent(uh -> userHandlesByCredentialId.putIfAbsent(assertion.getResponse().getId(), uh));
+        }
+
+        return new PrefetchedCredentialRepository(
+            delegate,
+            userHandlesByUsername,
+            Collections.emptyMap(),
+            userHandlesByCredentialId,
+            userHandlesByCredentialId.isEmpty()
+                ? Collections.emptyMap()
+                : delegate.lookupBatch(userHandlesByCredentialId),
+            Collections.emptyMap()
+        );
+    }
+
+    /**
+     * Make the same user handle, username and credential lookups that the steps of an assertion ceremony for
+     * <code>request</code> and <code>response</code> would make, as far as they can be made without validating the
+     * response. Lookups that would not have been made, because an earlier one found nothing, are left out.
+     */
+    static PrefetchedCredentialRepository prefetch(
+        CredentialRepository delegate,
+        AssertionRequest request,
+        PublicKeyCredential<AuthenticatorAssertionResponse, ?> response
+    ) {
+        final Optional<ByteArray> responseUserHandle = response.getResponse().getUserHandle();
+        final Optional<String> requestUsername = request.getUsername();
+
+        final Map<String, Optional<ByteArray>> userHandlesByUsername = new HashMap<>(1);
+        final Map<ByteArray, Optional<String>> usernamesByUserHandle = new HashMap<>(1);
+        final Map<ByteArray, ByteArray> userHandlesByCredentialId = new HashMap<>(1);
+        final Map<ByteArray, RegisteredCredential> credentials = new HashMap<>(1);
+
+        final Optional<ByteArray> userHandle;
+        if (responseUserHandle.isPresent()) {
+            userHandle = responseUserHandle;
+        } else if (requestUsername.isPresent()) {
+            userHandle = delegate.getUserHandleForUsername(requestUsername.get());
+            userHandlesByUsername.put(requestUsername.get(), userHandle);
+        } else {
+            userHandle = Optional.empty();
+        }
+
+        final boolean usernameFound;
+        if (userHandle.isPresent() && !requestUsername.isPresent()) {
+            final Optional<String> username = delegate.getUsernameForUserHandle(userHandle.get());
+            usernamesByUserHandle.put(userHandle.get(), username);
+            usernameFound = username.isPresent();
+        } else {
+            usernameFound = requestUsername.isPresent();
+        }
+
+        if (userHandle.isPresent() && usernameFound) {
+            userHandlesByCredentialId.put(response.getId(), userHandle.get());
+            delegate.lookup(response.getId(), userHandle.get()).ifPresent(credential -> credentials.put(response.getId(), credential));
+        }
+
+        return new PrefetchedCredentialRepository(
+            delegate,
+            userHandlesByUsername,
+            usernamesByUserHandle,
+            userHandlesByCredentialId,
+            credentials,
+            Collections.emptyMap()
+        );
+    }
+
+    @Override
+    public Set<PublicKeyCredentialDescriptor> getCredentialIdsForUsername(String username) {
+        return delegate.getCredentialIdsForUsername(username);
+    }
+
+    @Override
+    public Optional<ByteArray> getUserHandleForUsername(String username) {
+        final Optional<ByteArray> prefetched = userHandlesByUsername.get(username);
+        if (prefetched == null) {
+            return delegate.getUserHandleForUsername(username);
+        } else {
+            return prefetched;
+        }
+    }
+
+    @Override
+    public Optional<String> getUsernameForUserHandle(ByteArray userHandle) {
+        final Optional<String> prefetched = usernamesByUserHandle.get(userHandle);
+        if (prefetched == null) {
+            return delegate.getUsernameForUserHandle(userHandle);
+        } else {
+            return prefetched;
+        }
+    }
+
+    @Override
+    public Optional<RegisteredCredential> lookup(ByteArray credentialId, ByteArray userHandle) {
+        if (userHandle.equals(userHandlesByCredentialId.get(credentialId))) {
+            return Optional.ofNullable(credentials.get(credentialId));
+        } else {
+            return delegate.lookup(credentialId, userHandle);
+        }
+    }
+
+    @Override
+    public Set<RegisteredCredential> lookupAll(ByteArray credentialId) {
+        final Set<RegisteredCredential> prefetched = allCredentials.get(credentialId);
+        if (prefetched == null) {
+            return delegate.lookupAll(credentialId);
+        } else {
+            return prefetched;
+        }
+    }
+
+    @Override
+    public Map<ByteArray, RegisteredCredential> lookupBatch(Map<ByteArray, ByteArray> userHandlesByCredentialId) {
+        return delegate.lookupBatch(userHandlesByCredentialId);
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.yubico.webauthn;
+
+import COSE.CoseException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.yubico.internal.util.WebAuthnCodecs;
+import com.yubico.webauthn.data.ByteArray;
+import java.io.IOException;
+import java.security.PublicKey;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.NonNull;
+
+import static com.yubico.internal.util.ExceptionUtil.assure;
+
+
+/**
+ * A bounded, thread-safe cache of public keys decoded from their COSE encoding, keyed by credential ID.
+ * <p>
+ * Decoding a stored COSE key takes a CBOR parse, a cose-java key object and an EC point decode, on every lookup of the
+ * credential. With this cache, that happens once per credential for as long as it stays cached. Each entry is weighed
+ * by the size of its credential ID and COSE key plus an estimate of the decoded key's footprint; the least recently
+ * used entries are evicted when the total would exceed {@link #maximumBytes}.
+ * <p>
+ * Each entry also holds the COSE key it was decoded from, and is only used for that same COSE key. A credential whose
+ * stored key has changed is therefore decoded again instead of served from the cache.
+ *
+ * @see #decorate(CoseCredentialRepository)
+ */
+public final class PublicKeyCache {
+
+    /**
+     * A rough estimate of the memory held by a decoded P-256 key and its cache entry, apart from the credential ID and
+     * the COSE key.
+     */
+    static final int ENTRY_OVERHEAD_BYTES = 512;
+
+    private final long maximumBytes;
+    private final Cache<ByteArray, Entry> cache;
+
+    /**
+     * @param maximumBytes the approximate maximum memory to use for cached keys. Default: 16 MiB, or about 25,000
+     * keys.
+     */
+    @Builder
+    private PublicKeyCache(Long maximumBytes) {
+        this.maximumBytes = maximumBytes == null ? 16 * 1024 * 1024 : maximumBytes;
+        assure(this.maximumBytes > 0, "Maximum size must be positive.");
+
+        this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(this.maximumBytes)
+            .weigher((ByteArray credentialId, Entry entry) -> credentialId.size() + entry.publicKeyCose.size() + ENTRY_OVERHEAD_BYTES)
+            .build();
+    }
+
+    /**
+     * Like {@link WebAuthnCodecs#importCoseP256PublicKey(ByteArray)}, but returns the cached key if
+     * <code>publicKeyCose</code> has been decoded for <code>credentialId</code> before.
+     */
+    public PublicKey importCoseP256PublicKey(@NonNull ByteArray credentialId, @NonNull ByteArray publicKeyCose) throws CoseException, IOException {
+        final Entry cached = cache.getIfPresent(credentialId);
+        if (cached != null && cached.publicKeyCose.equals(publicKeyCose)) {
+            return cached.publicKey;
+        }
+
+        final PublicKey publicKey = WebAuthnCodecs.importCoseP256PublicKey(publicKeyCose);
+        cache.put(credentialId, new Entry(publicKeyCose, publicKey));
+        return publicKey;
+    }
+
+    /**
+     * Forget the key of <code>credentialId</code>, for example when the credential is deregistered.
+     */
+    public void invalidate(@NonNull ByteArray credentialId) {
+        cache.invalidate(credentialId);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return the approximate number of cached keys.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * @return a {@link CredentialRepository} that looks up credentials in <code>credentialRepository</code> and decodes
+     * their public keys through this cache.
+     */
+    public CredentialRepository decorate(@NonNull CoseCredentialRepository credentialRepository) {
+        return new CachingCredentialRepository(credentialRepository, this);
+    }
+
+    @AllArgsConstructor
+    private static final class Entry {
+        private final ByteArray publicKeyCose;
+        private final PublicKey publicKey;
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.data.RegistrationResult;
+import java.util.Optional;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * The outcome of {@link RelyingParty#tryFinishRegistration(FinishRegistrationOptions)}: either a {@link
+ * RegistrationResult} or a {@link CeremonyFailure} describing why {@link
+ * RelyingParty#finishRegistration(FinishRegistrationOptions)} would have failed for the same input.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class RegistrationOutcome {
+
+    @NonNull
+    private final Optional<RegistrationResult> result;
+
+    @NonNull
+    private final Optional<CeremonyFailure> failure;
+
+    static RegistrationOutcome success(@NonNull RegistrationResult result) {
+        return new RegistrationOutcome(Optional.of(result), Optional.empty());
+    }
+
+    static RegistrationOutcome failure(@NonNull CeremonyFailure failure) {
+        return new RegistrationOutcome(Optional.empty(), Optional.of(failure));
+    }
+
+    public boolean isSuccess() {
+        return result.isPresent();
+    }
+
+}
@@ -1,6 +1,8 @@
 package com.yubico.webauthn;
 
+import com.yubico.internal.util.FlightRecorder;
 import com.yubico.webauthn.attestation.MetadataService;
+import com.yubico.webauthn.data.AssertionExtensionInputs;
 import com.yubico.webauthn.data.AssertionRequest;
 import com.yubico.webauthn.data.AssertionResult;
 import com.yubico.webauthn.data.AttestationConveyancePreference;
@@ -12,21 +14,39 @@ import com.yubico.webauthn.data.ClientAssertionExtensionOutputs;
 import com.yubico.webauthn.data.ClientRegistrationExtensionOutputs;
 import com.yubico.webauthn.data.PublicKeyCredential;
 import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
 import com.yubico.webauthn.data.PublicKeyCredentialParameters;
 import com.yubico.webauthn.data.PublicKeyCredentialRequestOptions;
+import com.yubico.webauthn.data.RegistrationExtensionInputs;
 import com.yubico.webauthn.data.RegistrationResult;
 import com.yubico.webauthn.data.RelyingPartyIdentity;
+import com.yubico.webauthn.data.UserIdentity;
+import com.yubico.webauthn.data.UserVerificationRequirement;
 import com.yubico.webauthn.exception.AssertionFailedException;
 import com.yubico.webauthn.exception.RegistrationFailedException;
 import com.yubico.webauthn.extension.appid.AppId;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
 import lombok.Value;
 
+import static com.yubico.internal.util.ExceptionUtil.assure;
+
 
 @Builder
 @AllArgsConstructor(access = AccessLevel.PRIVATE)
@@ -36,14 +56,51 @@ public class RelyingParty {
     private final RelyingPartyIdentity rp;
     private final List<PublicKeyCredentialParameters> preferredPubkeyParams;
     private final List<String> origins;
+
+    /**
+     * Decides which origins to accept in addition to the exact ones in {@link #origins}, for example all subdomains
+     * of a given domain.
+     *
+     * @see OriginMatcher#fromPatterns(java.util.Collection)
+     */
+    @Builder.Default
+    private final Optional<OriginMatcher> originMatcher = Optional.empty();
+
     private final CredentialRepository credentialRepository;
 
+    /**
+     * The repository used by the asynchronous ceremony methods, for example {@link
+     * #finishAssertionAsync(FinishAssertionOptions)}.
+     * <p>
+     * If not set, the asynchronous methods call {@link #credentialRepository} on the {@link #verificationExecutor}, or
+     * in the calling thread if that is not set either.
+     *
+     * @see AsyncCredentialRepository#fromBlocking(CredentialRepository, java.util.concurrent.Executor)
+     */
+    @Builder.Default
+    private final Optional<AsyncCredentialRepository> asyncCredentialRepository = Optional.empty();
+
     @Builder.Default
     private final Optional<AppId> appId = Optional.empty();
     @Builder.Default
     private final ChallengeGenerator challengeGenerator = new RandomChallengeGenerator();
+
+    /**
+     * If set, {@link #startRegistration(StartRegistrationOptions)} and {@link #startAssertion(StartAssertionOptions)}
+     * and their asynchronous variants issue sealed challenges instead of using the {@link #challengeGenerator}.
+     * <p>
+     * A server with the same keys can then use {@link #restoreRegistrationRequest(PublicKeyCredential)} and {@link
+     * #restoreAssertionRequest(PublicKeyCredential)} to finish the ceremony without having stored the request.
+     */
     @Builder.Default
-    private final Crypto crypto = new BouncyCastleCrypto();
+    private final Optional<SealedChallenges> sealedChallenges = Optional.empty();
+
+    /**
+     * The implementation of the signature verification and hashing in the ceremonies. The default uses the Bouncy
+     * Castle provider; to use other JCA providers, set a {@link JcaCrypto}.
+     */
+    @Builder.Default
+    private final Crypto crypto = new PooledBouncyCastleCrypto();
     @Builder.Default
     private final Optional<AttestationConveyancePreference> attestationConveyancePreference = Optional.empty();
     @Builder.Default
@@ -59,33 +116,259 @@ public class RelyingParty {
     @Builder.Default
     private final boolean validateTypeAttribute = true;
 
+    /**
+     * If <code>true</code>, {@link #finishAssertion(FinishAssertionOptions)} and its batch and asynchronous variants
+     * run the checks that need no I/O &ndash; such as the challenge, origin, RP ID hash and flags &ndash; before
+     * looking anything up in the credential repository, and verify the signature last.
+     * <p>
+     * This rejects malformed and forged assertions without touching the credential repository. The failure messages
+     * are the same as in the default mode, but an assertion that violates several checks may be rejected for a
+     * different one of them than in the order the specification lists them.
+     */
+    @Builder.Default
+    private final boolean validateCheapestFirst = false;
+
+    /**
+     * If set, {@link #finishAssertion(FinishAssertionOptions)} and its variants reject an assertion whose request
+     * challenge is in this cache before doing anything else, and add the challenge to it once the assertion has been
+     * verified. This prevents the same assertion from being verified again, as long as the challenge is remembered.
+     *
+     * @see InMemoryReplayCache
+     */
+    @Builder.Default
+    private final Optional<ReplayCache> replayCache = Optional.empty();
+
+    /**
+     * If set, {@link #finishRegistration(FinishRegistrationOptions)}, {@link #finishAssertion(FinishAssertionOptions)}
+     * and their variants report the duration of each ceremony step, and the outcome of each ceremony, to this listener.
+     * If neither this nor {@link #metrics} is set, the steps are not timed at all.
+     */
+    @Builder.Default
+    private final Optional<CeremonyListener> ceremonyListener = Optional.empty();
+
+    /**
+     * If set, {@link #finishRegistration(FinishRegistrationOptions)}, {@link #finishAssertion(FinishAssertionOptions)}
+     * and their variants record counts and latencies of each ceremony and each ceremony step here, in addition to
+     * reporting them to the {@link #ceremonyListener}.
+     */
+    @Builder.Default
+    private final Optional<CeremonyMetrics> metrics = Optional.empty();
+
+    /**
+     * If set, {@link #finishRegistration(FinishRegistrationOptions)}, {@link #finishAssertion(FinishAssertionOptions)}
+     * and their variants report each ceremony as a span to this tracer, with a child span for each call to the {@link
+     * #credentialRepository} and {@link #metadataService}.
+     *
+     * @see InMemoryTracer
+     */
+    @Builder.Default
+    private final Optional<Tracer> tracer = Optional.empty();
+
+    /**
+     * If set, {@link #finishRegistration(FinishRegistrationOptions)} and its variants resolve attestation trust through
+     * the {@link #metadataService} and check the {@link #credentialRepository} for duplicate credential IDs on this
+     * executor, concurrently with verifying the attestation signature. A registration then takes about as long as the
+     * slowest of the three, rather than their sum.
+     * <p>
+     * Registrations fail for the same reasons as without an executor, but the credential repository and metadata
+     * service are then called even for registrations that fail an earlier step.
+     */
+    @Builder.Default
+    private final Optional<Executor> registrationExecutor = Optional.empty();
+
+    /**
+     * If set, {@link #finishAssertion(FinishAssertionOptions)} and {@link #tryFinishAssertion(FinishAssertionOptions)}
+     * start their {@link #credentialRepository} lookups on this executor as soon as they are called, and meanwhile run
+     * the checks that need no lookup as if {@link #validateCheapestFirst} were set. If one of those checks fails, the
+     * lookups are cancelled. An assertion then takes about one credential repository round trip less.
+     * <p>
+     * {@link #finishAssertions(List, Executor)} and {@link #finishAssertionAsync(FinishAssertionOptions)} already fetch
+     * their credentials up front, and ignore this setting.
+     */
+    @Builder.Default
+    private final Optional<Executor> assertionPrefetchExecutor = Optional.empty();
+
+    /**
+     * If set, {@link #finishRegistrationAsync(FinishRegistrationOptions)} and {@link
+     * #finishAssertionAsync(FinishAssertionOptions)} verify the response on this executor once their lookups have
+     * completed, rather than in the thread that completes them. That thread typically belongs to the {@link
+     * #asyncCredentialRepository}'s I/O layer, which should not be kept busy with signature verification.
+     * <p>
+     * If no {@link #asyncCredentialRepository} is set, the {@link #credentialRepository} is also called on this
+     * executor.
+     */
+    @Builder.Default
+    private final Optional<Executor> verificationExecutor = Optional.empty();
+
+    /**
+     * Hashes and lookup structures derived from the settings above, computed on first use and then shared by all
+     * ceremonies.
+     */
+    @Getter(value = AccessLevel.PACKAGE, lazy = true)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final RelyingPartyContext context = RelyingPartyContext.compile(rp.getId(), appId, origins, originMatcher, preferredPubkeyParams, crypto);
+
+    /**
+     * The {@link #credentialRepository}, wrapped to emit Java Flight Recorder events for each call if the JVM has the
+     * flight recorder API.
+     */
+    @Getter(value = AccessLevel.PRIVATE, lazy = true)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final CredentialRepository recordedCredentialRepository = FlightRecorder.isAvailable()
+        ? new FlightRecorderCredentialRepository(credentialRepository)
+        : credentialRepository;
+
     public PublicKeyCredentialCreationOptions startRegistration(StartRegistrationOptions startRegistrationOptions) {
+        return startRegistration(
+            startRegistrationOptions,
+            getRecordedCredentialRepository().getCredentialIdsForUsername(startRegistrationOptions.getUser().getName())
+        );
+    }
+
+    /**
+     * Asynchronous variant of {@link #startRegistration(StartRegistrationOptions)} which fetches the credentials to
+     * exclude using the {@link #asyncCredentialRepository}.
+     */
+    public CompletionStage<PublicKeyCredentialCreationOptions> startRegistrationAsync(StartRegistrationOptions startRegistrationOptions) {
+        return asyncCredentialRepository()
+            .getCredentialIdsForUsername(startRegistrationOptions.getUser().getName())
+            .thenApply(excludeCredentials -> startRegistration(startRegistrationOptions, excludeCredentials));
+    }
+
+    private PublicKeyCredentialCreationOptions startRegistration(
+        StartRegistrationOptions startRegistrationOptions,
+        Set<PublicKeyCredentialDescriptor> excludeCredentials
+    ) {
+        return registrationRequest(
+            sealedChallenges
+                .map(sealer -> sealer.sealRegistration(
+                    startRegistrationOptions.getUser(),
+                    startRegistrationOptions.isRequireResidentKey(),
+                    startRegistrationOptions.getExtensions()
+                ))
+                .orElseGet(challengeGenerator::generateChallenge),
+            startRegistrationOptions.getUser(),
+            startRegistrationOptions.isRequireResidentKey(),
+            Optional.of(excludeCredentials),
+            startRegistrationOptions.getExtensions()
+        );
+    }
+
+    private PublicKeyCredentialCreationOptions registrationRequest(
+        ByteArray challenge,
+        UserIdentity user,
+        boolean requireResidentKey,
+        Optional<Set<PublicKeyCredentialDescriptor>> excludeCredentials,
+        RegistrationExtensionInputs extensions
+    ) {
         return PublicKeyCredentialCreationOptions.builder()
             .rp(rp)
-            .user(startRegistrationOptions.getUser())
-            .challenge(challengeGenerator.generateChallenge())
-            .pubKeyCredParams(preferredPubkeyParams)
-            .excludeCredentials(
-                Optional.of(credentialRepository.getCredentialIdsForUsername(startRegistrationOptions.getUser().getName()))
-            )
+            .user(user)
+            .challenge(challenge)
+            .pubKeyCredParams(getContext().getPreferredPubkeyParams())
+            .excludeCredentials(excludeCredentials)
             .authenticatorSelection(Optional.of(
                 AuthenticatorSelectionCriteria.builder()
-                    .requireResidentKey(startRegistrationOptions.isRequireResidentKey())
+                    .requireResidentKey(requireResidentKey)
                     .build()
             ))
             .attestation(attestationConveyancePreference.orElse(AttestationConveyancePreference.DEFAULT))
-            .extensions(startRegistrationOptions.getExtensions())
+            .extensions(extensions)
             .build();
     }
 
-    public RegistrationResult finishRegistration(FinishRegistrationOptions finishRegistrationOptions) throws RegistrationFailedException {
+    /**
+     * Rebuild the request that a registration response was created for, from the sealed challenge in its client data.
+     * <p>
+     * The restored request has the same user, challenge, authenticator selection criteria and extensions as the one
+     * returned by {@link #startRegistration(StartRegistrationOptions)}, which is all that {@link
+     * #finishRegistration(FinishRegistrationOptions)} needs. It has no <code>excludeCredentials</code>.
+     *
+     * @throws RegistrationFailedException if the challenge was not sealed by the {@link #sealedChallenges} of this
+     * relying party, was sealed for an assertion, or has expired.
+     * @throws IllegalStateException if {@link #sealedChallenges} is not set.
+     */
+    public PublicKeyCredentialCreationOptions restoreRegistrationRequest(
+        PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> response
+    ) throws RegistrationFailedException {
+        final ByteArray challenge = response.getResponse().getClientData().getChallenge();
         try {
-            return _finishRegistration(finishRegistrationOptions.getRequest(), finishRegistrationOptions.getResponse(), finishRegistrationOptions.getCallerTokenBindingId()).run();
+            final SealedChallenges.RegistrationParameters parameters = sealedChallenges().unsealRegistration(challenge);
+            return registrationRequest(
+                challenge,
+                parameters.getUser(),
+                parameters.isRequireResidentKey(),
+                Optional.empty(),
+                parameters.getExtensions()
+            );
         } catch (IllegalArgumentException e) {
             throw new RegistrationFailedException(e);
         }
     }
 
+    public RegistrationResult finishRegistration(FinishRegistrationOptions finishRegistrationOptions) throws RegistrationFailedException {
+        final RegistrationOutcome outcome = tryFinishRegistration(finishRegistrationOptions);
+        if (outcome.isSuccess()) {
+            return outcome.getResult().get();
+        } else {
+            throw new RegistrationFailedException(outcome.getFailure().get().toException());
+        }
+    }
+
+    /**
+     * Variant of {@link #finishRegistration(FinishRegistrationOptions)} that reports a failed registration as a {@link
+     * RegistrationOutcome} instead of throwing a {@link RegistrationFailedException}.
+     * <p>
+     * This avoids the cost of constructing exceptions and formatting failure messages when many registration attempts
+     * fail.
+     */
+    public RegistrationOutcome tryFinishRegistration(FinishRegistrationOptions finishRegistrationOptions) {
+        return _finishRegistrationSinglePass(
+            finishRegistrationOptions.getRequest(),
+            finishRegistrationOptions.getResponse(),
+            finishRegistrationOptions.getCallerTokenBindingId()
+        ).outcome();
+    }
+
+    /**
+     * Asynchronous variant of {@link #finishRegistration(FinishRegistrationOptions)}.
+     * <p>
+     * The existing registrations of the new credential ID are fetched using the {@link #asyncCredentialRepository},
+     * and the remaining verification runs on the {@link #verificationExecutor}, or in the thread that completes that
+     * lookup if none is set. The returned stage completes
+     * exceptionally with a {@link RegistrationFailedException} in the cases where {@link
+     * #finishRegistration(FinishRegistrationOptions)} would throw one.
+     */
+    public CompletionStage<RegistrationResult> finishRegistrationAsync(FinishRegistrationOptions finishRegistrationOptions) {
+        final ByteArray credentialId = finishRegistrationOptions.getResponse().getId();
+
+        return thenVerify(asyncCredentialRepository().lookupAll(credentialId), registrations -> {
+            final CredentialRepository prefetchedRepository = new PrefetchedCredentialRepository(
+                getRecordedCredentialRepository(),
+                Collections.emptyMap(),
+                Collections.emptyMap(),
+                Collections.emptyMap(),
+                Collections.emptyMap(),
+                Collections.singletonMap(credentialId, registrations)
+            );
+
+            final CompletableFuture<RegistrationResult> result = new CompletableFuture<>();
+            try {
+                result.complete(_finishRegistrationSinglePass(
+                    finishRegistrationOptions.getRequest(),
+                    finishRegistrationOptions.getResponse(),
+                    finishRegistrationOptions.getCallerTokenBindingId(),
+                    prefetchedRepository
+                ).run());
+            } catch (IllegalArgumentException e) {
+                result.completeExceptionally(new RegistrationFailedException(e));
+            }
+            return result;
+        });
+    }
+
     /**
      * This method is NOT part of the public API.
      *
@@ -104,8 +387,7 @@ public class RelyingParty {
             .response(response)
             .callerTokenBindingId(callerTokenBindingId)
             .credentialRepository(credentialRepository)
-            .origins(origins)
-            .rpId(rp.getId())
+            .context(getContext())
             .crypto(crypto)
             .allowMissingTokenBinding(allowMissingTokenBinding)
             .allowUnrequestedExtensions(allowUnrequestedExtensions)
@@ -115,18 +397,102 @@ public class RelyingParty {
             .build();
     }
 
+    /**
+     * This method is NOT part of the public API.
+     *
+     * This is the single-pass equivalent of {@link #_finishRegistration(PublicKeyCredentialCreationOptions,
+     * PublicKeyCredential, Optional)}, and is what {@link #finishRegistration(FinishRegistrationOptions)} runs. It is
+     * package-private so that tests can verify that both give the same results.
+     */
+    FinishRegistrationSinglePass _finishRegistrationSinglePass(
+        PublicKeyCredentialCreationOptions request,
+        PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> response,
+        Optional<ByteArray> callerTokenBindingId
+    ) {
+        return _finishRegistrationSinglePass(request, response, callerTokenBindingId, getRecordedCredentialRepository());
+    }
+
+    private FinishRegistrationSinglePass _finishRegistrationSinglePass(
+        PublicKeyCredentialCreationOptions request,
+        PublicKeyCredential<AuthenticatorAttestationResponse, ClientRegistrationExtensionOutputs> response,
+        Optional<ByteArray> callerTokenBindingId,
+        CredentialRepository credentialRepository
+    ) {
+        return FinishRegistrationSinglePass.builder()
+            .request(request)
+            .response(response)
+            .callerTokenBindingId(callerTokenBindingId)
+            .credentialRepository(credentialRepository)
+            .context(getContext())
+            .crypto(crypto)
+            .allowMissingTokenBinding(allowMissingTokenBinding)
+            .allowUnrequestedExtensions(allowUnrequestedExtensions)
+            .allowUntrustedAttestation(allowUntrustedAttestation)
+            .metadataService(metadataService)
+            .validateTypeAttribute(validateTypeAttribute)
+            .listener(ceremonyListener())
+            .tracer(tracer)
+            .executor(registrationExecutor)
+            .build();
+    }
+
     public AssertionRequest startAssertion(StartAssertionOptions startAssertionOptions) {
+        return startAssertion(
+            startAssertionOptions,
+            startAssertionOptions.getUsername().map(getRecordedCredentialRepository()::getCredentialIdsForUsername)
+        );
+    }
+
+    /**
+     * Asynchronous variant of {@link #startAssertion(StartAssertionOptions)} which fetches the allowed credentials
+     * using the {@link #asyncCredentialRepository}.
+     */
+    public CompletionStage<AssertionRequest> startAssertionAsync(StartAssertionOptions startAssertionOptions) {
+        if (startAssertionOptions.getUsername().isPresent()) {
+            return asyncCredentialRepository()
+                .getCredentialIdsForUsername(startAssertionOptions.getUsername().get())
+                .thenApply(allowCredentials -> startAssertion(startAssertionOptions, Optional.of(allowCredentials)));
+        } else {
+            return CompletableFuture.completedFuture(startAssertion(startAssertionOptions, Optional.empty()));
+        }
+    }
+
+    private AssertionRequest startAssertion(
+        StartAssertionOptions startAssertionOptions,
+        Optional<Set<PublicKeyCredentialDescriptor>> allowCredentials
+    ) {
+        return assertionRequest(
+            sealedChallenges
+                .map(sealer -> sealer.sealAssertion(
+                    startAssertionOptions.getUsername(),
+                    allowCredentials,
+                    UserVerificationRequirement.DEFAULT,
+                    startAssertionOptions.getExtensions()
+                ))
+                .orElseGet(challengeGenerator::generateChallenge),
+            startAssertionOptions.getUsername(),
+            allowCredentials,
+            UserVerificationRequirement.DEFAULT,
+            startAssertionOptions.getExtensions()
+        );
+    }
+
+    private AssertionRequest assertionRequest(
+        ByteArray challenge,
+        Optional<String> username,
+        Optional<Set<PublicKeyCredentialDescriptor>> allowCredentials,
+        UserVerificationRequirement userVerification,
+        AssertionExtensionInputs extensions
+    ) {
         return AssertionRequest.builder()
-            .username(startAssertionOptions.getUsername())
+            .username(username)
             .publicKeyCredentialRequestOptions(PublicKeyCredentialRequestOptions.builder()
                 .rpId(Optional.of(rp.getId()))
-                .challenge(challengeGenerator.generateChallenge())
-                .allowCredentials(
-                    startAssertionOptions.getUsername().map(un ->
-                        new ArrayList<>(credentialRepository.getCredentialIdsForUsername(un)))
-                )
+                .challenge(challenge)
+                .allowCredentials(allowCredentials.map(credentialIds -> new ArrayList<>(credentialIds)))
+                .userVerification(userVerification)
                 .extensions(
-                    startAssertionOptions.getExtensions()
+                    extensions
                         .toBuilder()
                         .appid(appId)
                         .build()
@@ -136,19 +502,196 @@ public class RelyingParty {
             .build();
     }
 
-    public AssertionResult finishAssertion(FinishAssertionOptions finishAssertionOptions) throws AssertionFailedException {
+    /**
+     * Rebuild the request that an assertion response was created for, from the sealed challenge in its client data.
+     * <p>
+     * The restored request has the same username, challenge, user verification requirement and extensions as the one
+     * returned by {@link #startAssertion(StartAssertionOptions)}. If the request was for a particular user, the allowed
+     * credentials are fetched again from the {@link #credentialRepository} and must be the same as when the challenge
+     * was issued.
+     *
+     * @throws AssertionFailedException if the challenge was not sealed by the {@link #sealedChallenges} of this
+     * relying party, was sealed for a registration, or has expired, or if the user's credentials have changed since.
+     * @throws IllegalStateException if {@link #sealedChallenges} is not set.
+     */
+    public AssertionRequest restoreAssertionRequest(
+        PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> response
+    ) throws AssertionFailedException {
+        final ByteArray challenge = response.getResponse().getClientData().getChallenge();
         try {
-            return _finishAssertion(finishAssertionOptions.getRequest(), finishAssertionOptions.getResponse(), finishAssertionOptions.getCallerTokenBindingId()).run();
+            final SealedChallenges.AssertionParameters parameters = sealedChallenges().unsealAssertion(challenge);
+            final Optional<Set<PublicKeyCredentialDescriptor>> allowCredentials = parameters.getAllowCredentialsDigest().isPresent()
+                ? parameters.getUsername().map(getRecordedCredentialRepository()::getCredentialIdsForUsername)
+                : Optional.empty();
+
+            assure(
+                allowCredentials.map(SealedChallenges::digestCredentialIds).equals(parameters.getAllowCredentialsDigest()),
+                "The allowed credentials have changed since the challenge was issued."
+            );
+
+            return assertionRequest(
+                challenge,
+                parameters.getUsername(),
+                allowCredentials,
+                parameters.getUserVerification(),
+                parameters.getExtensions()
+            );
         } catch (IllegalArgumentException e) {
             throw new AssertionFailedException(e);
         }
     }
 
+    public AssertionResult finishAssertion(FinishAssertionOptions finishAssertionOptions) throws AssertionFailedException {
+        final AssertionOutcome outcome = tryFinishAssertion(finishAssertionOptions);
+        if (outcome.isSuccess()) {
+            return outcome.getResult().get();
+        } else {
+            throw new AssertionFailedException(outcome.getFailure().get().toException());
+        }
+    }
+
+    /**
+     * Variant of {@link #finishAssertion(FinishAssertionOptions)} that reports a failed assertion as an {@link
+     * AssertionOutcome} instead of throwing an {@link AssertionFailedException}.
+     * <p>
+     * This avoids the cost of constructing exceptions and formatting failure messages when many authentication
+     * attempts fail, for example during a credential stuffing attack.
+     */
+    public AssertionOutcome tryFinishAssertion(FinishAssertionOptions finishAssertionOptions) {
+        return _finishAssertionSinglePass(
+            finishAssertionOptions.getRequest(),
+            finishAssertionOptions.getResponse(),
+            finishAssertionOptions.getCallerTokenBindingId()
+        ).outcome();
+    }
+
+    /**
+     * Asynchronous variant of {@link #finishAssertion(FinishAssertionOptions)}.
+     * <p>
+     * The user handle, username and credential are fetched using the {@link #asyncCredentialRepository}, and the
+     * remaining verification runs on the {@link #verificationExecutor}, or in the thread that completes the last of
+     * those lookups if none is set. The returned stage completes exceptionally with an {@link AssertionFailedException} in the cases where {@link
+     * #finishAssertion(FinishAssertionOptions)} would throw one.
+     */
+    public CompletionStage<AssertionResult> finishAssertionAsync(FinishAssertionOptions finishAssertionOptions) {
+        final AsyncCredentialRepository repository = asyncCredentialRepository();
+        final ByteArray credentialId = finishAssertionOptions.getResponse().getId();
+        final Optional<String> requestUsername = finishAssertionOptions.getRequest().getUsername();
+        final Optional<ByteArray> responseUserHandle = finishAssertionOptions.getResponse().getResponse().getUserHandle();
+
+        final Optional<CeremonyFailure> failure = _finishAssertionSinglePass(
+            finishAssertionOptions.getRequest(),
+            finishAssertionOptions.getResponse(),
+            finishAssertionOptions.getCallerTokenBindingId()
+        ).precheck();
+        if (failure.isPresent()) {
+            final CompletableFuture<AssertionResult> result = new CompletableFuture<>();
+            result.completeExceptionally(new AssertionFailedException(failure.get().toException()));
+            return result;
+        }
+
+        final CompletionStage<Optional<ByteArray>> userHandleStage = responseUserHandle.isPresent() || !requestUsername.isPresent()
+            ? CompletableFuture.completedFuture(responseUserHandle)
+            : repository.getUserHandleForUsername(requestUsername.get());
+
+        final CompletionStage<Optional<String>> usernameStage = requestUsername.isPresent() || !responseUserHandle.isPresent()
+            ? CompletableFuture.completedFuture(requestUsername)
+            : repository.getUsernameForUserHandle(responseUserHandle.get());
+
+        final CompletionStage<Optional<RegisteredCredential>> credentialStage = userHandleStage.thenCompose(userHandle ->
+            userHandle.isPresent()
+                ? repository.lookup(credentialId, userHandle.get())
+                : CompletableFuture.completedFuture(Optional.<RegisteredCredential>empty())
+        );
+
+        return userHandleStage.thenCompose(userHandle -> usernameStage.thenCompose(username -> thenVerify(credentialStage, credential -> {
+            final Map<String, Optional<ByteArray>> userHandlesByUsername = new HashMap<>(1);
+            final Map<ByteArray, Optional<String>> usernamesByUserHandle = new HashMap<>(1);
+            final Map<ByteArray, ByteArray> userHandlesByCredentialId = new HashMap<>(1);
+            final Map<ByteArray, RegisteredCredential> credentials = new HashMap<>(1);
+
+            requestUsername.ifPresent(un -> userHandlesByUsername.put(un, userHandle));
+            responseUserHandle.ifPresent(uh -> usernamesByUserHandle.put(uh, username));
+            userHandle.ifPresent(uh -> userHandlesByCredentialId.put(credentialId, uh));
+            credential.ifPresent(c -> credentials.put(credentialId, c));
+
+            final CredentialRepository prefetchedRepository = new PrefetchedCredentialRepository(
+                getRecordedCredentialRepository(),
+                userHandlesByUsername,
+                usernamesByUserHandle,
+                userHandlesByCredentialId,
+                credentials,
+                Collections.emptyMap()
+            );
+
+            final CompletableFuture<AssertionResult> result = new CompletableFuture<>();
+            try {
+                result.complete(_finishAssertionSinglePass(
+                    finishAssertionOptions.getRequest(),
+                    finishAssertionOptions.getResponse(),
+                    finishAssertionOptions.getCallerTokenBindingId(),
+                    prefetchedRepository,
+                    Optional.empty()
+                ).run());
+            } catch (IllegalArgumentException e) {
+                result.completeExceptionally(new AssertionFailedException(e));
+            }
+            return result;
+        })));
+    }
+
+    /**
+     * Verify a batch of assertions.
+     * <p>
+     * This is equivalent to calling {@link #tryFinishAssertion(FinishAssertionOptions)} for each element of
+     * <code>finishAssertionOptions</code>, except that the credentials are fetched using a single {@link
+     * CredentialRepository#lookupBatch(Map)} call. A failed assertion does not abort the rest of the batch: an
+     * unexpected exception while verifying one assertion, such as for a signature that cannot be decoded, is reported
+     * as a failure with reason {@link CeremonyFailureReason#VERIFICATION_ERROR} for that assertion.
+     *
+     * @return one outcome for each element of <code>finishAssertionOptions</code>, in the same order.
+     */
+    public List<AssertionOutcome> finishAssertions(List<FinishAssertionOptions> finishAssertionOptions) {
+        return finishAssertions(finishAssertionOptions, Runnable::run);
+    }
+
+    /**
+     * Verify a batch of assertions, distributing the verification work over <code>executor</code>.
+     * <p>
+     * The credential lookups are done in the calling thread before any work is submitted to <code>executor</code>.
+     * This method blocks until all assertions in the batch have been verified.
+     *
+     * @see #finishAssertions(List)
+     */
+    public List<AssertionOutcome> finishAssertions(List<FinishAssertionOptions> finishAssertionOptions, Executor executor) {
+        final CredentialRepository prefetchedRepository = PrefetchedCredentialRepository.prefetch(
+            getRecordedCredentialRepository(),
+            validateCheapestFirst || replayCache.isPresent()
+                ? finishAssertionOptions.stream().filter(this::passesPrecheck).collect(Collectors.toList())
+                : finishAssertionOptions
+        );
+
+        final List<CompletableFuture<AssertionOutcome>> outcomes = finishAssertionOptions.stream()
+            .map(options -> CompletableFuture.supplyAsync(() -> {
+                try {
+                    return _finishAssertionSinglePass(options.getRequest(), options.getResponse(), options.getCallerTokenBindingId(), prefetchedRepository, Optional.empty()).outcome();
+                } catch (RuntimeException e) {
+                    return AssertionOutcome.failure(CeremonyFailure.withCause(CeremonyFailureReason.VERIFICATION_ERROR, String.valueOf(e.getMessage()), e));
+                }
+            }, executor))
+            .collect(Collectors.toList());
+
+        return outcomes.stream()
+            .map(CompletableFuture::join)
+            .collect(Collectors.toList());
+    }
+
     /**
      * This method is NOT part of the public API.
      *
-     * This method is called internally by {@link
-     * #finishAssertion(FinishAssertionOptions)}. It is a separate method to
+     * This method returns the step-by-step reference implementation of
+     * {@link #finishAssertion(FinishAssertionOptions)}, which runs the
+     * equivalent {@link FinishAssertionSinglePass} instead. It exists to
      * facilitate testing; users should call {@link
      * #finishAssertion(FinishAssertionOptions)} instead of this method.
      */
@@ -161,8 +704,7 @@ public class RelyingParty {
             .request(request)
             .response(response)
             .callerTokenBindingId(callerTokenBindingId)
-            .origins(origins)
-            .rpId(rp.getId())
+            .context(getContext())
             .crypto(crypto)
             .credentialRepository(credentialRepository)
             .allowMissingTokenBinding(allowMissingTokenBinding)
@@ -172,4 +714,84 @@ public class RelyingParty {
             .build();
     }
 
+    /**
+     * This method is NOT part of the public API.
+     *
+     * This is the single-pass equivalent of {@link #_finishAssertion(AssertionRequest, PublicKeyCredential,
+     * Optional)}, and is what {@link #finishAssertion(FinishAssertionOptions)} runs. It is package-private so that
+     * tests can verify that both give the same results.
+     */
+    FinishAssertionSinglePass _finishAssertionSinglePass(
+        AssertionRequest request,
+        PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> response,
+        Optional<ByteArray> callerTokenBindingId
+    ) {
+        return _finishAssertionSinglePass(request, response, callerTokenBindingId, getRecordedCredentialRepository(), assertionPrefetchExecutor);
+    }
+
+    private FinishAssertionSinglePass _finishAssertionSinglePass(
+        AssertionRequest request,
+        PublicKeyCredential<AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs> response,
+        Optional<ByteArray> callerTokenBindingId,
+        CredentialRepository credentialRepository,
+        Optional<Executor> prefetchExecutor
+    ) {
+        return FinishAssertionSinglePass.builder()
+            .request(request)
+            .response(response)
+            .callerTokenBindingId(callerTokenBindingId)
+            .context(getContext())
+            .crypto(crypto)
+            .credentialRepository(credentialRepository)
+            .allowMissingTokenBinding(allowMissingTokenBinding)
+            .allowUnrequestedExtensions(allowUnrequestedExtensions)
+            .validateSignatureCounter(validateSignatureCounter)
+            .validateTypeAttribute(validateTypeAttribute)
+            .validateCheapestFirst(validateCheapestFirst)
+            .replayCache(replayCache)
+            .listener(ceremonyListener())
+            .tracer(tracer)
+            .executor(prefetchExecutor)
+            .build();
+    }
+
+    private boolean passesPrecheck(FinishAssertionOptions finishAssertionOptions) {
+        return !_finishAssertionSinglePass(
+            finishAssertionOptions.getRequest(),
+            finishAssertionOptions.getResponse(),
+            finishAssertionOptions.getCallerTokenBindingId()
+        ).precheck().isPresent();
+    }
+
+    private Optional<CeremonyListener> ceremonyListener() {
+        if (ceremonyListener.isPresent() && metrics.isPresent()) {
+            return Optional.of(new CompositeCeremonyListener(metrics.get(), ceremonyListener.get()));
+        } else if (metrics.isPresent()) {
+            return Optional.of(metrics.get());
+        } else {
+            return ceremonyListener;
+        }
+    }
+
+    private SealedChallenges sealedChallenges() {
+        return sealedChallenges.orElseThrow(() -> new IllegalStateException("No sealedChallenges configured."));
+    }
+
+    private AsyncCredentialRepository asyncCredentialRepository() {
+        return asyncCredentialRepository.orElseGet(() ->
+            AsyncCredentialRepository.fromBlocking(getRecordedCredentialRepository(), verificationExecutor.orElse(Runnable::run))
+        );
+    }
+
+    /**
+     * Runs <code>verification</code> after <code>lookup</code>, on the {@link #verificationExecutor} if one is set.
+     */
+    private <T, R> CompletionStage<R> thenVerify(CompletionStage<T> lookup, Function<? super T, ? extends CompletionStage<R>> verification) {
+        if (verificationExecutor.isPresent()) {
+            return lookup.thenComposeAsync(verification, verificationExecutor.get());
+        } else {
+            return lookup.thenCompose(verification);
+        }
+    }
+
 }
@@ -0,0 +1,106 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.PublicKeyCredentialParameters;
+import com.yubico.webauthn.extension.appid.AppId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import lombok.Value;
+
+
+/**
+ * The parts of a {@link RelyingParty} configuration that every ceremony needs, precomputed once so that the ceremonies
+ * don't need to hash the RP ID or scan the origins list each time.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+class RelyingPartyContext {
+
+    @NonNull
+    private final String rpId;
+
+    /**
+     * SHA-256 hash of {@link #rpId}.
+     */
+    @NonNull
+    private final ByteArray rpIdHash;
+
+    @NonNull
+    private final Optional<AppId> appId;
+
+    /**
+     * SHA-256 hash of the ID of {@link #appId}, if any.
+     */
+    @NonNull
+    private final Optional<ByteArray> appIdHash;
+
+    @NonNull
+    private final Set<String> origins;
+
+    /**
+     * Additional origins to accept, beyond those in {@link #origins}.
+     */
+    @NonNull
+    private final Optional<OriginMatcher> originMatcher;
+
+    @NonNull
+    private final List<PublicKeyCredentialParameters> preferredPubkeyParams;
+
+    @NonNull
+    private final Crypto crypto;
+
+    static RelyingPartyContext compile(
+        @NonNull String rpId,
+        @NonNull Optional<AppId> appId,
+        Collection<String> origins,
+        @NonNull Optional<OriginMatcher> originMatcher,
+        List<PublicKeyCredentialParameters> preferredPubkeyParams,
+        @NonNull Crypto crypto
+    ) {
+        return new RelyingPartyContext(
+            rpId,
+            crypto.hash(rpId),
+            appId,
+            appId.map(id -> crypto.hash(id.getId())),
+            origins == null ? Collections.emptySet() : Collections.unmodifiableSet(new HashSet<>(origins)),
+            originMatcher,
+            preferredPubkeyParams == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(preferredPubkeyParams)),
+            crypto
+        );
+    }
+
+    boolean isOriginAllowed(String origin) {
+        return origins.contains(origin) || (originMatcher.isPresent() && originMatcher.get().isAllowed(origin));
+    }
+
+    /**
+     * @return <code>true</code> if and only if <code>rpIdHash</code> is the hash of {@link #rpId}, or of the ID of
+     * <code>requestAppId</code> if present.
+     */
+    boolean isRpIdHashAllowed(ByteArray rpIdHash, Optional<AppId> requestAppId) {
+        if (this.rpIdHash.equals(rpIdHash)) {
+            return true;
+        } else if (requestAppId.isPresent()) {
+            return hashAppId(requestAppId.get()).equals(rpIdHash);
+        } else {
+            return false;
+        }
+    }
+
+    private ByteArray hashAppId(AppId requestAppId) {
+        if (appIdHash.isPresent() && appId.get().equals(requestAppId)) {
+            return appIdHash.get();
+        } else {
+            return crypto.hash(requestAppId.getId());
+        }
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.data.ByteArray;
+
+
+/**
+ * Remembers the challenges of successful authentication ceremonies for a limited time, so that the same assertion
+ * cannot be verified again while the request it belongs to is still available.
+ * <p>
+ * Implementations must be thread-safe.
+ *
+ * @see RelyingParty#getReplayCache()
+ * @see InMemoryReplayCache
+ */
+public interface ReplayCache {
+
+    /**
+     * @return <code>true</code> if <code>challenge</code> has been {@link #add(ByteArray) added} and is still
+     * remembered.
+     */
+    boolean contains(ByteArray challenge);
+
+    /**
+     * Remember <code>challenge</code> as used.
+     *
+     * @return <code>true</code> if <code>challenge</code> was not already remembered and is now, <code>false</code>
+     * otherwise. An implementation that is full must return <code>false</code> rather than forget challenges that may
+     * still be replayed. If several threads add the same challenge at the same time, at most one of them gets
+     * <code>true</code>.
+     */
+    boolean add(ByteArray challenge);
+
+}
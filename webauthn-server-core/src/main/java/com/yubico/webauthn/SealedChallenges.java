@@ -0,0 +1,367 @@
+package com.yubico.webauthn;
+
+import com.yubico.internal.util.WebAuthnCodecs;
+import com.yubico.webauthn.data.AssertionExtensionInputs;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import com.yubico.webauthn.data.RegistrationExtensionInputs;
+import com.yubico.webauthn.data.UserIdentity;
+import com.yubico.webauthn.data.UserVerificationRequirement;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Singular;
+import lombok.Value;
+
+import static com.yubico.internal.util.ExceptionUtil.assure;
+
+
+/**
+ * Issues challenges that carry an authenticated, expiring encoding of the essential parts of the request they belong
+ * to, so that any server sharing the same keys can finish a ceremony without having stored the request.
+ * <p>
+ * A sealed challenge consists of a format version, the ID of the key it was sealed with, the time it was issued, a
+ * random nonce, the sealed request parameters, including the requested extensions, and an HMAC-SHA256 tag over all of
+ * the above. Keys are identified by a number from 0 to 255, so that a new key can be rolled out while challenges
+ * sealed with the previous one are still accepted.
+ * <p>
+ * Nothing is remembered about issued challenges, so a sealed challenge can be used more than once until it expires.
+ *
+ * @see RelyingParty#getSealedChallenges()
+ * @see RelyingParty#restoreAssertionRequest(com.yubico.webauthn.data.PublicKeyCredential)
+ * @see RelyingParty#restoreRegistrationRequest(com.yubico.webauthn.data.PublicKeyCredential)
+ */
+public final class SealedChallenges {
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MIN_KEY_LENGTH = 16;
+    private static final int NONCE_LENGTH = 16;
+    private static final int TAG_LENGTH = 32;
+    private static final int MAX_FIELD_LENGTH = 255;
+    private static final int MAX_EXTENSIONS_LENGTH = 65535;
+    private static final byte VERSION = 1;
+
+    static final byte PURPOSE_REGISTRATION = 1;
+    static final byte PURPOSE_ASSERTION = 2;
+
+    static final byte USER_VERIFICATION_DISCOURAGED = 1;
+    static final byte USER_VERIFICATION_PREFERRED = 2;
+    static final byte USER_VERIFICATION_REQUIRED = 3;
+
+    private final int currentKeyId;
+    private final Map<Integer, SecretKeySpec> keys;
+    private final Duration validity;
+    private final Clock clock;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * @param currentKeyId the ID of the key to seal new challenges with. Must be one of the keys in <code>keys</code>.
+     * @param keys the keys to accept when unsealing challenges, by key ID. Each key must be at least 16 bytes long.
+     * @param validity how long after its issuance a challenge is accepted. Default: 5 minutes.
+     * @param clock the clock used to timestamp and expire challenges. Default: {@link Clock#systemUTC()}.
+     */
+    @Builder
+    private SealedChallenges(
+        int currentKeyId,
+        @Singular @NonNull Map<Integer, ByteArray> keys,
+        Duration validity,
+        Clock clock
+    ) {
+        assure(keys.containsKey(currentKeyId), "The current key ID %d must be one of the keys.", currentKeyId);
+
+        final Map<Integer, SecretKeySpec> keySpecs = new HashMap<>();
+        for (Map.Entry<Integer, ByteArray> key : keys.entrySet()) {
+            assure(key.getKey() >= 0 && key.getKey() <= 255, "Key ID must be between 0 and 255: %d", key.getKey());
+            assure(key.getValue().size() >= MIN_KEY_LENGTH, "Key %d must be at least %d bytes long.", key.getKey(), MIN_KEY_LENGTH);
+            keySpecs.put(key.getKey(), new SecretKeySpec(key.getValue().getBytes(), MAC_ALGORITHM));
+        }
+
+        this.currentKeyId = currentKeyId;
+        this.keys = Collections.unmodifiableMap(keySpecs);
+        this.validity = validity == null ? Duration.ofMinutes(5) : validity;
+        this.clock = clock == null ? Clock.systemUTC() : clock;
+    }
+
+    /**
+     * The request parameters sealed into a registration challenge.
+     */
+    @Value
+    @AllArgsConstructor(access = AccessLevel.PACKAGE)
+    static class RegistrationParameters {
+        @NonNull private final UserIdentity user;
+        private final boolean requireResidentKey;
+        @NonNull private final RegistrationExtensionInputs extensions;
+    }
+
+    /**
+     * The request parameters sealed into an assertion challenge.
+     */
+    @Value
+    @AllArgsConstructor(access = AccessLevel.PACKAGE)
+    static class AssertionParameters {
+        @NonNull private final Optional<String> username;
+
+        /**
+         * SHA-256 hash of the sorted IDs of the allowed credentials, if the request had an allow list.
+         */
+        @NonNull private final Optional<ByteArray> allowCredentialsDigest;
+
+        @NonNull private final UserVerificationRequirement userVerification;
+        @NonNull private final AssertionExtensionInputs extensions;
+    }
+
+    ByteArray sealRegistration(UserIdentity user, boolean requireResidentKey, RegistrationExtensionInputs extensions) {
+        final byte[] userId = user.getId().getBytes();
+        final byte[] name = utf8(user.getName());
+        final byte[] displayName = utf8(user.getDisplayName());
+        final byte[] extensionsJson = toJson(extensions);
+
+        final ByteBuffer body = ByteBuffer.allocate(6 + userId.length + name.length + displayName.length + extensionsJson.length);
+        body.put((byte) (requireResidentKey ? 1 : 0));
+        putField(body, userId, "User ID");
+        putField(body, name, "User name");
+        putField(body, displayName, "User display name");
+        putExtensions(body, extensionsJson);
+        return seal(PURPOSE_REGISTRATION, body.array());
+    }
+
+    ByteArray sealAssertion(
+        Optional<String> username,
+        Optional<? extends Collection<PublicKeyCredentialDescriptor>> allowCredentials,
+        UserVerificationRequirement userVerification,
+        AssertionExtensionInputs extensions
+    ) {
+        final byte[] usernameBytes = username.map(SealedChallenges::utf8).orElse(new byte[0]);
+        final Optional<ByteArray> digest = allowCredentials.map(SealedChallenges::digestCredentialIds);
+        final byte[] extensionsJson = toJson(extensions);
+
+        final ByteBuffer body = ByteBuffer.allocate(5 + usernameBytes.length + digest.map(ByteArray::size).orElse(0) + extensionsJson.length);
+        body.put(encodeUserVerification(userVerification));
+        body.put((byte) ((username.isPresent() ? 1 : 0) | (digest.isPresent() ? 2 : 0)));
+        putField(body, usernameBytes, "Username");
+        digest.ifPresent(d -> body.put(d.getBytes()));
+        putExtensions(body, extensionsJson);
+        return seal(PURPOSE_ASSERTION, body.array());
+    }
+
+    /**
+     * @throws IllegalArgumentException if <code>challenge</code> is not a registration challenge sealed with one of
+     * the {@link #keys}, or has expired.
+     */
+    RegistrationParameters unsealRegistration(ByteArray challenge) {
+        final ByteBuffer body = unseal(PURPOSE_REGISTRATION, challenge);
+        try {
+            final boolean requireResidentKey = body.get() != 0;
+            final ByteArray userId = new ByteArray(getField(body));
+            final String name = new String(getField(body), StandardCharsets.UTF_8);
+            final String displayName = new String(getField(body), StandardCharsets.UTF_8);
+            final RegistrationExtensionInputs extensions = fromJson(getExtensions(body), RegistrationExtensionInputs.class);
+            return new RegistrationParameters(
+                UserIdentity.builder().name(name).displayName(displayName).id(userId).build(),
+                requireResidentKey,
+                extensions
+            );
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Malformed sealed challenge.", e);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if <code>challenge</code> is not an assertion challenge sealed with one of the
+     * {@link #keys}, or has expired.
+     */
+    AssertionParameters unsealAssertion(ByteArray challenge) {
+        final ByteBuffer body = unseal(PURPOSE_ASSERTION, challenge);
+        try {
+            final UserVerificationRequirement userVerification = decodeUserVerification(body.get());
+            final byte flags = body.get();
+            final byte[] username = getField(body);
+
+            final Optional<ByteArray> digest;
+            if ((flags & 2) != 0) {
+                final byte[] digestBytes = new byte[32];
+                body.get(digestBytes);
+                digest = Optional.of(new ByteArray(digestBytes));
+            } else {
+                digest = Optional.empty();
+            }
+            final AssertionExtensionInputs extensions = fromJson(getExtensions(body), AssertionExtensionInputs.class);
+
+            return new AssertionParameters(
+                (flags & 1) != 0 ? Optional.of(new String(username, StandardCharsets.UTF_8)) : Optional.empty(),
+                digest,
+                userVerification,
+                extensions
+            );
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Malformed sealed challenge.", e);
+        }
+    }
+
+    private static byte encodeUserVerification(UserVerificationRequirement userVerification) {
+        switch (userVerification) {
+            case DISCOURAGED:
+                return USER_VERIFICATION_DISCOURAGED;
+            case PREFERRED:
+                return USER_VERIFICATION_PREFERRED;
+            case REQUIRED:
+                return USER_VERIFICATION_REQUIRED;
+            default:
+                throw new IllegalArgumentException("Unknown user verification requirement: " + userVerification);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if <code>encoded</code> is not one of the <code>USER_VERIFICATION_*</code>
+     * values.
+     */
+    private static UserVerificationRequirement decodeUserVerification(byte encoded) {
+        switch (encoded) {
+            case USER_VERIFICATION_DISCOURAGED:
+                return UserVerificationRequirement.DISCOURAGED;
+            case USER_VERIFICATION_PREFERRED:
+                return UserVerificationRequirement.PREFERRED;
+            case USER_VERIFICATION_REQUIRED:
+                return UserVerificationRequirement.REQUIRED;
+            default:
+                throw new IllegalArgumentException("Malformed sealed challenge.");
+        }
+    }
+
+    /**
+     * @return SHA-256 hash of the IDs of <code>credentials</code>, in sorted order.
+     */
+    static ByteArray digestCredentialIds(Collection<PublicKeyCredentialDescriptor> credentials) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            credentials.stream()
+                .map(PublicKeyCredentialDescriptor::getId)
+                .sorted()
+                .forEachOrdered(id -> {
+                    digest.update(ByteBuffer.allocate(4).putInt(id.size()).array());
+                    digest.update(id.getBytes());
+                });
+            return new ByteArray(digest.digest());
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private ByteArray seal(byte purpose, byte[] body) {
+        final byte[] nonce = new byte[NONCE_LENGTH];
+        random.nextBytes(nonce);
+
+        final ByteBuffer sealed = ByteBuffer.allocate(3 + 8 + NONCE_LENGTH + body.length + TAG_LENGTH);
+        sealed.put(VERSION);
+        sealed.put(purpose);
+        sealed.put((byte) currentKeyId);
+        sealed.putLong(clock.millis());
+        sealed.put(nonce);
+        sealed.put(body);
+        sealed.put(tag(keys.get(currentKeyId), sealed.array(), sealed.position()));
+        return new ByteArray(sealed.array());
+    }
+
+    /**
+     * @return the body of <code>challenge</code>, positioned at its start and limited to its end.
+     */
+    private ByteBuffer unseal(byte purpose, ByteArray challenge) {
+        final byte[] bytes = challenge.getBytes();
+        assure(bytes.length >= 3 + 8 + NONCE_LENGTH + TAG_LENGTH, "Malformed sealed challenge.");
+
+        final ByteBuffer sealed = ByteBuffer.wrap(bytes);
+        assure(sealed.get() == VERSION, "Unsupported sealed challenge version.");
+        assure(sealed.get() == purpose, "Sealed challenge was issued for a different ceremony.");
+
+        final SecretKeySpec key = keys.get(sealed.get() & 0xff);
+        assure(key != null, "Sealed challenge was sealed with an unknown key.");
+
+        final int tagStart = bytes.length - TAG_LENGTH;
+        final byte[] tag = new byte[TAG_LENGTH];
+        System.arraycopy(bytes, tagStart, tag, 0, TAG_LENGTH);
+        assure(MessageDigest.isEqual(tag, tag(key, bytes, tagStart)), "Invalid sealed challenge.");
+
+        final long issuedAt = sealed.getLong();
+        assure(clock.millis() - issuedAt <= validity.toMillis(), "Sealed challenge has expired.");
+
+        sealed.position(sealed.position() + NONCE_LENGTH);
+        sealed.limit(tagStart);
+        return sealed;
+    }
+
+    private static byte[] tag(SecretKeySpec key, byte[] bytes, int length) {
+        try {
+            final Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            mac.update(bytes, 0, length);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Failed to compute sealed challenge tag.", e);
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putField(ByteBuffer buffer, byte[] field, String name) {
+        assure(field.length <= MAX_FIELD_LENGTH, "%s is too long to seal: %d bytes", name, field.length);
+        buffer.put((byte) field.length);
+        buffer.put(field);
+    }
+
+    private static byte[] getField(ByteBuffer buffer) {
+        final byte[] field = new byte[buffer.get() & 0xff];
+        buffer.get(field);
+        return field;
+    }
+
+    private static void putExtensions(ByteBuffer buffer, byte[] extensionsJson) {
+        assure(extensionsJson.length <= MAX_EXTENSIONS_LENGTH, "Extensions are too long to seal: %d bytes", extensionsJson.length);
+        buffer.putShort((short) extensionsJson.length);
+        buffer.put(extensionsJson);
+    }
+
+    private static byte[] getExtensions(ByteBuffer buffer) {
+        final byte[] extensionsJson = new byte[buffer.getShort() & 0xffff];
+        buffer.get(extensionsJson);
+        return extensionsJson;
+    }
+
+    private static byte[] toJson(Object extensions) {
+        try {
+            return WebAuthnCodecs.json().writeValueAsBytes(extensions);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to encode extensions to seal.", e);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if <code>json</code> is not a valid encoding of <code>type</code>.
+     */
+    private static <T> T fromJson(byte[] json, Class<T> type) {
+        try {
+            return WebAuthnCodecs.json().readValue(json, type);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed sealed challenge.", e);
+        }
+    }
+
+}
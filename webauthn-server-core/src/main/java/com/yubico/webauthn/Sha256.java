@@ -0,0 +1,53 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.data.ByteArray;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+
+/**
+ * SHA-256 with the JDK's own implementation, which HotSpot compiles to the SHA instructions of the CPU where there are
+ * any. The Bouncy Castle implementation gets no such intrinsic.
+ * <p>
+ * Input is read through {@link ByteArray#asByteBuffer()} instead of copied out with {@link ByteArray#getBytes()}, and
+ * one {@link MessageDigest} is kept per thread.
+ */
+final class Sha256 {
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) { // Every Java platform must support SHA-256
+            throw new RuntimeException(e);
+        }
+    });
+
+    private Sha256() {
+    }
+
+    static ByteArray hash(ByteArray bytes) {
+        return hash(bytes.asByteBuffer());
+    }
+
+    /**
+     * @return the SHA-256 hash of the remaining bytes of each of <code>parts</code>, in order, as if concatenated. The
+     * parts are read to their limits.
+     */
+    static ByteArray hash(ByteBuffer... parts) {
+        final MessageDigest digest = DIGEST.get();
+        for (ByteBuffer part : parts) {
+            digest.update(part);
+        }
+        return new ByteArray(digest.digest());
+    }
+
+    /**
+     * @return the SHA-256 hash of the UTF-8 encoding of <code>str</code>.
+     */
+    static ByteArray hash(String str) {
+        return new ByteArray(DIGEST.get().digest(str.getBytes(StandardCharsets.UTF_8)));
+    }
+
+}
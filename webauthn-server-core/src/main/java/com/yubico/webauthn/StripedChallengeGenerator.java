@@ -0,0 +1,142 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.data.ByteArray;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import lombok.Builder;
+
+import static com.yubico.internal.util.ExceptionUtil.assure;
+
+
+/**
+ * A {@link ChallengeGenerator} for servers that start many ceremonies concurrently.
+ * <p>
+ * {@link RandomChallengeGenerator} draws every challenge from a single {@link SecureRandom}, which all threads contend
+ * for. This generator instead keeps a number of independent stripes, each with its own {@link SecureRandom} and buffer
+ * of prefetched random bytes, and picks a stripe by the ID of the calling thread. Each stripe fills its buffer with one
+ * call to {@link SecureRandom#nextBytes(byte[])} for a whole block of challenges, and mixes fresh seed material from a
+ * shared seed source into its {@link SecureRandom} whenever it refills its buffer after the reseed interval has passed.
+ * Each stripe uses a DRBG where the JVM has one, and SHA1PRNG otherwise.
+ * <p>
+ * Challenges are never handed out twice: each byte of a block is used for exactly one challenge.
+ */
+public final class StripedChallengeGenerator implements ChallengeGenerator {
+
+    private static final int SEED_LENGTH = 32;
+
+    /**
+     * The {@link SecureRandom} algorithms to use for the stripes, in order of preference. Instances of either do not
+     * share any state or locks, unlike the default NativePRNG. DRBG, the NIST SP 800-90A generator, is available from
+     * Java 9; Java 8 has only SHA1PRNG.
+     */
+    private static final String[] RANDOM_ALGORITHMS = { "DRBG", "SHA1PRNG" };
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final int challengeLength;
+    private final int blockLength;
+    private final long reseedIntervalMillis;
+    private final Clock clock;
+    private final SecureRandom seedSource = new SecureRandom();
+
+    /**
+     * @param stripes the number of stripes, rounded up to a power of two. Default: twice the number of available
+     * processors.
+     * @param challengeLength the length of generated challenges in bytes. Must be at least 16. Default: 32.
+     * @param challengesPerBlock the number of challenges to prefetch at a time in each stripe. Default: 64.
+     * @param reseedInterval how often each stripe mixes fresh seed material into its {@link SecureRandom}. Default: 1
+     * hour.
+     * @param clock the clock used to schedule reseeding. Default: {@link Clock#systemUTC()}.
+     */
+    @Builder
+    private StripedChallengeGenerator(Integer stripes, Integer challengeLength, Integer challengesPerBlock, Duration reseedInterval, Clock clock) {
+        final int requestedStripes = stripes == null ? 2 * Runtime.getRuntime().availableProcessors() : stripes;
+        this.challengeLength = challengeLength == null ? 32 : challengeLength;
+        final int perBlock = challengesPerBlock == null ? 64 : challengesPerBlock;
+        this.reseedIntervalMillis = (reseedInterval == null ? Duration.ofHours(1) : reseedInterval).toMillis();
+        this.clock = clock == null ? Clock.systemUTC() : clock;
+
+        assure(requestedStripes > 0 && requestedStripes <= 1 << 16, "Number of stripes must be between 1 and 65536.");
+        assure(this.challengeLength >= 16, "Challenges must be at least 16 bytes long.");
+        assure(perBlock > 0, "Number of challenges per block must be positive.");
+        assure((long) perBlock * this.challengeLength <= Integer.MAX_VALUE, "Blocks are too large.");
+        assure(reseedIntervalMillis > 0, "Reseed interval must be positive.");
+
+        this.blockLength = perBlock * this.challengeLength;
+
+        int stripeCount = Integer.highestOneBit(requestedStripes);
+        if (stripeCount < requestedStripes) {
+            stripeCount <<= 1;
+        }
+        this.stripes = new Stripe[stripeCount];
+        this.stripeMask = this.stripes.length - 1;
+        for (int i = 0; i < this.stripes.length; ++i) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    @Override
+    public ByteArray generateChallenge() {
+        return new ByteArray(stripes[(int) Thread.currentThread().getId() & stripeMask].next());
+    }
+
+    private final class Stripe {
+        private final SecureRandom random = newRandom();
+        private final byte[] block = new byte[blockLength];
+        private int position = blockLength;
+        private long nextReseedAt = clock.millis() + reseedIntervalMillis;
+
+        private synchronized byte[] next() {
+            if (position == blockLength) {
+                refill();
+            }
+            final byte[] challenge = Arrays.copyOfRange(block, position, position + challengeLength);
+            position += challengeLength;
+            return challenge;
+        }
+
+        private void refill() {
+            final long now = clock.millis();
+            if (now >= nextReseedAt) {
+                random.setSeed(seed());
+                nextReseedAt = now + reseedIntervalMillis;
+            }
+            random.nextBytes(block);
+            position = 0;
+        }
+    }
+
+    /**
+     * @return a new {@link SecureRandom} with its own state, seeded from {@link #seedSource}.
+     */
+    private SecureRandom newRandom() {
+        SecureRandom random = null;
+        for (String algorithm : RANDOM_ALGORITHMS) {
+            try {
+                random = SecureRandom.getInstance(algorithm);
+                break;
+            } catch (NoSuchAlgorithmException e) {
+                // Try the next one
+            }
+        }
+        if (random == null) {
+            random = new SecureRandom();
+        }
+        // DRBG instantiates itself from the system entropy source and mixes this in as well. Seeding SHA1PRNG before
+        // first use replaces its self-seeding, which can block.
+        random.setSeed(seed());
+        return random;
+    }
+
+    private byte[] seed() {
+        final byte[] seed = new byte[SEED_LENGTH];
+        synchronized (seedSource) {
+            seedSource.nextBytes(seed);
+        }
+        return seed;
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.yubico.webauthn;
+
+import java.util.Optional;
+
+
+/**
+ * A minimal tracing interface through which {@link RelyingParty} reports spans for its ceremonies, and child spans for
+ * the {@link CredentialRepository} and {@link com.yubico.webauthn.attestation.MetadataService} calls made during them.
+ * <p>
+ * Implement this to connect the library to a distributed tracing system, or use {@link InMemoryTracer} for tests and
+ * local analysis. Implementations must be thread-safe.
+ * <p>
+ * Ceremony spans are named <code>webauthn.registration</code> and <code>webauthn.assertion</code>, and have these
+ * attributes:
+ * <ul>
+ * <li><code>webauthn.rp_id</code>: the RP ID.</li>
+ * <li><code>webauthn.credential_id_length</code>: the length of the credential ID in the response.</li>
+ * <li><code>webauthn.attestation_format</code>: the attestation statement format, for registration ceremonies.</li>
+ * <li><code>webauthn.outcome</code>: <code>SUCCESS</code>, <code>FAILURE</code> or <code>ABORTED</code>.</li>
+ * <li><code>webauthn.failure_reason</code>: the {@link CeremonyFailureReason}, if the ceremony failed.</li>
+ * <li><code>webauthn.failure_step</code>: the step that failed or was aborted, named as for {@link
+ * CeremonyListener}.</li>
+ * <li><code>error</code>: <code>true</code> if the ceremony failed or was aborted.</li>
+ * </ul>
+ * Child spans are named after the interface and method called, for example <code>CredentialRepository.lookup</code>.
+ *
+ * @see RelyingParty#getTracer()
+ */
+public interface Tracer {
+
+    /**
+     * Start a new span.
+     *
+     * @param name the name of the span.
+     * @param parent the parent span, or empty for a ceremony span. Implementations would typically make ceremony spans
+     * children of whatever span is current in the calling thread.
+     */
+    Span startSpan(String name, Optional<Span> parent);
+
+    /**
+     * A span started by a {@link Tracer}. A span is only used by the thread that started it.
+     */
+    interface Span {
+
+        /**
+         * @return this span.
+         */
+        Span setAttribute(String key, String value);
+
+        /**
+         * @return this span.
+         */
+        Span setAttribute(String key, long value);
+
+        /**
+         * @return this span.
+         */
+        Span setAttribute(String key, boolean value);
+
+        /**
+         * End this span. No other methods are called on the span after this.
+         */
+        void end();
+
+    }
+
+}
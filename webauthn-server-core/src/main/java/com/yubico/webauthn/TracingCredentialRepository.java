@@ -0,0 +1,78 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+
+
+/**
+ * Opens a child span of <code>parent</code> for each call to the wrapped repository.
+ */
+@AllArgsConstructor
+final class TracingCredentialRepository implements CredentialRepository {
+
+    @NonNull
+    private final CredentialRepository delegate;
+
+    @NonNull
+    private final Tracer tracer;
+
+    @NonNull
+    private final Tracer.Span parent;
+
+    @Override
+    public Set<PublicKeyCredentialDescriptor> getCredentialIdsForUsername(String username) {
+        return trace("getCredentialIdsForUsername", null, () -> delegate.getCredentialIdsForUsername(username), Set::size);
+    }
+
+    @Override
+    public Optional<ByteArray> getUserHandleForUsername(String username) {
+        return trace("getUserHandleForUsername", null, () -> delegate.getUserHandleForUsername(username), r -> r.isPresent() ? 1 : 0);
+    }
+
+    @Override
+    public Optional<String> getUsernameForUserHandle(ByteArray userHandle) {
+        return trace("getUsernameForUserHandle", null, () -> delegate.getUsernameForUserHandle(userHandle), r -> r.isPresent() ? 1 : 0);
+    }
+
+    @Override
+    public Optional<RegisteredCredential> lookup(ByteArray credentialId, ByteArray userHandle) {
+        return trace("lookup", credentialId, () -> delegate.lookup(credentialId, userHandle), r -> r.isPresent() ? 1 : 0);
+    }
+
+    @Override
+    public Set<RegisteredCredential> lookupAll(ByteArray credentialId) {
+        return trace("lookupAll", credentialId, () -> delegate.lookupAll(credentialId), Set::size);
+    }
+
+    @Override
+    public Map<ByteArray, RegisteredCredential> lookupBatch(Map<ByteArray, ByteArray> userHandlesByCredentialId) {
+        return trace("lookupBatch", null, () -> delegate.lookupBatch(userHandlesByCredentialId), Map::size);
+    }
+
+    private <T> T trace(String method, ByteArray credentialId, Supplier<T> call, ToIntFunction<T> counter) {
+        final Tracer.Span span = tracer.startSpan("CredentialRepository." + method, Optional.of(parent));
+        if (credentialId != null) {
+            span.setAttribute("webauthn.credential_id_length", credentialId.size());
+        }
+        try {
+            final T result = call.get();
+            span.setAttribute("webauthn.results", counter.applyAsInt(result));
+            return result;
+        } catch (RuntimeException e) {
+            span
+                .setAttribute("error", true)
+                .setAttribute("error.type", e.getClass().getName());
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+}
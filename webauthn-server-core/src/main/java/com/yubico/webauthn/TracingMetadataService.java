@@ -0,0 +1,46 @@
+package com.yubico.webauthn;
+
+import com.yubico.webauthn.attestation.Attestation;
+import com.yubico.webauthn.attestation.MetadataService;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Optional;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+
+
+/**
+ * Opens a child span of <code>parent</code> for each call to the wrapped metadata service.
+ */
+@AllArgsConstructor
+final class TracingMetadataService implements MetadataService {
+
+    @NonNull
+    private final MetadataService delegate;
+
+    @NonNull
+    private final Tracer tracer;
+
+    @NonNull
+    private final Tracer.Span parent;
+
+    @Override
+    public Attestation getAttestation(List<X509Certificate> attestationCertificateChain) throws CertificateEncodingException {
+        final Tracer.Span span = tracer.startSpan("MetadataService.getAttestation", Optional.of(parent))
+            .setAttribute("webauthn.certificate_chain_length", attestationCertificateChain.size());
+        try {
+            final Attestation attestation = delegate.getAttestation(attestationCertificateChain);
+            span.setAttribute("webauthn.attestation_trusted", attestation.isTrusted());
+            return attestation;
+        } catch (CertificateEncodingException | RuntimeException e) {
+            span
+                .setAttribute("error", true)
+                .setAttribute("error.type", e.getClass().getName());
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+
+}
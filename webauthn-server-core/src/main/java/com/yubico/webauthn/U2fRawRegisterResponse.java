@@ -48,7 +48,7 @@ class U2fRawRegisterResponse {
                            ByteArray keyHandle,
                            X509Certificate attestationCertificate,
                            ByteArray signature) {
-        this(userPublicKey, keyHandle, attestationCertificate, signature, new BouncyCastleCrypto());
+        this(userPublicKey, keyHandle, attestationCertificate, signature, new PooledBouncyCastleCrypto());
     }
 
     private U2fRawRegisterResponse(ByteArray userPublicKey,
@@ -29,6 +29,15 @@ public class AuthenticatorAssertionResponse implements AuthenticatorResponse {
     @NonNull
     private final transient CollectedClientData clientData;
 
+    /**
+     * The `authenticatorData` parsed as a domain object.
+     * <p>
+     * This is parsed once on construction and shared by all subsequent ceremony steps.
+     */
+    @NonNull
+    @JsonIgnore
+    private final transient AuthenticatorData parsedAuthenticatorData;
+
     @JsonCreator
     public AuthenticatorAssertionResponse(
         @NonNull @JsonProperty("authenticatorData") final ByteArray authenticatorData,
@@ -41,6 +50,7 @@ public class AuthenticatorAssertionResponse implements AuthenticatorResponse {
         this.signature = signature;
         this.userHandle = Optional.ofNullable(userHandle);
         this.clientData = new CollectedClientData(clientDataJSON);
+        this.parsedAuthenticatorData = new AuthenticatorData(authenticatorData);
     }
 
     @JsonIgnore
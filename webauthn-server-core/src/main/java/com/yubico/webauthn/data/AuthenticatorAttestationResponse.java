@@ -31,6 +31,15 @@ public class AuthenticatorAttestationResponse implements AuthenticatorResponse {
         return attestation.getAuthenticatorData().getBytes();
     }
 
+    /**
+     * The authenticator data already parsed by the {@link #getAttestation() attestation object}.
+     */
+    @Override
+    @JsonIgnore
+    public AuthenticatorData getParsedAuthenticatorData() {
+        return attestation.getAuthenticatorData();
+    }
+
     @JsonCreator
     public AuthenticatorAttestationResponse(
         @NonNull @JsonProperty("attestationObject") ByteArray attestationObject,
@@ -8,6 +8,7 @@ import com.yubico.internal.util.json.JsonStringSerializable;
 import com.yubico.internal.util.json.JsonStringSerializer;
 import com.yubico.webauthn.data.exception.Base64UrlException;
 import com.yubico.webauthn.data.exception.HexException;
+import java.nio.ByteBuffer;
 import lombok.EqualsAndHashCode;
 import lombok.NonNull;
 import lombok.ToString;
@@ -92,6 +93,13 @@ public class ByteArray implements Comparable<ByteArray>, JsonStringSerializable
         return BinaryUtil.copy(bytes);
     }
 
+    /**
+     * @return a read-only view of the raw byte contents, for reading them without a copy.
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
     /**
      * @return the content bytes encoded as Base64Url data.
      */
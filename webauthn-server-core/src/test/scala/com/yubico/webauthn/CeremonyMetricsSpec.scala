@@ -0,0 +1,166 @@
+package com.yubico.webauthn
+
+import java.time.Duration
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+import com.yubico.internal.util.scala.JavaConverters._
+import com.yubico.webauthn.data.ByteArray
+import com.yubico.webauthn.data.RelyingPartyIdentity
+import org.junit.runner.RunWith
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+import org.scalatest.junit.JUnitRunner
+
+import scala.collection.JavaConverters._
+import scala.util.Random
+
+
+@RunWith(classOf[JUnitRunner])
+class CeremonyMetricsSpec extends FunSpec with Matchers {
+
+  describe("LatencyHistogram") {
+
+    it("puts every value in a bucket whose highest value is at most 1/16 higher.") {
+      (List(0L, 1L, 15L, 16L, 17L, 31L, 32L, 1000L, 123456789L, 1L << 40) ++ List.fill(1000)(Random.nextInt(Int.MaxValue).toLong)) foreach { value =>
+        val highest = LatencyHistogram.highestValue(LatencyHistogram.bucket(value))
+        highest should be >= value
+        (highest - value) should be <= (value / 16)
+      }
+    }
+
+    it("orders buckets by value.") {
+      val buckets = (0L to 100000L).map(LatencyHistogram.bucket)
+      buckets should equal (buckets.sorted)
+      buckets.last should be < LatencyHistogram.BUCKETS
+    }
+
+    it("counts values too large for any bucket in the last bucket.") {
+      LatencyHistogram.bucket(Long.MaxValue) should equal (LatencyHistogram.BUCKETS - 1)
+    }
+
+    it("has buckets for values up to about 36.6 minutes.") {
+      LatencyHistogram.MAX_BUCKETED_NANOS should equal ((1L << 41) - 1)
+      LatencyHistogram.highestValue(LatencyHistogram.BUCKETS - 1) should equal (LatencyHistogram.MAX_BUCKETED_NANOS)
+      LatencyHistogram.bucket(LatencyHistogram.MAX_BUCKETED_NANOS) should equal (LatencyHistogram.BUCKETS - 1)
+      LatencyHistogram.bucket(LatencyHistogram.MAX_BUCKETED_NANOS - (1L << 36)) should equal (LatencyHistogram.BUCKETS - 2)
+      Duration.ofNanos(LatencyHistogram.MAX_BUCKETED_NANOS).getSeconds should equal (36 * 60 + 39)
+    }
+
+    it("reports percentiles within 1/16 of the exact value.") {
+      val histogram = new LatencyHistogram(4)
+      (1 to 10000) foreach { i => histogram.record(i * 1000L) }
+
+      val snapshot = histogram.snapshot(Duration.ofSeconds(10).toNanos)
+      snapshot.getCount should equal (10000)
+      snapshot.getRatePerSecond should equal (1000.0)
+      snapshot.getMeanNanos should equal (5000500)
+      snapshot.getMaxNanos should equal (10000000)
+      snapshot.getP50Nanos.toDouble should equal (5000000.0 +- 5000000 / 16.0)
+      snapshot.getP99Nanos.toDouble should equal (9900000.0 +- 9900000 / 16.0)
+      snapshot.getP999Nanos.toDouble should equal (9990000.0 +- 9990000 / 16.0)
+    }
+
+    it("reports zeros when empty.") {
+      val snapshot = new LatencyHistogram(1).snapshot(0)
+      snapshot.getCount should equal (0)
+      snapshot.getP50Nanos should equal (0)
+      snapshot.getRatePerSecond should equal (0.0)
+    }
+
+    it("counts every value recorded from many threads at once.") {
+      val histogram = new LatencyHistogram(4)
+      val executor = Executors.newFixedThreadPool(8)
+      try {
+        val tasks: java.util.List[Callable[Unit]] = List.fill(8)(new Callable[Unit] {
+          override def call(): Unit = (1 to 10000) foreach { i => histogram.record(i) }
+        }).asJava
+        executor.invokeAll(tasks).asScala.foreach(_.get)
+      } finally {
+        executor.shutdown()
+      }
+
+      histogram.snapshot(1).getCount should equal (80000)
+    }
+
+  }
+
+  describe("CeremonyMetrics") {
+
+    it("counts ceremonies by outcome and failure reason.") {
+      val clock = new MutableClock
+      val metrics = CeremonyMetrics.builder().clock(clock).build()
+
+      metrics.ceremonyFinished(CeremonyType.ASSERTION, None.asJava, 1000)
+      metrics.ceremonyFinished(CeremonyType.ASSERTION, None.asJava, 2000)
+      metrics.ceremonyFinished(CeremonyType.ASSERTION, Some(CeremonyFailureReason.INVALID_SIGNATURE).asJava, 3000)
+      metrics.ceremonyAborted(CeremonyType.ASSERTION, new IllegalStateException, 4000)
+      metrics.ceremonyFinished(CeremonyType.REGISTRATION, Some(CeremonyFailureReason.WRONG_CHALLENGE).asJava, 5000)
+      clock.advance(Duration.ofSeconds(2))
+
+      val snapshot = metrics.snapshot()
+      snapshot.getElapsed should equal (Duration.ofSeconds(2))
+
+      val assertions = snapshot.getCeremony(CeremonyType.ASSERTION)
+      assertions.getAll.getCount should equal (4)
+      assertions.getAll.getRatePerSecond should equal (2.0)
+      assertions.getSuccesses.getCount should equal (2)
+      assertions.getSuccesses.getMaxNanos should equal (2000)
+      assertions.getFailures.asScala.keySet should equal (Set(CeremonyFailureReason.INVALID_SIGNATURE))
+      assertions.getFailures.get(CeremonyFailureReason.INVALID_SIGNATURE).getCount should equal (1)
+      assertions.getAborted should equal (1)
+
+      val registrations = snapshot.getCeremony(CeremonyType.REGISTRATION)
+      registrations.getAll.getCount should equal (1)
+      registrations.getSuccesses.getCount should equal (0)
+      registrations.getFailures.asScala.keySet should equal (Set(CeremonyFailureReason.WRONG_CHALLENGE))
+    }
+
+    it("keeps a histogram for each step.") {
+      val metrics = CeremonyMetrics.builder().build()
+      metrics.stepFinished(CeremonyType.ASSERTION, "Step2", 5000000)
+      metrics.stepFinished(CeremonyType.ASSERTION, "Step2", 7000000)
+      metrics.stepFinished(CeremonyType.ASSERTION, "Step16", 100000)
+
+      val steps = metrics.snapshot().getCeremony(CeremonyType.ASSERTION).getSteps.asScala
+      steps.keySet should equal (Set("Step2", "Step16"))
+      steps("Step2").getCount should equal (2)
+      steps("Step2").getMaxNanos should equal (7000000)
+      metrics.snapshot().getCeremony(CeremonyType.REGISTRATION).getSteps.isEmpty should be (true)
+    }
+
+    it("records the ceremonies of a RelyingParty along with its ceremonyListener.") {
+      val metrics = CeremonyMetrics.builder().build()
+      val listener = new RecordingCeremonyListener
+      val rp = RelyingParty.builder()
+        .allowUntrustedAttestation(true)
+        .origins(List("localhost").asJava)
+        .preferredPubkeyParams(Nil.asJava)
+        .rp(RelyingPartyIdentity.builder().name("Test party").id("localhost").build())
+        .credentialRepository(new CredentialRepository {
+          override def getCredentialIdsForUsername(username: String) = ???
+          override def getUserHandleForUsername(username: String) = ???
+          override def getUsernameForUserHandle(userHandle: ByteArray) = ???
+          override def lookup(credentialId: ByteArray, userHandle: ByteArray) = ???
+          override def lookupAll(credentialId: ByteArray) = Set.empty[RegisteredCredential].asJava
+        })
+        .ceremonyListener(Some(listener).asJava)
+        .metrics(Some(metrics).asJava)
+        .build()
+
+      val testData = RegistrationTestData.FidoU2f.SelfAttestation
+      rp.finishRegistration(FinishRegistrationOptions.builder().request(testData.request).response(testData.response).build())
+
+      val registrations = metrics.snapshot().getCeremony(CeremonyType.REGISTRATION)
+      registrations.getSuccesses.getCount should equal (1)
+      registrations.getSteps.asScala.keySet should equal ((2 to 17).map(i => s"Step$i").toSet)
+      listener.events.last should equal ("finished REGISTRATION SUCCESS")
+    }
+
+    it("rejects invalid settings.") {
+      an [IllegalArgumentException] should be thrownBy CeremonyMetrics.builder().stripes(0).build()
+    }
+
+  }
+
+}
@@ -0,0 +1,127 @@
+package com.yubico.webauthn
+
+import java.time.Clock
+import java.time.Duration
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+import org.junit.runner.RunWith
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+import org.scalatest.junit.JUnitRunner
+
+import scala.collection.JavaConverters._
+
+
+@RunWith(classOf[JUnitRunner])
+class InMemoryCeremonyStateStoreSpec extends FunSpec with Matchers {
+
+  private def store(clock: Clock = new MutableClock): InMemoryCeremonyStateStore[String, String] =
+    InMemoryCeremonyStateStore.builder[String, String]()
+      .timeToLive(Duration.ofMinutes(1))
+      .tickDuration(Duration.ofSeconds(1))
+      .clock(clock)
+      .build()
+
+  describe("InMemoryCeremonyStateStore") {
+
+    it("returns a stored value exactly once.") {
+      val s = store()
+      s.put("a", "foo")
+
+      s.take("a").asScala should equal (Some("foo"))
+      s.take("a").asScala should equal (None)
+    }
+
+    it("returns nothing for an unknown key.") {
+      store().take("a").asScala should equal (None)
+    }
+
+    it("replaces the value stored under the same key.") {
+      val s = store()
+      s.put("a", "foo")
+      s.put("a", "bar")
+
+      s.take("a").asScala should equal (Some("bar"))
+    }
+
+    it("does not return a value after its time to live, even before it is swept out.") {
+      val clock = new MutableClock
+      val s = store(clock)
+      s.put("a", "foo")
+      s.put("b", "bar")
+
+      clock.advance(Duration.ofSeconds(59))
+      s.take("a").asScala should equal (Some("foo"))
+
+      clock.advance(Duration.ofSeconds(1))
+      s.take("b").asScala should equal (None)
+    }
+
+    it("sweeps out expired values.") {
+      val clock = new MutableClock
+      val s = store(clock)
+      (1 to 1000) foreach { i => s.put(s"key$i", "foo") }
+      s.size should equal (1000)
+
+      clock.advance(Duration.ofSeconds(62))
+      s.put("fresh", "bar")
+
+      s.size should equal (1)
+      s.take("fresh").asScala should equal (Some("bar"))
+    }
+
+    it("sweeps out expired values after a pause longer than a full turn of the wheel.") {
+      val clock = new MutableClock
+      val s = store(clock)
+      (1 to 100) foreach { i =>
+        s.put(s"key$i", "foo")
+        clock.advance(Duration.ofMillis(700))
+      }
+
+      clock.advance(Duration.ofHours(1))
+      s.take("nothing")
+
+      s.size should equal (0)
+    }
+
+    it("does not sweep out a newer value put under the key of an expired one.") {
+      val clock = new MutableClock
+      val s = store(clock)
+      s.put("a", "old")
+
+      clock.advance(Duration.ofSeconds(59))
+      s.put("a", "new")
+
+      clock.advance(Duration.ofSeconds(3))
+      s.take("other")
+
+      s.take("a").asScala should equal (Some("new"))
+    }
+
+    it("lets only one of several concurrent callers take a value.") {
+      val executor = Executors.newFixedThreadPool(8)
+      try {
+        (1 to 100) foreach { i =>
+          val s = store(Clock.systemUTC())
+          s.put("a", s"value$i")
+
+          val takers: java.util.List[Callable[Option[String]]] = List.fill(8)(new Callable[Option[String]] {
+            override def call(): Option[String] = s.take("a").asScala
+          }).asJava
+
+          executor.invokeAll(takers).asScala.map(_.get).flatten should equal (List(s"value$i"))
+        }
+      } finally {
+        executor.shutdown()
+      }
+    }
+
+    it("rejects invalid durations.") {
+      an [IllegalArgumentException] should be thrownBy InMemoryCeremonyStateStore.builder[String, String]().timeToLive(Duration.ZERO).build()
+      an [IllegalArgumentException] should be thrownBy InMemoryCeremonyStateStore.builder[String, String]().tickDuration(Duration.ZERO).build()
+    }
+
+  }
+
+}
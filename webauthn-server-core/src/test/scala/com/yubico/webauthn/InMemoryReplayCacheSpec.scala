@@ -0,0 +1,148 @@
+package com.yubico.webauthn
+
+import java.time.Clock
+import java.time.Duration
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+import com.yubico.webauthn.data.ByteArray
+import org.junit.runner.RunWith
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+import org.scalatest.junit.JUnitRunner
+
+import scala.collection.JavaConverters._
+import scala.util.Random
+
+
+@RunWith(classOf[JUnitRunner])
+class InMemoryReplayCacheSpec extends FunSpec with Matchers {
+
+  private def cache(clock: Clock = new MutableClock, bloomFilter: Boolean = false, maxEntries: Long = 1000000): InMemoryReplayCache =
+    InMemoryReplayCache.builder()
+      .window(Duration.ofMinutes(10))
+      .buckets(10)
+      .maxEntries(maxEntries)
+      .bloomFilter(bloomFilter)
+      .clock(clock)
+      .build()
+
+  private def randomChallenge(): ByteArray = {
+    val bytes = new Array[Byte](32)
+    Random.nextBytes(bytes)
+    new ByteArray(bytes)
+  }
+
+  for { bloomFilter <- List(false, true) } {
+    describe(s"InMemoryReplayCache with bloomFilter = ${bloomFilter}") {
+
+      it("accepts each challenge once.") {
+        val c = cache(bloomFilter = bloomFilter)
+        val challenge = randomChallenge()
+
+        c.contains(challenge) should be (false)
+        c.add(challenge) should be (true)
+        c.contains(challenge) should be (true)
+        c.add(challenge) should be (false)
+      }
+
+      it("remembers every added challenge.") {
+        val c = cache(bloomFilter = bloomFilter)
+        val challenges = List.fill(10000)(randomChallenge())
+        challenges foreach c.add
+
+        challenges.forall(c.contains) should be (true)
+        c.size should equal (10000)
+      }
+
+      it("remembers challenges for the whole window, and then forgets them.") {
+        val clock = new MutableClock
+        val c = cache(clock = clock, bloomFilter = bloomFilter)
+        val challenge = randomChallenge()
+
+        clock.advance(Duration.ofSeconds(59))
+        c.add(challenge)
+
+        clock.advance(Duration.ofMinutes(10))
+        c.contains(challenge) should be (true)
+
+        clock.advance(Duration.ofMinutes(1))
+        c.contains(challenge) should be (false)
+        c.add(challenge) should be (true)
+      }
+
+      it("never remembers more than maxEntries challenges.") {
+        val clock = new MutableClock
+        val c = cache(clock = clock, bloomFilter = bloomFilter, maxEntries = 100)
+
+        (1 to 1000) foreach { i =>
+          c.add(randomChallenge())
+          if (i % 50 == 0) {
+            clock.advance(Duration.ofSeconds(30))
+          }
+          c.size should be <= 100L
+        }
+      }
+
+      it("refuses new challenges rather than forget the current bucket when full.") {
+        val clock = new MutableClock
+        val c = cache(clock = clock, bloomFilter = bloomFilter, maxEntries = 100)
+        val challenges = List.fill(100)(randomChallenge())
+
+        challenges.map(c.add).forall(identity) should be (true)
+
+        val overflow = List.fill(50)(randomChallenge())
+        overflow.map(c.add).exists(identity) should be (false)
+        overflow.exists(c.contains) should be (false)
+
+        challenges.forall(c.contains) should be (true)
+        c.add(challenges.head) should be (false)
+        c.size should equal (100)
+      }
+
+      it("refuses new challenges rather than forget older buckets within the window when full.") {
+        val clock = new MutableClock
+        val c = cache(clock = clock, bloomFilter = bloomFilter, maxEntries = 100)
+        val older = List.fill(50)(randomChallenge())
+        older.map(c.add).forall(identity) should be (true)
+
+        clock.advance(Duration.ofMinutes(1))
+        val newer = List.fill(50)(randomChallenge())
+        newer.map(c.add).forall(identity) should be (true)
+
+        clock.advance(Duration.ofMinutes(1))
+        val overflow = List.fill(50)(randomChallenge())
+        overflow.map(c.add).exists(identity) should be (false)
+
+        older.forall(c.contains) should be (true)
+        c.add(older.head) should be (false)
+        c.size should equal (100)
+
+        clock.advance(Duration.ofMinutes(9))
+        older.exists(c.contains) should be (false)
+        newer.forall(c.contains) should be (true)
+        c.add(randomChallenge()) should be (true)
+      }
+
+      it("lets only one of several concurrent callers add the same challenge.") {
+        val executor = Executors.newFixedThreadPool(8)
+        try {
+          val c = cache(clock = Clock.systemUTC(), bloomFilter = bloomFilter)
+
+          (1 to 100) foreach { _ =>
+            val challenge = randomChallenge()
+            val adders: java.util.List[Callable[Boolean]] = List.fill(8)(new Callable[Boolean] {
+              override def call(): Boolean = c.add(challenge)
+            }).asJava
+
+            executor.invokeAll(adders).asScala.count(_.get) should equal (1)
+          }
+        } finally {
+          executor.shutdown()
+        }
+      }
+
+    }
+  }
+
+}
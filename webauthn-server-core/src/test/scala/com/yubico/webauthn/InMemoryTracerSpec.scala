@@ -0,0 +1,99 @@
+package com.yubico.webauthn
+
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneOffset
+import java.util.Optional
+
+import org.junit.runner.RunWith
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+import org.scalatest.junit.JUnitRunner
+
+import scala.collection.JavaConverters._
+
+
+@RunWith(classOf[JUnitRunner])
+class InMemoryTracerSpec extends FunSpec with Matchers {
+
+  private def tracer(capacity: Int = 1024): InMemoryTracer =
+    InMemoryTracer.builder()
+      .capacity(capacity)
+      .clock(Clock.fixed(Instant.parse("2018-09-01T12:00:00Z"), ZoneOffset.UTC))
+      .build()
+
+  describe("InMemoryTracer") {
+
+    it("records finished spans in the order they end.") {
+      val t = tracer()
+      val a = t.startSpan("a", Optional.empty())
+      val b = t.startSpan("b", Optional.empty())
+      b.end()
+      a.end()
+
+      t.getFinishedSpans.asScala.map(_.getName) should equal (List("b", "a"))
+      t.getFinishedSpans.asScala.head.getStartTime should equal (Instant.parse("2018-09-01T12:00:00Z"))
+    }
+
+    it("does not record spans that have not ended.") {
+      val t = tracer()
+      t.startSpan("a", Optional.empty())
+
+      t.getFinishedSpans.asScala shouldBe empty
+    }
+
+    it("records the attributes of a span.") {
+      val t = tracer()
+      t.startSpan("a", Optional.empty())
+        .setAttribute("string", "foo")
+        .setAttribute("long", 42)
+        .setAttribute("boolean", true)
+        .end()
+
+      t.getFinishedSpans.get(0).getAttributes.asScala should equal (Map(
+        "string" -> "foo",
+        "long" -> 42L,
+        "boolean" -> true
+      ))
+    }
+
+    it("links child spans to their parent.") {
+      val t = tracer()
+      val parent = t.startSpan("parent", Optional.empty())
+      t.startSpan("child 1", Optional.of(parent)).end()
+      t.startSpan("unrelated", Optional.empty()).end()
+      t.startSpan("child 2", Optional.of(parent)).end()
+      parent.end()
+
+      val finishedParent = t.getFinishedSpans.asScala.last
+      finishedParent.getParentSpanId.isPresent should be (false)
+      t.getChildren(finishedParent).asScala.map(_.getName) should equal (List("child 1", "child 2"))
+      t.getChildren(finishedParent).asScala.map(_.getParentSpanId.get) should equal (List(finishedParent.getSpanId, finishedParent.getSpanId))
+    }
+
+    it("keeps only the most recently finished spans when the buffer is full.") {
+      val t = tracer(capacity = 3)
+      for { i <- 1 to 5 } {
+        t.startSpan(s"span $i", Optional.empty()).end()
+      }
+
+      t.getFinishedSpans.asScala.map(_.getName) should equal (List("span 3", "span 4", "span 5"))
+    }
+
+    it("forgets all spans when cleared.") {
+      val t = tracer(capacity = 3)
+      t.startSpan("a", Optional.empty()).end()
+      t.clear()
+      t.getFinishedSpans.asScala shouldBe empty
+
+      t.startSpan("b", Optional.empty()).end()
+      t.getFinishedSpans.asScala.map(_.getName) should equal (List("b"))
+    }
+
+    it("rejects a non-positive capacity.") {
+      an [IllegalArgumentException] should be thrownBy tracer(capacity = 0)
+    }
+
+  }
+
+}
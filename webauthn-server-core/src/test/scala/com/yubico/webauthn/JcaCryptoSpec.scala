@@ -0,0 +1,115 @@
+package com.yubico.webauthn
+
+import java.security.KeyPair
+import java.security.MessageDigest
+import java.security.Provider
+import java.security.Security
+import java.security.Signature
+import java.security.interfaces.ECPublicKey
+
+import com.yubico.webauthn.data.ByteArray
+import org.junit.runner.RunWith
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+import org.scalatest.junit.JUnitRunner
+
+import scala.collection.JavaConverters._
+
+
+@RunWith(classOf[JUnitRunner])
+class JcaCryptoSpec extends FunSpec with Matchers {
+
+  private val reference = new BouncyCastleCrypto
+  private val bouncyCastle: Provider = reference.getProvider
+
+  private val keypair: KeyPair = TestAuthenticator.generateEcKeypair()
+  private val signedBytes = new ByteArray("Hello, World!".getBytes("UTF-8"))
+  private val signature = TestAuthenticator.sign(signedBytes, keypair.getPrivate)
+  private val encodedPublicKey: ByteArray = {
+    val key = keypair.getPublic.asInstanceOf[ECPublicKey]
+    def coordinate(i: BigInt): Array[Byte] = i.toByteArray.reverse.padTo(32, 0: Byte).take(32).reverse
+    new ByteArray(Array(4: Byte) ++ coordinate(key.getW.getAffineX) ++ coordinate(key.getW.getAffineY))
+  }
+
+  /** A provider that offers SHA-256, but computes something else. */
+  private class BrokenDigestProvider extends Provider("Broken", 1.0, "Gives wrong SHA-256 hashes") {
+    put("MessageDigest.SHA-256", classOf[BrokenDigest].getName)
+  }
+
+  describe("JcaCrypto") {
+
+    it("uses the Bouncy Castle provider by default.") {
+      val crypto = JcaCrypto.builder().build()
+      crypto.getSignatureProvider should be theSameInstanceAs bouncyCastle
+      crypto.getDigestProvider should be theSameInstanceAs bouncyCastle
+    }
+
+    it("uses the first provider that implements each operation.") {
+      val sun = Security.getProvider("SUN")
+      val crypto = JcaCrypto.builder().providers(List(sun, bouncyCastle).asJava).build()
+
+      crypto.getSignatureProvider should be theSameInstanceAs bouncyCastle
+      crypto.getDigestProvider should be theSameInstanceAs sun
+    }
+
+    it("skips a provider that fails the known-answer test.") {
+      val crypto = JcaCrypto.builder().providers(List(new BrokenDigestProvider, bouncyCastle).asJava).build()
+      crypto.getDigestProvider should be theSameInstanceAs bouncyCastle
+    }
+
+    it("rejects a provider list where no provider passes the known-answer test.") {
+      an [IllegalArgumentException] should be thrownBy JcaCrypto.builder().providers(List[Provider](new BrokenDigestProvider).asJava).build()
+      an [IllegalArgumentException] should be thrownBy JcaCrypto.builder().providers(List(Security.getProvider("SUN")).asJava).build()
+      an [IllegalArgumentException] should be thrownBy JcaCrypto.builder().providers(List[Provider]().asJava).build()
+    }
+
+    it("selects one of the passing providers when asked for the fastest.") {
+      val sun = Security.getProvider("SUN")
+      val crypto = JcaCrypto.builder().providers(List(new BrokenDigestProvider, sun, bouncyCastle).asJava).selectFastest(true).build()
+
+      crypto.getSignatureProvider should be theSameInstanceAs bouncyCastle
+      List(sun, bouncyCastle) should contain (crypto.getDigestProvider)
+    }
+
+    it("computes the same hashes as BouncyCastleCrypto.") {
+      val crypto = JcaCrypto.builder().providers(List(Security.getProvider("SUN")).asJava).build()
+      crypto.hash(signedBytes) should equal (reference.hash(signedBytes))
+      crypto.hash("Hello, World!") should equal (reference.hash("Hello, World!"))
+    }
+
+    val signatureProviders = (Security.getProviders.toList :+ bouncyCastle)
+      .filter(_.getService("Signature", "SHA256withECDSA") != null)
+      .groupBy(_.getName).values.map(_.head)
+
+    for { provider <- signatureProviders } {
+      it(s"verifies signatures with decoded and Bouncy Castle keys using the ${provider.getName} provider.") {
+        val crypto = JcaCrypto.builder().providers(List(provider, Security.getProvider("SUN")).asJava).build()
+        crypto.getSignatureProvider should be theSameInstanceAs provider
+        val publicKey = crypto.decodePublicKey(encodedPublicKey)
+
+        crypto.verifySignature(publicKey, signedBytes, signature) should be (true)
+        crypto.verifySignature(keypair.getPublic, signedBytes, signature) should be (true)
+        crypto.verifySignature(publicKey, new ByteArray("Hello, Moon!".getBytes("UTF-8")), signature) should be (false)
+        a [RuntimeException] should be thrownBy crypto.verifySignature(publicKey, signedBytes, new ByteArray(Array[Byte](1, 2, 3)))
+      }
+
+      it(s"decodes public keys that the ${provider.getName} provider accepts as they are.") {
+        val crypto = JcaCrypto.builder().providers(List(provider, Security.getProvider("SUN")).asJava).build()
+        val verifier = Signature.getInstance("SHA256withECDSA", provider)
+
+        verifier.initVerify(crypto.decodePublicKey(encodedPublicKey))
+        verifier.update(signedBytes.getBytes)
+        verifier.verify(signature.getBytes) should be (true)
+      }
+    }
+
+  }
+
+}
+
+class BrokenDigest extends MessageDigest("SHA-256") {
+  override def engineUpdate(input: Byte): Unit = ()
+  override def engineUpdate(input: Array[Byte], offset: Int, len: Int): Unit = ()
+  override def engineDigest(): Array[Byte] = new Array[Byte](32)
+  override def engineReset(): Unit = ()
+}
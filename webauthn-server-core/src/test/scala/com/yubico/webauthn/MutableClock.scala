@@ -0,0 +1,18 @@
+package com.yubico.webauthn
+
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneId
+import java.time.ZoneOffset
+
+
+/**
+  * A UTC [[Clock]] that stands still until advanced, for tests of time-dependent behaviour.
+  */
+class MutableClock(var now: Instant = Instant.parse("2018-09-01T12:00:00Z")) extends Clock {
+  override def getZone: ZoneId = ZoneOffset.UTC
+  override def withZone(zone: ZoneId): Clock = this
+  override def instant(): Instant = now
+  def advance(duration: Duration): Unit = now = now.plus(duration)
+}
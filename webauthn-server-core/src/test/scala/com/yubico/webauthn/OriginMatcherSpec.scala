@@ -0,0 +1,156 @@
+package com.yubico.webauthn
+
+import java.util.Optional
+
+import com.yubico.webauthn.data.RelyingPartyIdentity
+import org.junit.runner.RunWith
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+import org.scalatest.junit.JUnitRunner
+
+import scala.collection.JavaConverters._
+
+
+@RunWith(classOf[JUnitRunner])
+class OriginMatcherSpec extends FunSpec with Matchers {
+
+  private def matcher(patterns: String*): OriginMatcher = OriginMatcher.fromPatterns(patterns.asJava)
+
+  describe("OriginMatcher.fromPatterns") {
+
+    describe("with an exact pattern") {
+      val m = matcher("https://example.com")
+
+      it("accepts the same origin.") {
+        m.isAllowed("https://example.com") should be (true)
+      }
+
+      it("ignores case in the scheme and host.") {
+        m.isAllowed("HTTPS://Example.COM") should be (true)
+      }
+
+      it("rejects other hosts, schemes and ports.") {
+        m.isAllowed("https://www.example.com") should be (false)
+        m.isAllowed("https://example.org") should be (false)
+        m.isAllowed("http://example.com") should be (false)
+        m.isAllowed("https://example.com:8443") should be (false)
+      }
+
+      it("rejects malformed origins.") {
+        m.isAllowed(null) should be (false)
+        m.isAllowed("") should be (false)
+        m.isAllowed("example.com") should be (false)
+        m.isAllowed("https://example.com/") should be (false)
+        m.isAllowed("https://example.com:") should be (false)
+        m.isAllowed("https://example.com:-1") should be (false)
+      }
+
+      it("rejects origins with user info, empty labels or malformed ports.") {
+        m.isAllowed("https://user@example.com") should be (false)
+        m.isAllowed("https://.example.com") should be (false)
+        m.isAllowed("https://example.com.") should be (false)
+        m.isAllowed("https://example..com") should be (false)
+        m.isAllowed("https://example.com:+443") should be (false)
+        m.isAllowed("https://example.com:65536") should be (false)
+        m.isAllowed("https://example.com:000443") should be (false)
+      }
+    }
+
+    describe("with a subdomain pattern") {
+      val m = matcher("https://*.example.com")
+
+      it("accepts subdomains at any depth.") {
+        m.isAllowed("https://a.example.com") should be (true)
+        m.isAllowed("https://a.b.example.com") should be (true)
+      }
+
+      it("rejects the domain itself.") {
+        m.isAllowed("https://example.com") should be (false)
+      }
+
+      it("rejects other domains that share a suffix.") {
+        m.isAllowed("https://a.notexample.com") should be (false)
+        m.isAllowed("https://a.example.com.evil.org") should be (false)
+      }
+
+      it("rejects other schemes and ports.") {
+        m.isAllowed("http://a.example.com") should be (false)
+        m.isAllowed("https://a.example.com:8443") should be (false)
+      }
+
+      it("rejects origins with user info, empty labels or malformed ports.") {
+        m.isAllowed("https://user@a.example.com") should be (false)
+        m.isAllowed("https://.example.com") should be (false)
+        m.isAllowed("https://x..example.com") should be (false)
+        m.isAllowed("https://a.example.com.") should be (false)
+        m.isAllowed("https://a.example.com:+443") should be (false)
+        m.isAllowed("https://a.example.com:99999") should be (false)
+      }
+    }
+
+    describe("with port sets") {
+      val m = matcher("https://example.com:{8443, 9443}", "https://*.example.org:8443")
+
+      it("accepts each listed port.") {
+        m.isAllowed("https://example.com:8443") should be (true)
+        m.isAllowed("https://example.com:9443") should be (true)
+        m.isAllowed("https://a.example.org:8443") should be (true)
+      }
+
+      it("rejects other ports and missing ports.") {
+        m.isAllowed("https://example.com") should be (false)
+        m.isAllowed("https://example.com:443") should be (false)
+        m.isAllowed("https://a.example.org") should be (false)
+        m.isAllowed("https://a.example.org:9443") should be (false)
+      }
+    }
+
+    it("combines overlapping patterns.") {
+      val m = matcher("https://*.example.com", "https://*.tenants.example.com:8443", "https://example.com")
+
+      m.isAllowed("https://example.com") should be (true)
+      m.isAllowed("https://foo.tenants.example.com") should be (true)
+      m.isAllowed("https://foo.tenants.example.com:8443") should be (true)
+      m.isAllowed("https://foo.example.com:8443") should be (false)
+    }
+
+    it("handles IPv6 literals.") {
+      val m = matcher("https://[::1]:8443")
+
+      m.isAllowed("https://[::1]:8443") should be (true)
+      m.isAllowed("https://[::1]") should be (false)
+    }
+
+    it("rejects malformed patterns.") {
+      an [IllegalArgumentException] should be thrownBy matcher("example.com")
+      an [IllegalArgumentException] should be thrownBy matcher("https://*.")
+      an [IllegalArgumentException] should be thrownBy matcher("https://a.*.example.com")
+      an [IllegalArgumentException] should be thrownBy matcher("https://example.com:https")
+      an [IllegalArgumentException] should be thrownBy matcher("https://example.com:70000")
+      an [IllegalArgumentException] should be thrownBy matcher("https://example.com:+443")
+      an [IllegalArgumentException] should be thrownBy matcher("https://user@example.com")
+      an [IllegalArgumentException] should be thrownBy matcher("https://*..example.com")
+      an [IllegalArgumentException] should be thrownBy matcher("https://example.com.")
+    }
+
+  }
+
+  describe("RelyingParty") {
+
+    it("accepts origins accepted by its originMatcher in addition to its exact origins.") {
+      val rp = RelyingParty.builder()
+        .rp(RelyingPartyIdentity.builder().id("example.com").name("Example").build())
+        .preferredPubkeyParams(Nil.asJava)
+        .origins(List("https://example.com").asJava)
+        .originMatcher(Optional.of(matcher("https://*.example.com")))
+        .credentialRepository(null)
+        .build()
+
+      rp.getContext.isOriginAllowed("https://example.com") should be (true)
+      rp.getContext.isOriginAllowed("https://a.example.com") should be (true)
+      rp.getContext.isOriginAllowed("https://example.org") should be (false)
+    }
+
+  }
+
+}
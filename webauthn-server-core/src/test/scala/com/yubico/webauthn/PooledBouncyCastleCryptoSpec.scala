@@ -0,0 +1,84 @@
+package com.yubico.webauthn
+
+import java.security.KeyPair
+import java.security.interfaces.ECPublicKey
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+import com.yubico.webauthn.data.ByteArray
+import org.junit.runner.RunWith
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+import org.scalatest.junit.JUnitRunner
+
+import scala.collection.JavaConverters._
+
+
+@RunWith(classOf[JUnitRunner])
+class PooledBouncyCastleCryptoSpec extends FunSpec with Matchers {
+
+  private val reference = new BouncyCastleCrypto
+  private val pooled = new PooledBouncyCastleCrypto
+
+  private val keypair: KeyPair = TestAuthenticator.generateEcKeypair()
+  private val signedBytes = new ByteArray("Hello, World!".getBytes("UTF-8"))
+  private val signature = TestAuthenticator.sign(signedBytes, keypair.getPrivate)
+  private val encodedPublicKey: ByteArray = {
+    val key = keypair.getPublic.asInstanceOf[ECPublicKey]
+    def coordinate(i: BigInt): Array[Byte] = i.toByteArray.reverse.padTo(32, 0: Byte).take(32).reverse
+    new ByteArray(Array(4: Byte) ++ coordinate(key.getW.getAffineX) ++ coordinate(key.getW.getAffineY))
+  }
+
+  describe("PooledBouncyCastleCrypto") {
+
+    it("computes the same hashes as BouncyCastleCrypto.") {
+      pooled.hash(signedBytes) should equal (reference.hash(signedBytes))
+      pooled.hash("Hello, World!") should equal (reference.hash("Hello, World!"))
+      pooled.hash(new ByteArray(Array.emptyByteArray)) should equal (reference.hash(new ByteArray(Array.emptyByteArray)))
+    }
+
+    it("decodes the same public keys as BouncyCastleCrypto.") {
+      pooled.decodePublicKey(encodedPublicKey).getEncoded should equal (reference.decodePublicKey(encodedPublicKey).getEncoded)
+    }
+
+    it("rejects a malformed public key.") {
+      an [IllegalArgumentException] should be thrownBy pooled.decodePublicKey(new ByteArray(Array[Byte](4, 1, 2, 3)))
+    }
+
+    it("accepts valid signatures and rejects invalid ones, also after a failed verification.") {
+      val otherBytes = new ByteArray("Hello, Moon!".getBytes("UTF-8"))
+
+      pooled.verifySignature(keypair.getPublic, signedBytes, signature) should be (true)
+      pooled.verifySignature(keypair.getPublic, otherBytes, signature) should be (false)
+      a [RuntimeException] should be thrownBy pooled.verifySignature(keypair.getPublic, signedBytes, new ByteArray(Array[Byte](1, 2, 3)))
+      pooled.verifySignature(keypair.getPublic, signedBytes, signature) should be (true)
+    }
+
+    it("accepts valid signatures and rejects invalid ones when a key is verified by many instances.") {
+      val otherBytes = new ByteArray("Hello, Moon!".getBytes("UTF-8"))
+
+      for { _ <- 1 to 2 * PrecomputedKeyVerifier.DEFAULT_THRESHOLD } {
+        val crypto = new PooledBouncyCastleCrypto
+        crypto.verifySignature(crypto.decodePublicKey(encodedPublicKey), signedBytes, signature) should be (true)
+        crypto.verifySignature(crypto.decodePublicKey(encodedPublicKey), otherBytes, signature) should be (false)
+      }
+    }
+
+    it("gives the same results when used from many threads at once.") {
+      val executor = Executors.newFixedThreadPool(8)
+      try {
+        val results = executor.invokeAll(List.fill(256)(new Callable[Boolean] {
+          override def call(): Boolean =
+            pooled.verifySignature(pooled.decodePublicKey(encodedPublicKey), signedBytes, signature) &&
+              pooled.hash(signedBytes) == reference.hash(signedBytes)
+        }).asJava).asScala.map(_.get)
+
+        results.forall(identity) should be (true)
+      } finally {
+        executor.shutdown()
+      }
+    }
+
+  }
+
+}
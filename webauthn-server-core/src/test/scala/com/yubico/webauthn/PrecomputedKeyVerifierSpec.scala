@@ -0,0 +1,101 @@
+package com.yubico.webauthn
+
+import java.security.KeyPair
+import java.util.Optional
+
+import com.yubico.webauthn.data.ByteArray
+import org.junit.runner.RunWith
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+import org.scalatest.junit.JUnitRunner
+
+
+@RunWith(classOf[JUnitRunner])
+class PrecomputedKeyVerifierSpec extends FunSpec with Matchers {
+
+  private val reference = new BouncyCastleCrypto
+
+  private val keypair: KeyPair = TestAuthenticator.generateEcKeypair()
+  private val signedBytes = new ByteArray("Hello, World!".getBytes("UTF-8"))
+  private val otherBytes = new ByteArray("Hello, Moon!".getBytes("UTF-8"))
+  private val signature = TestAuthenticator.sign(signedBytes, keypair.getPrivate)
+
+  private def hotVerifier(threshold: Int = 2): PrecomputedKeyVerifier = {
+    val verifier = new PrecomputedKeyVerifier(16, threshold)
+    for { _ <- 1 until threshold } {
+      verifier.verify(keypair.getPublic, signedBytes, signature) should equal (Optional.empty())
+    }
+    verifier
+  }
+
+  describe("PrecomputedKeyVerifier") {
+
+    it("declines keys until they have been used the threshold number of times.") {
+      val verifier = new PrecomputedKeyVerifier(16, 3)
+
+      verifier.verify(keypair.getPublic, signedBytes, signature) should equal (Optional.empty())
+      verifier.verify(keypair.getPublic, signedBytes, signature) should equal (Optional.empty())
+      verifier.isPrecomputed(keypair.getPublic) should be (false)
+
+      verifier.verify(keypair.getPublic, signedBytes, signature) should equal (Optional.of(true))
+      verifier.isPrecomputed(keypair.getPublic) should be (true)
+    }
+
+    it("recognizes a hot key by its point, not by the key object.") {
+      val verifier = hotVerifier()
+      val sameKey = reference.decodePublicKey(new ByteArray(
+        keypair.getPublic.asInstanceOf[org.bouncycastle.jce.interfaces.ECPublicKey].getQ.getEncoded(false)
+      ))
+
+      verifier.verify(sameKey, signedBytes, signature) should equal (Optional.of(true))
+    }
+
+    it("gives the same results as BouncyCastleCrypto for a hot key.") {
+      val verifier = hotVerifier()
+
+      for { i <- 0 until 20 } {
+        val message = new ByteArray(s"Message ${i}".getBytes("UTF-8"))
+        val sig = TestAuthenticator.sign(message, keypair.getPrivate)
+        val tamperedSig = new ByteArray(sig.getBytes.updated(sig.size - 1, (sig.getBytes.last ^ 1).toByte))
+
+        verifier.verify(keypair.getPublic, message, sig) should equal (Optional.of(true))
+        verifier.verify(keypair.getPublic, otherBytes, sig) should equal (Optional.of(false))
+        verifier.verify(keypair.getPublic, message, tamperedSig) should equal (Optional.of(reference.verifySignature(keypair.getPublic, message, tamperedSig)))
+      }
+    }
+
+    it("rejects a signature by another key.") {
+      val otherKeypair = TestAuthenticator.generateEcKeypair()
+      val verifier = hotVerifier()
+
+      verifier.verify(keypair.getPublic, signedBytes, TestAuthenticator.sign(signedBytes, otherKeypair.getPrivate)) should equal (Optional.of(false))
+    }
+
+    it("declines signatures that are not canonical DER.") {
+      val verifier = hotVerifier()
+
+      verifier.verify(keypair.getPublic, signedBytes, new ByteArray(signature.getBytes :+ (0: Byte))) should equal (Optional.empty())
+      verifier.verify(keypair.getPublic, signedBytes, new ByteArray(Array[Byte](1, 2, 3))) should equal (Optional.empty())
+      verifier.verify(keypair.getPublic, signedBytes, new ByteArray(Array.emptyByteArray)) should equal (Optional.empty())
+    }
+
+    it("declines keys on other curves.") {
+      val p384 = TestAuthenticator.generateEcKeypair("P-384")
+      val verifier = new PrecomputedKeyVerifier(16, 1)
+
+      verifier.verify(p384.getPublic, signedBytes, TestAuthenticator.sign(signedBytes, p384.getPrivate)) should equal (Optional.empty())
+      verifier.size should equal (0)
+    }
+
+    it("keeps at most its capacity of keys.") {
+      val verifier = new PrecomputedKeyVerifier(4, 1)
+      for { _ <- 0 until 10 } {
+        val otherKeypair = TestAuthenticator.generateEcKeypair()
+        verifier.verify(otherKeypair.getPublic, signedBytes, TestAuthenticator.sign(signedBytes, otherKeypair.getPrivate)) should equal (Optional.of(true))
+      }
+      verifier.size should be <= 4L
+    }
+
+  }
+
+}
@@ -0,0 +1,138 @@
+package com.yubico.webauthn
+
+import java.security.interfaces.ECPublicKey
+import java.util.Optional
+
+import com.yubico.internal.util.WebAuthnCodecs
+import com.yubico.webauthn.data.ByteArray
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor
+import org.junit.runner.RunWith
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+import org.scalatest.junit.JUnitRunner
+
+import scala.collection.JavaConverters._
+
+
+@RunWith(classOf[JUnitRunner])
+class PublicKeyCacheSpec extends FunSpec with Matchers {
+
+  private def newCoseKey(): ByteArray =
+    WebAuthnCodecs.ecPublicKeyToCose(TestAuthenticator.generateEcKeypair().getPublic.asInstanceOf[ECPublicKey])
+
+  private val credentialId = new ByteArray(Array[Byte](1, 2, 3, 4))
+  private val userHandle = new ByteArray(Array[Byte](5, 6, 7, 8))
+  private val coseKey = newCoseKey()
+
+  private def credential(id: ByteArray = credentialId, cose: ByteArray = coseKey): CoseCredential =
+    CoseCredential.builder()
+      .credentialId(id)
+      .userHandle(userHandle)
+      .publicKeyCose(cose)
+      .signatureCount(42)
+      .build()
+
+  private class CountingRepository(var credentials: Map[ByteArray, CoseCredential]) extends CoseCredentialRepository {
+    var lookups = 0
+    override def getCredentialIdsForUsername(username: String) = Set[PublicKeyCredentialDescriptor]().asJava
+    override def getUserHandleForUsername(username: String) = Optional.of(userHandle)
+    override def getUsernameForUserHandle(userHandle: ByteArray) = Optional.of("foo")
+    override def lookup(credentialId: ByteArray, userHandle: ByteArray) = {
+      lookups += 1
+      Optional.ofNullable(credentials.getOrElse(credentialId, null))
+    }
+    override def lookupAll(credentialId: ByteArray) = credentials.get(credentialId).toSet.asJava
+  }
+
+  describe("PublicKeyCache") {
+
+    it("decodes the same key as WebAuthnCodecs.") {
+      val cache = PublicKeyCache.builder().build()
+      cache.importCoseP256PublicKey(credentialId, coseKey).getEncoded should equal (WebAuthnCodecs.importCoseP256PublicKey(coseKey).getEncoded)
+    }
+
+    it("returns the cached key for the same credential and COSE key.") {
+      val cache = PublicKeyCache.builder().build()
+      val first = cache.importCoseP256PublicKey(credentialId, coseKey)
+
+      cache.importCoseP256PublicKey(credentialId, new ByteArray(coseKey.getBytes)) should be theSameInstanceAs first
+      cache.size should equal (1)
+    }
+
+    it("decodes the key again if the COSE key of a credential has changed.") {
+      val cache = PublicKeyCache.builder().build()
+      val otherKey = newCoseKey()
+      val first = cache.importCoseP256PublicKey(credentialId, coseKey)
+      val second = cache.importCoseP256PublicKey(credentialId, otherKey)
+
+      second should not be theSameInstanceAs (first)
+      second.getEncoded should equal (WebAuthnCodecs.importCoseP256PublicKey(otherKey).getEncoded)
+      cache.importCoseP256PublicKey(credentialId, otherKey) should be theSameInstanceAs second
+    }
+
+    it("forgets invalidated keys.") {
+      val cache = PublicKeyCache.builder().build()
+      val first = cache.importCoseP256PublicKey(credentialId, coseKey)
+      cache.invalidate(credentialId)
+
+      cache.size should equal (0)
+      cache.importCoseP256PublicKey(credentialId, coseKey) should not be theSameInstanceAs (first)
+
+      cache.invalidateAll()
+      cache.size should equal (0)
+    }
+
+    it("stays within its maximum size.") {
+      val entryBytes = 4 + coseKey.size + PublicKeyCache.ENTRY_OVERHEAD_BYTES
+      val cache = PublicKeyCache.builder().maximumBytes(10L * entryBytes).build()
+
+      for { i <- 0 until 100 } {
+        cache.importCoseP256PublicKey(new ByteArray(Array[Byte](0, 0, 0, i.toByte)), coseKey)
+      }
+
+      cache.size should be <= 10L
+      cache.size should be > 0L
+    }
+
+    it("rejects a non-positive maximum size.") {
+      an [IllegalArgumentException] should be thrownBy PublicKeyCache.builder().maximumBytes(0L).build()
+    }
+
+  }
+
+  describe("PublicKeyCache.decorate") {
+
+    it("returns the credentials of the COSE repository with decoded keys.") {
+      val repository = PublicKeyCache.builder().build().decorate(new CountingRepository(Map(credentialId -> credential())))
+      val result = repository.lookup(credentialId, userHandle).get
+
+      result.getCredentialId should equal (credentialId)
+      result.getUserHandle should equal (userHandle)
+      result.getSignatureCount should equal (42)
+      result.getPublicKey.getEncoded should equal (WebAuthnCodecs.importCoseP256PublicKey(coseKey).getEncoded)
+
+      repository.lookup(new ByteArray(Array[Byte](9)), userHandle).isPresent should be (false)
+      repository.lookupAll(credentialId).asScala.map(_.getPublicKey.getEncoded.toList) should equal (Set(result.getPublicKey.getEncoded.toList))
+      repository.lookupBatch(Map(credentialId -> userHandle).asJava).asScala.keySet should equal (Set(credentialId))
+      repository.getUserHandleForUsername("foo") should equal (Optional.of(userHandle))
+    }
+
+    it("decodes each key only once across lookups.") {
+      val delegate = new CountingRepository(Map(credentialId -> credential()))
+      val repository = PublicKeyCache.builder().build().decorate(delegate)
+
+      val first = repository.lookup(credentialId, userHandle).get.getPublicKey
+      repository.lookup(credentialId, userHandle).get.getPublicKey should be theSameInstanceAs first
+      delegate.lookups should equal (2)
+    }
+
+    it("rejects a malformed stored key.") {
+      val repository = PublicKeyCache.builder().build().decorate(
+        new CountingRepository(Map(credentialId -> credential(cose = new ByteArray(Array[Byte](1, 2, 3)))))
+      )
+      an [IllegalArgumentException] should be thrownBy repository.lookup(credentialId, userHandle)
+    }
+
+  }
+
+}
@@ -0,0 +1,43 @@
+package com.yubico.webauthn
+
+import java.util.Optional
+
+import com.yubico.internal.util.scala.JavaConverters._
+
+
+/**
+  * A [[CeremonyListener]] that records every callback as a string, for inspection in tests.
+  */
+class RecordingCeremonyListener extends CeremonyListener {
+
+  var events: List[String] = Nil
+
+  private def record(event: String): Unit = synchronized { events = events :+ event }
+
+  override def ceremonyStarted(ceremony: CeremonyType): Unit =
+    record(s"started $ceremony")
+
+  override def stepStarted(ceremony: CeremonyType, step: String): Unit =
+    record(s"start $step")
+
+  override def stepFinished(ceremony: CeremonyType, step: String, durationNanos: Long): Unit = {
+    assert(durationNanos >= 0)
+    record(s"end $step")
+  }
+
+  override def ceremonyFinished(ceremony: CeremonyType, failureReason: Optional[CeremonyFailureReason], durationNanos: Long): Unit = {
+    assert(durationNanos >= 0)
+    record(s"finished $ceremony ${failureReason.asScala.getOrElse("SUCCESS")}")
+  }
+
+  override def ceremonyAborted(ceremony: CeremonyType, exception: RuntimeException, durationNanos: Long): Unit = {
+    assert(durationNanos >= 0)
+    record(s"aborted $ceremony ${exception.getClass.getSimpleName}")
+  }
+
+  /**
+    * @return the names of the steps started, in order.
+    */
+  def steps: List[String] = events.filter(_.startsWith("start ")).map(_.stripPrefix("start "))
+
+}
@@ -4,6 +4,7 @@ import java.io.IOException
 import java.nio.charset.Charset
 import java.security.MessageDigest
 import java.security.KeyPair
+import java.security.Security
 import java.util.Optional
 
 import com.fasterxml.jackson.databind.node.JsonNodeFactory
@@ -18,6 +19,7 @@ import com.yubico.webauthn.data.AuthenticatorAssertionResponse
 import com.yubico.webauthn.data.PublicKeyCredential
 import com.yubico.webauthn.data.PublicKeyCredentialRequestOptions
 import com.yubico.webauthn.data.AssertionRequest
+import com.yubico.webauthn.data.AssertionResult
 import com.yubico.webauthn.data.ByteArray
 import com.yubico.webauthn.data.AssertionExtensionInputs
 import com.yubico.webauthn.data.ClientAssertionExtensionOutputs
@@ -94,6 +96,7 @@ class RelyingPartyAssertionSpec extends FunSpec with Matchers with GeneratorDriv
     credentialId: ByteArray = Defaults.credentialId,
     credentialKey: KeyPair = Defaults.credentialKey,
     credentialRepository: Option[CredentialRepository] = None,
+    crypto: Option[Crypto] = None,
     origin: String = Defaults.rpId.getId,
     requestedExtensions: AssertionExtensionInputs = Defaults.requestedExtensions,
     rpId: RelyingPartyIdentity = Defaults.rpId,
@@ -130,7 +133,7 @@ class RelyingPartyAssertionSpec extends FunSpec with Matchers with GeneratorDriv
       .clientExtensionResults(clientExtensionResults)
       .build()
 
-    RelyingParty.builder()
+    val rpBuilder = RelyingParty.builder()
       .allowUntrustedAttestation(false)
       .challengeGenerator(null)
       .origins(List(origin).asJava)
@@ -155,10 +158,32 @@ class RelyingPartyAssertionSpec extends FunSpec with Matchers with GeneratorDriv
         override def getUsernameForUserHandle(userHandle: ByteArray): Optional[String] = getUsernameIfDefault(userHandle, username = usernameForUser)
       })
       .validateSignatureCounter(validateSignatureCounter)
-      .build()
-      ._finishAssertion(request, response, callerTokenBindingId.asJava)
+    crypto.foreach(rpBuilder.crypto(_))
+    val rp = rpBuilder.build()
+
+    val steps = rp._finishAssertion(request, response, callerTokenBindingId.asJava)
+    assertSameOutcome(
+      Try(steps.run),
+      Try(rp._finishAssertionSinglePass(request, response, callerTokenBindingId.asJava).run)
+    )
+    steps
   }
 
+  /**
+   * Checks that the single-pass engine used by RelyingParty.finishAssertion agrees with the step-by-step reference
+   * implementation tested in this spec.
+   */
+  private def assertSameOutcome(stepByStep: Try[AssertionResult], singlePass: Try[AssertionResult]): Unit =
+    (stepByStep, singlePass) match {
+      case (Success(expected), Success(actual)) =>
+        actual should equal (expected)
+      case (Failure(expected), Failure(actual)) =>
+        actual.getClass should equal (expected.getClass)
+        actual.getMessage should equal (expected.getMessage)
+      case _ =>
+        fail(s"Step-by-step outcome ${stepByStep} differs from single-pass outcome ${singlePass}")
+    }
+
   describe("§7.2. Verifying an authentication assertion") {
 
     describe("When verifying a given PublicKeyCredential structure (credential) and an AuthenticationExtensionsClientOutputs structure clientExtensionResults, as part of an authentication ceremony, the Relying Party MUST proceed as follows:") {
@@ -264,7 +289,7 @@ class RelyingPartyAssertionSpec extends FunSpec with Matchers with GeneratorDriv
               override def getUsernameForUserHandle(userHandle: ByteArray): Optional[String] = ???
             })
           )
-          val step: steps.Step3 = new steps.Step3(Defaults.username, Defaults.userHandle, Nil.asJava)
+          val step: steps.Step3 = new steps.Step3(Defaults.username, Defaults.userHandle, None.asJava, Nil.asJava)
 
           step.validations shouldBe a [Failure[_]]
           step.validations.failed.get shouldBe an [IllegalArgumentException]
@@ -964,8 +989,81 @@ class RelyingPartyAssertionSpec extends FunSpec with Matchers with GeneratorDriv
         step.result.get.getUserHandle should equal (Defaults.userHandle)
       }
 
+      it("The credential is looked up in the credential repository only once per ceremony.") {
+        var lookups = 0
+        val steps = finishAssertion(credentialRepository = Some(new CredentialRepository {
+          override def lookup(id: ByteArray, uh: ByteArray) = {
+            lookups += 1
+            Some(
+              RegisteredCredential.builder()
+                .credentialId(id)
+                .userHandle(uh)
+                .publicKey(Defaults.credentialKey.getPublic)
+                .signatureCount(0)
+                .build()
+            ).asJava
+          }
+          override def lookupAll(id: ByteArray) = ???
+          override def getCredentialIdsForUsername(username: String) = ???
+          override def getUserHandleForUsername(username: String): Optional[ByteArray] = getUserHandleIfDefault(username)
+          override def getUsernameForUserHandle(userHandle: ByteArray): Optional[String] = getUsernameIfDefault(userHandle)
+        }))
+
+        val lookupsBefore = lookups
+        Try(steps.run) shouldBe a [Success[_]]
+        lookups - lookupsBefore should equal (1)
+      }
+
     }
 
   }
 
+  describe("With a JcaCrypto,") {
+    val providers = (Security.getProviders.toList :+ new BouncyCastleCrypto().getProvider)
+      .filter(_.getService("Signature", "SHA256withECDSA") != null)
+      .groupBy(_.getName).values.map(_.head)
+
+    for { provider <- providers } {
+      describe(s"using the ${provider.getName} provider,") {
+        val jcaCrypto = JcaCrypto.builder().providers(List(provider).asJava).build()
+
+        it("selects that provider for signatures.") {
+          jcaCrypto.getSignatureProvider should be theSameInstanceAs provider
+        }
+
+        it("the default test case succeeds.") {
+          val steps = finishAssertion(crypto = Some(jcaCrypto))
+          steps.run.isSuccess should be (true)
+        }
+
+        it("a mutated clientDataJSON fails verification.") {
+          val steps = finishAssertion(
+            crypto = Some(jcaCrypto),
+            clientDataJson = WebAuthnCodecs.json.writeValueAsString(
+              WebAuthnCodecs.json.readTree(Defaults.clientDataJson).asInstanceOf[ObjectNode]
+                .set("foo", jsonFactory.textNode("bar"))
+            )
+          )
+          Try(steps.run) shouldBe a [Failure[_]]
+        }
+
+        it("a test case with a different signed flags field fails.") {
+          val steps = finishAssertion(
+            crypto = Some(jcaCrypto),
+            authenticatorData = new ByteArray(Defaults.authenticatorData.getBytes.toVector.updated(32, (Defaults.authenticatorData.getBytes.toVector(32) | 0x02).toByte).toArray)
+          )
+          Try(steps.run) shouldBe a [Failure[_]]
+        }
+
+        it("a test case with a different signed signature counter fails.") {
+          val steps = finishAssertion(
+            crypto = Some(jcaCrypto),
+            authenticatorData = new ByteArray(Defaults.authenticatorData.getBytes.toVector.updated(33, 42.toByte).toArray)
+          )
+          Try(steps.run) shouldBe a [Failure[_]]
+        }
+      }
+    }
+  }
+
 }
@@ -0,0 +1,626 @@
+package com.yubico.webauthn
+
+import java.security.KeyPair
+import java.util.Optional
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.TimeUnit
+
+import com.yubico.internal.util.scala.JavaConverters._
+import com.yubico.webauthn.data.AssertionRequest
+import com.yubico.webauthn.data.AuthenticatorAssertionResponse
+import com.yubico.webauthn.data.ByteArray
+import com.yubico.webauthn.data.ClientAssertionExtensionOutputs
+import com.yubico.webauthn.data.CollectedClientData
+import com.yubico.webauthn.data.PublicKeyCredential
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor
+import com.yubico.webauthn.data.PublicKeyCredentialRequestOptions
+import com.yubico.webauthn.data.RelyingPartyIdentity
+import com.yubico.webauthn.exception.AssertionFailedException
+import org.junit.runner.RunWith
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+import org.scalatest.junit.JUnitRunner
+
+import scala.collection.JavaConverters._
+
+
+@RunWith(classOf[JUnitRunner])
+class RelyingPartyBatchAssertionSpec extends FunSpec with Matchers {
+
+  private object Defaults {
+
+    val rpId = RelyingPartyIdentity.builder().name("Test party").id("localhost").build()
+
+    // These values were generated using TestAuthenticator.makeCredentialExample(TestAuthenticator.createCredential())
+    val authenticatorData: ByteArray = ByteArray.fromHex("49960de5880e8c687434170f6476605b8fe4aeb9a28632c7995cf3ba831d97630100000539")
+    val clientDataJson: String = """{"challenge":"AAEBAgMFCA0VIjdZEGl5Yls","origin":"localhost","hashAlgorithm":"SHA-256","type":"webauthn.get","tokenBinding":{"status":"supported"}}"""
+    val credentialId: ByteArray = ByteArray.fromBase64Url("aqFjEQkzH8I55SnmIyNM632MsPI_qZ60aGTSHZMwcKY")
+    val credentialKey: KeyPair = TestAuthenticator.importEcKeypair(
+      privateBytes = ByteArray.fromHex("308193020100301306072a8648ce3d020106082a8648ce3d0301070479307702010104206a88f478910df685bc0cfcc2077e64fb3a8ba770fb23fbbcd1f6572ce35cf360a00a06082a8648ce3d030107a14403420004d8020a2ec718c2c595bb890fcdaf9b81cc742118efdbb8812ac4a9dd5ace2990ec22a48faf1544df0fe5fe0e2e7a69720e63a83d7f46aa022f1323eaf7967762"),
+      publicBytes = ByteArray.fromHex("3059301306072a8648ce3d020106082a8648ce3d03010703420004d8020a2ec718c2c595bb890fcdaf9b81cc742118efdbb8812ac4a9dd5ace2990ec22a48faf1544df0fe5fe0e2e7a69720e63a83d7f46aa022f1323eaf7967762")
+    )
+    val signature: ByteArray = ByteArray.fromHex("30450221008d478e4c24894d261c7fd3790363ba9687facf4dd1d59610933a2c292cffc3d902205069264c167833d239d6af4c7bf7326c4883fb8c3517a2c86318aa3060d8b441")
+
+    // These values are not signed over
+    val username: String = "foo-user"
+    val userHandle: ByteArray = ByteArray.fromHex("6d8972d9603ce4f3fa5d520ce6d024bf")
+
+    // These values are defined by the attestationObject and clientDataJson above
+    val clientDataJsonBytes: ByteArray = new ByteArray(clientDataJson.getBytes("UTF-8"))
+    val challenge: ByteArray = new CollectedClientData(clientDataJsonBytes).getChallenge
+
+  }
+
+  private def assertion(
+    authenticatorData: ByteArray = Defaults.authenticatorData,
+    challenge: ByteArray = Defaults.challenge,
+    signature: ByteArray = Defaults.signature
+  ): FinishAssertionOptions =
+    FinishAssertionOptions.builder()
+      .request(AssertionRequest.builder()
+        .username(Some(Defaults.username).asJava)
+        .publicKeyCredentialRequestOptions(PublicKeyCredentialRequestOptions.builder()
+          .challenge(challenge)
+          .rpId(Some(Defaults.rpId.getId).asJava)
+          .build()
+        )
+        .build()
+      )
+      .response(PublicKeyCredential.builder()
+        .id(Defaults.credentialId)
+        .response(new AuthenticatorAssertionResponse(
+          authenticatorData,
+          Defaults.clientDataJsonBytes,
+          signature,
+          Defaults.userHandle
+        ))
+        .clientExtensionResults(ClientAssertionExtensionOutputs.builder().build())
+        .build()
+      )
+      .build()
+
+  private class CountingCredentialRepository extends CredentialRepository {
+    var lookups = 0
+    var batchLookups = 0
+
+    override def getCredentialIdsForUsername(username: String) = ???
+    override def getUserHandleForUsername(username: String): Optional[ByteArray] =
+      if (username == Defaults.username) Some(Defaults.userHandle).asJava else None.asJava
+    override def getUsernameForUserHandle(userHandle: ByteArray): Optional[String] =
+      if (userHandle == Defaults.userHandle) Some(Defaults.username).asJava else None.asJava
+    override def lookup(credId: ByteArray, lookupUserHandle: ByteArray) = {
+      lookups += 1
+      Some(RegisteredCredential.builder()
+        .credentialId(credId)
+        .userHandle(lookupUserHandle)
+        .publicKey(Defaults.credentialKey.getPublic)
+        .signatureCount(0)
+        .build()
+      ).asJava
+    }
+    override def lookupAll(credId: ByteArray) = ???
+    override def lookupBatch(userHandlesByCredentialId: java.util.Map[ByteArray, ByteArray]) = {
+      batchLookups += 1
+      userHandlesByCredentialId.asScala.map({ case (credId, uh) =>
+        credId -> RegisteredCredential.builder()
+          .credentialId(credId)
+          .userHandle(uh)
+          .publicKey(Defaults.credentialKey.getPublic)
+          .signatureCount(0)
+          .build()
+      }).asJava
+    }
+  }
+
+  private def rp(
+    credentialRepository: CredentialRepository,
+    validateCheapestFirst: Boolean = false,
+    replayCache: Option[ReplayCache] = None,
+    ceremonyListener: Option[CeremonyListener] = None,
+    tracer: Option[Tracer] = None,
+    assertionPrefetchExecutor: Option[Executor] = None,
+    asyncCredentialRepository: Option[AsyncCredentialRepository] = None,
+    verificationExecutor: Option[Executor] = None,
+    crypto: Option[Crypto] = None
+  ): RelyingParty = {
+    val builder = RelyingParty.builder()
+      .origins(List(Defaults.rpId.getId).asJava)
+      .preferredPubkeyParams(Nil.asJava)
+      .rp(Defaults.rpId)
+      .credentialRepository(credentialRepository)
+      .validateCheapestFirst(validateCheapestFirst)
+      .replayCache(replayCache.asJava)
+      .ceremonyListener(ceremonyListener.asJava)
+      .tracer(tracer.asJava)
+      .assertionPrefetchExecutor(assertionPrefetchExecutor.asJava)
+      .asyncCredentialRepository(asyncCredentialRepository.asJava)
+      .verificationExecutor(verificationExecutor.asJava)
+    crypto.foreach(builder.crypto)
+    builder.build()
+  }
+
+  describe("RelyingParty.finishAssertions") {
+
+    it("returns one successful result per valid assertion.") {
+      val results = rp(new CountingCredentialRepository).finishAssertions(List.fill(5)(assertion()).asJava).asScala
+
+      results should have length 5
+      results foreach { result =>
+        result.isSuccess should be (true)
+        result.getResult.get.getUsername should equal (Defaults.username)
+      }
+    }
+
+    it("fetches credentials with one batch lookup and no individual lookups.") {
+      val credentialRepository = new CountingCredentialRepository
+      rp(credentialRepository).finishAssertions(List.fill(5)(assertion()).asJava)
+
+      credentialRepository.batchLookups should equal (1)
+      credentialRepository.lookups should equal (0)
+    }
+
+    it("reports failures per item without aborting the rest of the batch.") {
+      val results = rp(new CountingCredentialRepository).finishAssertions(List(
+        assertion(),
+        assertion(challenge = new ByteArray(Array.fill(16)(0))),
+        assertion(authenticatorData = new ByteArray(Defaults.authenticatorData.getBytes.updated(33, 42.toByte)))
+      ).asJava).asScala
+
+      results.map(_.isSuccess) should equal (List(true, false, false))
+      results(1).getFailure.get.getReason should equal (CeremonyFailureReason.WRONG_CHALLENGE)
+      results(1).getFailure.get.getMessage should equal ("Incorrect challenge.")
+    }
+
+    it("reports a signature that cannot be decoded as a failed item without aborting the rest of the batch.") {
+      val malformed = assertion(signature = new ByteArray(Array[Byte](1, 2, 3)))
+      a [RuntimeException] should be thrownBy rp(new CountingCredentialRepository).finishAssertion(malformed)
+
+      val executor = Executors.newFixedThreadPool(4)
+      try {
+        val batch = List(assertion(), malformed, assertion(), malformed, assertion()).asJava
+
+        for { results <- List(
+          rp(new CountingCredentialRepository).finishAssertions(batch).asScala,
+          rp(new CountingCredentialRepository).finishAssertions(batch, executor).asScala
+        ) } {
+          results.map(_.isSuccess) should equal (List(true, false, true, false, true))
+          results(1).getFailure.get.getReason should equal (CeremonyFailureReason.VERIFICATION_ERROR)
+          results(1).getFailure.get.getCause.isPresent should be (true)
+          results(0).getResult.get.getUsername should equal (Defaults.username)
+        }
+      } finally {
+        executor.shutdown()
+      }
+    }
+
+    it("gives the same results when run on an executor.") {
+      val executor = Executors.newFixedThreadPool(4)
+      try {
+        val batch = List(
+          assertion(),
+          assertion(challenge = new ByteArray(Array.fill(16)(0))),
+          assertion()
+        ).asJava
+
+        rp(new CountingCredentialRepository).finishAssertions(batch, executor).asScala.map(_.isSuccess) should equal (
+          rp(new CountingCredentialRepository).finishAssertions(batch).asScala.map(_.isSuccess)
+        )
+      } finally {
+        executor.shutdown()
+      }
+    }
+
+  }
+
+  describe("RelyingParty.tryFinishAssertion") {
+
+    it("returns the same result as finishAssertion on success.") {
+      val outcome = rp(new CountingCredentialRepository).tryFinishAssertion(assertion())
+
+      outcome.isSuccess should be (true)
+      outcome.getFailure.isPresent should be (false)
+      outcome.getResult.get should equal (rp(new CountingCredentialRepository).finishAssertion(assertion()))
+    }
+
+    it("reports a wrong challenge without throwing.") {
+      val outcome = rp(new CountingCredentialRepository).tryFinishAssertion(assertion(challenge = new ByteArray(Array.fill(16)(0))))
+
+      outcome.isSuccess should be (false)
+      outcome.getResult.isPresent should be (false)
+      outcome.getFailure.get.getReason should equal (CeremonyFailureReason.WRONG_CHALLENGE)
+      outcome.getFailure.get.getMessage should equal ("Incorrect challenge.")
+    }
+
+    it("reports an invalid signature with the same message as finishAssertion.") {
+      val badAssertion = assertion(authenticatorData = new ByteArray(Defaults.authenticatorData.getBytes.updated(33, 42.toByte)))
+      val outcome = rp(new CountingCredentialRepository).tryFinishAssertion(badAssertion)
+      val exception = the [AssertionFailedException] thrownBy {
+        rp(new CountingCredentialRepository).finishAssertion(badAssertion)
+      }
+
+      outcome.getFailure.get.getReason should equal (CeremonyFailureReason.INVALID_SIGNATURE)
+      outcome.getFailure.get.getMessage should equal (exception.getCause.getMessage)
+    }
+
+  }
+
+  describe("With a replayCache,") {
+
+    it("finishAssertion rejects a replayed assertion without looking up the credential again.") {
+      val credentialRepository = new CountingCredentialRepository
+      val relyingParty = rp(credentialRepository, replayCache = Some(InMemoryReplayCache.builder().build()))
+
+      relyingParty.finishAssertion(assertion()).isSuccess should be (true)
+      credentialRepository.lookups should equal (1)
+
+      val failure = the [AssertionFailedException] thrownBy relyingParty.finishAssertion(assertion())
+      failure.getCause.getMessage should equal ("Challenge has already been used.")
+      relyingParty.tryFinishAssertion(assertion()).getFailure.get.getReason should equal (CeremonyFailureReason.REPLAYED_CHALLENGE)
+      credentialRepository.lookups should equal (1)
+    }
+
+    it("a failed assertion does not use up the challenge.") {
+      val relyingParty = rp(new CountingCredentialRepository, replayCache = Some(InMemoryReplayCache.builder().build()))
+
+      an [AssertionFailedException] should be thrownBy relyingParty.finishAssertion(
+        assertion(authenticatorData = new ByteArray(Defaults.authenticatorData.getBytes.updated(33, 42.toByte)))
+      )
+      relyingParty.finishAssertion(assertion()).isSuccess should be (true)
+    }
+
+    it("finishAssertions accepts only one of several identical assertions.") {
+      val results = rp(new CountingCredentialRepository, replayCache = Some(InMemoryReplayCache.builder().build()))
+        .finishAssertions(List.fill(3)(assertion()).asJava)
+        .asScala
+
+      results.map(_.isSuccess) should equal (List(true, false, false))
+      results(1).getFailure.get.getReason should equal (CeremonyFailureReason.REPLAYED_CHALLENGE)
+      results(1).getFailure.get.getMessage should equal ("Challenge has already been used.")
+    }
+
+    it("finishAssertionAsync rejects a replayed assertion.") {
+      val relyingParty = rp(new CountingCredentialRepository, replayCache = Some(InMemoryReplayCache.builder().build()))
+
+      relyingParty.finishAssertionAsync(assertion()).toCompletableFuture.get.isSuccess should be (true)
+      val failure = the [ExecutionException] thrownBy relyingParty.finishAssertionAsync(assertion()).toCompletableFuture.get
+      failure.getCause shouldBe an [AssertionFailedException]
+    }
+
+  }
+
+  describe("With a ceremonyListener,") {
+
+    val specSteps = List("Step0", "Step1", "Step2") ++ (4 to 17).filter(_ != 5).map(i => s"Step$i")
+
+    it("finishAssertion reports each step and the outcome of a successful ceremony.") {
+      val listener = new RecordingCeremonyListener
+      rp(new CountingCredentialRepository, ceremonyListener = Some(listener)).finishAssertion(assertion())
+
+      listener.steps should equal (specSteps)
+      listener.events.head should equal ("started ASSERTION")
+      listener.events.last should equal ("finished ASSERTION SUCCESS")
+      listener.events.tail.init should equal (specSteps.flatMap(step => List(s"start $step", s"end $step")))
+    }
+
+    it("tryFinishAssertion reports the failure reason and no steps after the failed one.") {
+      val listener = new RecordingCeremonyListener
+      rp(new CountingCredentialRepository, ceremonyListener = Some(listener)).tryFinishAssertion(assertion(challenge = new ByteArray(Array.fill(16)(0))))
+
+      listener.steps.last should equal ("Step8")
+      listener.events.takeRight(2) should equal (List("end Step8", "finished ASSERTION WRONG_CHALLENGE"))
+    }
+
+    it("finishAssertion reports the steps in the order they are run with validateCheapestFirst.") {
+      val listener = new RecordingCeremonyListener
+      rp(new CountingCredentialRepository, validateCheapestFirst = true, ceremonyListener = Some(listener)).finishAssertion(assertion())
+
+      listener.steps should equal (
+        List("Step1", "Step4") ++ (6 to 14).map(i => s"Step$i") ++ List("Step0", "Step2", "Step15", "Step16", "Step17")
+      )
+    }
+
+    it("finishAssertion reports the replay check before and after the specified steps.") {
+      val listener = new RecordingCeremonyListener
+      rp(new CountingCredentialRepository, replayCache = Some(InMemoryReplayCache.builder().build()), ceremonyListener = Some(listener))
+        .finishAssertion(assertion())
+
+      listener.steps should equal ((CeremonyListener.REPLAY_CHECK_STEP :: specSteps) :+ CeremonyListener.REPLAY_CHECK_STEP)
+    }
+
+    it("finishAssertion reports a ceremony aborted by an exception.") {
+      val listener = new RecordingCeremonyListener
+      val credentialRepository = new CountingCredentialRepository {
+        override def lookup(credId: ByteArray, lookupUserHandle: ByteArray) = throw new IllegalStateException("Database is down")
+      }
+
+      an [IllegalStateException] should be thrownBy rp(credentialRepository, ceremonyListener = Some(listener)).finishAssertion(assertion())
+      listener.events.takeRight(2) should equal (List("end Step2", "aborted ASSERTION IllegalStateException"))
+    }
+
+    it("finishAssertions reports every ceremony in the batch.") {
+      val listener = new RecordingCeremonyListener
+      rp(new CountingCredentialRepository, ceremonyListener = Some(listener))
+        .finishAssertions(List(assertion(), assertion(challenge = new ByteArray(Array.fill(16)(0)))).asJava)
+
+      listener.events.filter(_.startsWith("finished")).sorted should equal (List("finished ASSERTION SUCCESS", "finished ASSERTION WRONG_CHALLENGE"))
+    }
+
+  }
+
+  describe("With a tracer,") {
+
+    it("finishAssertion reports the ceremony as a span with a child span per credential repository call.") {
+      val tracer = InMemoryTracer.builder().build()
+      rp(new CountingCredentialRepository, tracer = Some(tracer)).finishAssertion(assertion())
+
+      val ceremony = tracer.getFinishedSpans.asScala.filter(_.getName == "webauthn.assertion")
+      ceremony should have length 1
+      ceremony.head.getParentSpanId.asScala should be (None)
+      ceremony.head.getAttributes.asScala should equal (Map(
+        "webauthn.rp_id" -> Defaults.rpId.getId,
+        "webauthn.credential_id_length" -> Defaults.credentialId.size.toLong,
+        "webauthn.outcome" -> "SUCCESS"
+      ))
+
+      val children = tracer.getChildren(ceremony.head).asScala
+      children.map(_.getName) should equal (List("CredentialRepository.getUserHandleForUsername", "CredentialRepository.lookup"))
+      children.last.getAttributes.get("webauthn.credential_id_length") should equal (Defaults.credentialId.size.toLong)
+      children.last.getAttributes.get("webauthn.results") should equal (1L)
+    }
+
+    it("tryFinishAssertion reports the failure reason and the step that failed.") {
+      val tracer = InMemoryTracer.builder().build()
+      rp(new CountingCredentialRepository, tracer = Some(tracer)).tryFinishAssertion(assertion(challenge = new ByteArray(Array.fill(16)(0))))
+
+      val attributes = tracer.getFinishedSpans.asScala.last.getAttributes.asScala
+      attributes("webauthn.outcome") should equal ("FAILURE")
+      attributes("webauthn.failure_reason") should equal ("WRONG_CHALLENGE")
+      attributes("webauthn.failure_step") should equal ("Step8")
+      attributes("error") should equal (true)
+    }
+
+    it("finishAssertion reports a ceremony aborted by an exception, and marks the failed call as an error.") {
+      val tracer = InMemoryTracer.builder().build()
+      val credentialRepository = new CountingCredentialRepository {
+        override def lookup(credId: ByteArray, lookupUserHandle: ByteArray) = throw new IllegalStateException("Database is down")
+      }
+
+      an [IllegalStateException] should be thrownBy rp(credentialRepository, tracer = Some(tracer)).finishAssertion(assertion())
+
+      val ceremony = tracer.getFinishedSpans.asScala.last
+      ceremony.getAttributes.get("webauthn.outcome") should equal ("ABORTED")
+      ceremony.getAttributes.get("webauthn.failure_step") should equal ("Step2")
+      ceremony.getAttributes.get("error.type") should equal (classOf[IllegalStateException].getName)
+
+      val lookup = tracer.getChildren(ceremony).asScala.last
+      lookup.getName should equal ("CredentialRepository.lookup")
+      lookup.getAttributes.get("error") should equal (true)
+    }
+
+    it("finishAssertions reports one ceremony span per assertion in the batch.") {
+      val tracer = InMemoryTracer.builder().build()
+      rp(new CountingCredentialRepository, tracer = Some(tracer)).finishAssertions(List.fill(3)(assertion()).asJava)
+
+      tracer.getFinishedSpans.asScala.count(_.getName == "webauthn.assertion") should equal (3)
+    }
+
+  }
+
+  describe("With an assertionPrefetchExecutor,") {
+
+    def withExecutor[A](f: Executor => A): A = {
+      val executor = Executors.newFixedThreadPool(2)
+      try {
+        f(executor)
+      } finally {
+        executor.shutdown()
+      }
+    }
+
+    it("finishAssertion gives the same result as without an executor.") {
+      withExecutor { executor =>
+        rp(new CountingCredentialRepository, assertionPrefetchExecutor = Some(executor)).finishAssertion(assertion()) should equal (
+          rp(new CountingCredentialRepository).finishAssertion(assertion())
+        )
+      }
+    }
+
+    it("finishAssertion looks up the credential on the executor.") {
+      withExecutor { executor =>
+        val callerThread = Thread.currentThread()
+        var lookupThread: Option[Thread] = None
+        val credentialRepository = new CountingCredentialRepository {
+          override def lookup(credId: ByteArray, lookupUserHandle: ByteArray) = {
+            lookupThread = Some(Thread.currentThread())
+            super.lookup(credId, lookupUserHandle)
+          }
+        }
+
+        rp(credentialRepository, assertionPrefetchExecutor = Some(executor)).finishAssertion(assertion())
+
+        credentialRepository.lookups should equal (1)
+        lookupThread should not be (None)
+        lookupThread should not be (Some(callerThread))
+      }
+    }
+
+    it("tryFinishAssertion reports the same failure as with validateCheapestFirst.") {
+      withExecutor { executor =>
+        val badAssertion = assertion(authenticatorData = new ByteArray(Defaults.authenticatorData.getBytes.updated(0, 0.toByte)))
+
+        val prefetched = rp(new CountingCredentialRepository, assertionPrefetchExecutor = Some(executor)).tryFinishAssertion(badAssertion).getFailure.get
+        val cheapestFirst = rp(new CountingCredentialRepository, validateCheapestFirst = true).tryFinishAssertion(badAssertion).getFailure.get
+
+        prefetched.getReason should equal (cheapestFirst.getReason)
+        prefetched.getMessage should equal (cheapestFirst.getMessage)
+      }
+    }
+
+    it("tryFinishAssertion cancels the lookups if a check fails before they have started.") {
+      val queued = collection.mutable.Buffer[Runnable]()
+      val credentialRepository = new CountingCredentialRepository
+
+      val outcome = rp(credentialRepository, assertionPrefetchExecutor = Some(new Executor {
+        override def execute(command: Runnable): Unit = queued += command
+      })).tryFinishAssertion(assertion(challenge = new ByteArray(Array.fill(16)(0))))
+      queued foreach { _.run() }
+
+      outcome.getFailure.get.getReason should equal (CeremonyFailureReason.WRONG_CHALLENGE)
+      queued should have length 1
+      credentialRepository.lookups should equal (0)
+    }
+
+    it("finishAssertion rethrows an exception from the credential repository unwrapped.") {
+      withExecutor { executor =>
+        val credentialRepository = new CountingCredentialRepository {
+          override def lookup(credId: ByteArray, lookupUserHandle: ByteArray) = throw new IllegalStateException("Database is down")
+        }
+
+        an [IllegalStateException] should be thrownBy rp(credentialRepository, assertionPrefetchExecutor = Some(executor)).finishAssertion(assertion())
+      }
+    }
+
+  }
+
+  describe("With a verificationExecutor,") {
+
+    def withExecutors[A](f: (Executor, Executor) => A): A = {
+      def named(name: String) = Executors.newSingleThreadExecutor(new ThreadFactory {
+        override def newThread(r: Runnable): Thread = new Thread(r, name)
+      })
+      val io = named("io")
+      val verification = named("verification")
+      try {
+        f(io, verification)
+      } finally {
+        io.shutdown()
+        verification.shutdown()
+      }
+    }
+
+    class ThreadRecordingCrypto extends BouncyCastleCrypto {
+      var verifyThreads: List[String] = Nil
+      override def verifySignature(publicKey: java.security.PublicKey, signedBytes: ByteArray, signature: ByteArray): Boolean = {
+        synchronized { verifyThreads = verifyThreads :+ Thread.currentThread().getName }
+        super.verifySignature(publicKey, signedBytes, signature)
+      }
+    }
+
+    it("finishAssertionAsync gives the same result as finishAssertion.") {
+      withExecutors { (io, verification) =>
+        val credentialRepository = new CountingCredentialRepository
+        rp(
+          credentialRepository,
+          asyncCredentialRepository = Some(AsyncCredentialRepository.fromBlocking(credentialRepository, io)),
+          verificationExecutor = Some(verification)
+        ).finishAssertionAsync(assertion()).toCompletableFuture.get(10, TimeUnit.SECONDS) should equal (
+          rp(new CountingCredentialRepository).finishAssertion(assertion())
+        )
+      }
+    }
+
+    it("finishAssertionAsync verifies the signature on the executor rather than in the thread that completes the lookup.") {
+      withExecutors { (io, verification) =>
+        val credentialRepository = new CountingCredentialRepository
+        val crypto = new ThreadRecordingCrypto
+
+        rp(
+          credentialRepository,
+          asyncCredentialRepository = Some(AsyncCredentialRepository.fromBlocking(credentialRepository, io)),
+          verificationExecutor = Some(verification),
+          crypto = Some(crypto)
+        ).finishAssertionAsync(assertion()).toCompletableFuture.get(10, TimeUnit.SECONDS)
+
+        crypto.verifyThreads should equal (List("verification"))
+      }
+    }
+
+    it("finishAssertionAsync calls the credentialRepository on the executor if no asyncCredentialRepository is set.") {
+      withExecutors { (_, verification) =>
+        val callerThread = Thread.currentThread()
+        var lookupThread: Option[Thread] = None
+        val credentialRepository = new CountingCredentialRepository {
+          override def lookup(credId: ByteArray, lookupUserHandle: ByteArray) = {
+            lookupThread = Some(Thread.currentThread())
+            super.lookup(credId, lookupUserHandle)
+          }
+        }
+
+        rp(credentialRepository, verificationExecutor = Some(verification))
+          .finishAssertionAsync(assertion()).toCompletableFuture.get(10, TimeUnit.SECONDS).isSuccess should be (true)
+
+        credentialRepository.lookups should equal (1)
+        lookupThread.map(_.getName) should equal (Some("verification"))
+        lookupThread should not be (Some(callerThread))
+      }
+    }
+
+    it("finishAssertionAsync completes exceptionally with an AssertionFailedException for an invalid signature.") {
+      withExecutors { (io, verification) =>
+        val credentialRepository = new CountingCredentialRepository
+        val badSignature = new ByteArray(Defaults.signature.getBytes.updated(Defaults.signature.size - 1, 0.toByte))
+
+        val failure = the [ExecutionException] thrownBy rp(
+          credentialRepository,
+          asyncCredentialRepository = Some(AsyncCredentialRepository.fromBlocking(credentialRepository, io)),
+          verificationExecutor = Some(verification)
+        ).finishAssertionAsync(assertion(signature = badSignature)).toCompletableFuture.get(10, TimeUnit.SECONDS)
+
+        failure.getCause shouldBe an [AssertionFailedException]
+      }
+    }
+
+  }
+
+  describe("With validateCheapestFirst enabled,") {
+
+    it("finishAssertion rejects an assertion with the wrong challenge without looking up the credential.") {
+      val credentialRepository = new CountingCredentialRepository
+      val failure = the [AssertionFailedException] thrownBy {
+        rp(credentialRepository, validateCheapestFirst = true).finishAssertion(assertion(challenge = new ByteArray(Array.fill(16)(0))))
+      }
+
+      failure.getCause.getMessage should equal ("Incorrect challenge.")
+      credentialRepository.lookups should equal (0)
+    }
+
+    it("finishAssertion reports the same failure as in the default mode.") {
+      val badAssertion = assertion(authenticatorData = new ByteArray(Defaults.authenticatorData.getBytes.updated(0, 0.toByte)))
+
+      val cheapestFirst = the [AssertionFailedException] thrownBy {
+        rp(new CountingCredentialRepository, validateCheapestFirst = true).finishAssertion(badAssertion)
+      }
+      val specOrder = the [AssertionFailedException] thrownBy {
+        rp(new CountingCredentialRepository).finishAssertion(badAssertion)
+      }
+
+      cheapestFirst.getCause.getMessage should equal ("Wrong RP ID hash.")
+      cheapestFirst.getCause.getMessage should equal (specOrder.getCause.getMessage)
+    }
+
+    it("finishAssertion accepts a valid assertion.") {
+      val credentialRepository = new CountingCredentialRepository
+      val result = rp(credentialRepository, validateCheapestFirst = true).finishAssertion(assertion())
+
+      result should equal (rp(new CountingCredentialRepository).finishAssertion(assertion()))
+      credentialRepository.lookups should equal (1)
+    }
+
+    it("finishAssertions does not look up credentials for assertions that fail the cheap checks.") {
+      val credentialRepository = new CountingCredentialRepository
+      val results = rp(credentialRepository, validateCheapestFirst = true).finishAssertions(List(
+        assertion(challenge = new ByteArray(Array.fill(16)(0))),
+        assertion(challenge = new ByteArray(Array.fill(16)(1)))
+      ).asJava).asScala
+
+      results.map(_.isSuccess) should equal (List(false, false))
+      credentialRepository.batchLookups should equal (0)
+      credentialRepository.lookups should equal (0)
+    }
+
+  }
+
+}
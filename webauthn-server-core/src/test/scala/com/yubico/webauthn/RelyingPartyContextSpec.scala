@@ -0,0 +1,101 @@
+package com.yubico.webauthn
+
+import java.security.PublicKey
+import java.security.cert.X509Certificate
+
+import com.yubico.internal.util.scala.JavaConverters._
+import com.yubico.webauthn.data.ByteArray
+import com.yubico.webauthn.data.PublicKeyCredentialParameters
+import com.yubico.webauthn.data.RelyingPartyIdentity
+import com.yubico.webauthn.extension.appid.AppId
+import org.junit.runner.RunWith
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+import org.scalatest.junit.JUnitRunner
+
+import scala.collection.JavaConverters._
+
+
+@RunWith(classOf[JUnitRunner])
+class RelyingPartyContextSpec extends FunSpec with Matchers {
+
+  private class CountingCrypto extends Crypto {
+    private val delegate = new BouncyCastleCrypto
+    var stringHashes = 0
+
+    override def verifySignature(attestationCertificate: X509Certificate, signedBytes: ByteArray, signature: ByteArray): Boolean =
+      delegate.verifySignature(attestationCertificate, signedBytes, signature)
+    override def verifySignature(publicKey: PublicKey, signedBytes: ByteArray, signature: ByteArray): Boolean =
+      delegate.verifySignature(publicKey, signedBytes, signature)
+    override def decodePublicKey(encodedPublicKey: ByteArray): PublicKey = delegate.decodePublicKey(encodedPublicKey)
+    override def hash(bytes: ByteArray): ByteArray = delegate.hash(bytes)
+    override def hash(str: String): ByteArray = {
+      stringHashes += 1
+      delegate.hash(str)
+    }
+  }
+
+  private val crypto = new BouncyCastleCrypto
+  private val appId = new AppId("https://example.org/app-id.json")
+  private val otherAppId = new AppId("https://example.org/other-app-id.json")
+
+  private def context(contextCrypto: Crypto = crypto): RelyingPartyContext = RelyingPartyContext.compile(
+    "example.org",
+    Some(appId).asJava,
+    List("https://example.org", "https://login.example.org").asJava,
+    Some(OriginMatcher.fromPatterns(List("https://*.tenants.example.org").asJava)).asJava,
+    List(PublicKeyCredentialParameters.ES256).asJava,
+    contextCrypto
+  )
+
+  describe("RelyingPartyContext") {
+
+    it("accepts exactly the configured origins and those accepted by the origin matcher.") {
+      context().isOriginAllowed("https://example.org") should be (true)
+      context().isOriginAllowed("https://login.example.org") should be (true)
+      context().isOriginAllowed("https://evil.example.org") should be (false)
+      context().isOriginAllowed("https://foo.tenants.example.org") should be (true)
+      context().isOriginAllowed("https://tenants.example.org") should be (false)
+      context().isOriginAllowed(null) should be (false)
+    }
+
+    it("accepts the hash of the RP ID.") {
+      context().isRpIdHashAllowed(crypto.hash("example.org"), None.asJava) should be (true)
+      context().isRpIdHashAllowed(crypto.hash("example.com"), None.asJava) should be (false)
+    }
+
+    it("accepts the hash of the requested AppID, whether or not it is the configured one.") {
+      context().isRpIdHashAllowed(crypto.hash(appId.getId), Some(appId).asJava) should be (true)
+      context().isRpIdHashAllowed(crypto.hash(otherAppId.getId), Some(otherAppId).asJava) should be (true)
+      context().isRpIdHashAllowed(crypto.hash(appId.getId), None.asJava) should be (false)
+      context().isRpIdHashAllowed(crypto.hash(appId.getId), Some(otherAppId).asJava) should be (false)
+    }
+
+    it("does not hash the RP ID or the configured AppID again after compilation.") {
+      val countingCrypto = new CountingCrypto
+      val ctx = context(countingCrypto)
+      val hashesAfterCompile = countingCrypto.stringHashes
+
+      ctx.isRpIdHashAllowed(crypto.hash("example.org"), Some(appId).asJava)
+      ctx.isRpIdHashAllowed(crypto.hash(appId.getId), Some(appId).asJava)
+      ctx.isRpIdHashAllowed(crypto.hash("foo"), Some(appId).asJava)
+
+      hashesAfterCompile should equal (2)
+      countingCrypto.stringHashes should equal (hashesAfterCompile)
+    }
+
+    it("is computed once per RelyingParty.") {
+      val rp = RelyingParty.builder()
+        .rp(RelyingPartyIdentity.builder().id("example.org").name("Example").build())
+        .preferredPubkeyParams(List(PublicKeyCredentialParameters.ES256).asJava)
+        .origins(List("https://example.org").asJava)
+        .credentialRepository(null)
+        .build()
+
+      rp.getContext should be theSameInstanceAs rp.getContext
+      rp.getContext.getPreferredPubkeyParams.asScala should equal (List(PublicKeyCredentialParameters.ES256))
+    }
+
+  }
+
+}
@@ -7,6 +7,10 @@ import java.security.KeyPair
 import java.security.PrivateKey
 import java.security.cert.X509Certificate
 import java.util.Optional
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 
 import com.fasterxml.jackson.databind.JsonNode
 import com.fasterxml.jackson.databind.node.JsonNodeFactory
@@ -25,6 +29,7 @@ import com.yubico.webauthn.data.AttestationType
 import com.yubico.webauthn.data.CollectedClientData
 import com.yubico.webauthn.data.ByteArray
 import com.yubico.webauthn.data.RegistrationExtensionInputs
+import com.yubico.webauthn.data.RegistrationResult
 import com.yubico.webauthn.data.Generators._
 import com.yubico.webauthn.test.Util.toStepWithUtilities
 import javax.security.auth.x500.X500Principal
@@ -69,7 +74,7 @@ class RelyingPartyRegistrationSpec extends FunSpec with Matchers with GeneratorD
     rp: RelyingPartyIdentity = RelyingPartyIdentity.builder().name("Test party").id("localhost").build(),
     testData: RegistrationTestData
   ): FinishRegistrationSteps = {
-    RelyingParty.builder()
+    val relyingParty = RelyingParty.builder()
       .allowUntrustedAttestation(allowUntrustedAttestation)
       .challengeGenerator(null)
       .origins(List(rp.getId).asJava)
@@ -78,9 +83,30 @@ class RelyingPartyRegistrationSpec extends FunSpec with Matchers with GeneratorD
       .credentialRepository(credentialRepository.orNull)
       .metadataService(metadataService.asJava)
       .build()
-      ._finishRegistration(testData.request, testData.response, callerTokenBindingId.asJava)
+
+    val steps = relyingParty._finishRegistration(testData.request, testData.response, callerTokenBindingId.asJava)
+    assertSameOutcome(
+      Try(steps.run),
+      Try(relyingParty._finishRegistrationSinglePass(testData.request, testData.response, callerTokenBindingId.asJava).run)
+    )
+    steps
   }
 
+  /**
+   * Checks that the single-pass engine used by RelyingParty.finishRegistration agrees with the step-by-step reference
+   * implementation tested in this spec.
+   */
+  private def assertSameOutcome(stepByStep: Try[RegistrationResult], singlePass: Try[RegistrationResult]): Unit =
+    (stepByStep, singlePass) match {
+      case (Success(expected), Success(actual)) =>
+        actual should equal (expected)
+      case (Failure(expected), Failure(actual)) =>
+        actual.getClass should equal (expected.getClass)
+        actual.getMessage should equal (expected.getMessage)
+      case _ =>
+        fail(s"Step-by-step outcome ${stepByStep} differs from single-pass outcome ${singlePass}")
+    }
+
   class TestMetadataService(private val attestation: Option[Attestation] = None) extends MetadataService {
     override def getAttestation(attestationCertificateChain: java.util.List[X509Certificate]): Attestation = attestation match {
       case None => Attestation.builder(false).build()
@@ -1520,4 +1546,238 @@ class RelyingPartyRegistrationSpec extends FunSpec with Matchers with GeneratorD
 
   }
 
+  describe("RelyingParty.tryFinishRegistration") {
+
+    def rp(allowUntrustedAttestation: Boolean): RelyingParty = RelyingParty.builder()
+      .allowUntrustedAttestation(allowUntrustedAttestation)
+      .origins(List("localhost").asJava)
+      .preferredPubkeyParams(Nil.asJava)
+      .rp(RelyingPartyIdentity.builder().name("Test party").id("localhost").build())
+      .credentialRepository(emptyCredentialRepository)
+      .build()
+
+    def options(testData: RegistrationTestData): FinishRegistrationOptions = FinishRegistrationOptions.builder()
+      .request(testData.request)
+      .response(testData.response)
+      .build()
+
+    it("returns the same result as finishRegistration on success.") {
+      val testData = RegistrationTestData.FidoU2f.SelfAttestation
+      val outcome = rp(allowUntrustedAttestation = true).tryFinishRegistration(options(testData))
+
+      outcome.isSuccess should be (true)
+      outcome.getFailure.isPresent should be (false)
+      outcome.getResult.get should equal (rp(allowUntrustedAttestation = true).finishRegistration(options(testData)))
+    }
+
+    it("reports a failure reason and the same message as finishRegistration on failure.") {
+      val testData = RegistrationTestData.FidoU2f.SelfAttestation
+      val outcome = rp(allowUntrustedAttestation = false).tryFinishRegistration(options(testData))
+      val exception = Try(rp(allowUntrustedAttestation = false).finishRegistration(options(testData)))
+
+      outcome.isSuccess should be (false)
+      outcome.getFailure.get.getReason should equal (CeremonyFailureReason.UNTRUSTED_ATTESTATION)
+      outcome.getFailure.get.getMessage should equal ("Self attestation is not allowed.")
+      exception.failed.get.getCause.getMessage should equal (outcome.getFailure.get.getMessage)
+    }
+
+    it("reports a wrong challenge.") {
+      val testData = RegistrationTestData.FidoU2f.BasicAttestation
+      val outcome = rp(allowUntrustedAttestation = true).tryFinishRegistration(
+        FinishRegistrationOptions.builder()
+          .request(testData.request.toBuilder.challenge(new ByteArray(Array.fill(16)(0: Byte))).build())
+          .response(testData.response)
+          .build()
+      )
+
+      outcome.isSuccess should be (false)
+      outcome.getResult.isPresent should be (false)
+      outcome.getFailure.get.getReason should equal (CeremonyFailureReason.WRONG_CHALLENGE)
+      outcome.getFailure.get.getMessage should equal ("Incorrect challenge.")
+    }
+
+    it("reports each step and the outcome to the ceremonyListener.") {
+      val testData = RegistrationTestData.FidoU2f.SelfAttestation
+      def rp(allowUntrustedAttestation: Boolean, listener: CeremonyListener): RelyingParty = RelyingParty.builder()
+        .allowUntrustedAttestation(allowUntrustedAttestation)
+        .origins(List("localhost").asJava)
+        .preferredPubkeyParams(Nil.asJava)
+        .rp(RelyingPartyIdentity.builder().name("Test party").id("localhost").build())
+        .credentialRepository(emptyCredentialRepository)
+        .ceremonyListener(Some(listener).asJava)
+        .build()
+
+      val success = new RecordingCeremonyListener
+      rp(allowUntrustedAttestation = true, success).finishRegistration(options(testData))
+      success.steps should equal ((2 to 17).map(i => s"Step$i").toList)
+      success.events.head should equal ("started REGISTRATION")
+      success.events.last should equal ("finished REGISTRATION SUCCESS")
+
+      val failure = new RecordingCeremonyListener
+      rp(allowUntrustedAttestation = false, failure).tryFinishRegistration(options(testData))
+      failure.steps.last should equal ("Step16")
+      failure.events.takeRight(2) should equal (List("end Step16", "finished REGISTRATION UNTRUSTED_ATTESTATION"))
+    }
+
+    it("reports the ceremony, the metadata service call and the credential repository call to the tracer.") {
+      val testData = RegistrationTestData.FidoU2f.BasicAttestation
+      val tracer = InMemoryTracer.builder().build()
+      RelyingParty.builder()
+        .allowUntrustedAttestation(true)
+        .origins(List("localhost").asJava)
+        .preferredPubkeyParams(Nil.asJava)
+        .rp(RelyingPartyIdentity.builder().name("Test party").id("localhost").build())
+        .credentialRepository(emptyCredentialRepository)
+        .metadataService(Some(new TestMetadataService(): MetadataService).asJava)
+        .tracer(Some(tracer).asJava)
+        .build()
+        .finishRegistration(options(testData))
+
+      val ceremony = tracer.getFinishedSpans.asScala.last
+      ceremony.getName should equal ("webauthn.registration")
+      ceremony.getAttributes.get("webauthn.rp_id") should equal ("localhost")
+      ceremony.getAttributes.get("webauthn.attestation_format") should equal ("fido-u2f")
+      ceremony.getAttributes.get("webauthn.outcome") should equal ("SUCCESS")
+
+      val children = tracer.getChildren(ceremony).asScala
+      children.map(_.getName) should equal (List("MetadataService.getAttestation", "CredentialRepository.lookupAll"))
+      children.head.getAttributes.get("webauthn.attestation_trusted") should equal (false)
+    }
+
+  }
+
+  describe("With a registrationExecutor,") {
+
+    def rp(
+      executor: Option[Executor],
+      allowUntrustedAttestation: Boolean = true,
+      credentialRepository: CredentialRepository = emptyCredentialRepository,
+      metadataService: MetadataService = new TestMetadataService()
+    ): RelyingParty = RelyingParty.builder()
+      .allowUntrustedAttestation(allowUntrustedAttestation)
+      .origins(List("localhost").asJava)
+      .preferredPubkeyParams(Nil.asJava)
+      .rp(RelyingPartyIdentity.builder().name("Test party").id("localhost").build())
+      .credentialRepository(credentialRepository)
+      .metadataService(Some(metadataService).asJava)
+      .registrationExecutor(executor.asJava)
+      .build()
+
+    def options(testData: RegistrationTestData): FinishRegistrationOptions = FinishRegistrationOptions.builder()
+      .request(testData.request)
+      .response(testData.response)
+      .build()
+
+    def registeredCredentialRepository(testData: RegistrationTestData): CredentialRepository = new CredentialRepository {
+      override def getCredentialIdsForUsername(username: String) = ???
+      override def getUserHandleForUsername(username: String): Optional[ByteArray] = ???
+      override def getUsernameForUserHandle(userHandleBase64: ByteArray): Optional[String] = ???
+      override def lookup(credentialId: ByteArray, userHandle: ByteArray): Optional[RegisteredCredential] = ???
+      override def lookupAll(credentialId: ByteArray): java.util.Set[RegisteredCredential] = Set(
+        RegisteredCredential.builder()
+          .credentialId(credentialId)
+          .userHandle(testData.request.getUser.getId)
+          .publicKey(WebAuthnCodecs.importCoseP256PublicKey(testData.response.getResponse.getAttestation.getAuthenticatorData.getAttestationData.get.getCredentialPublicKey))
+          .signatureCount(0)
+          .build()
+      ).asJava
+    }
+
+    def withExecutor[A](f: Option[Executor] => A): A = {
+      val executor = Executors.newFixedThreadPool(2)
+      try {
+        f(Some(executor))
+      } finally {
+        executor.shutdown()
+      }
+    }
+
+    it("gives the same results as without an executor.") {
+      withExecutor { executor =>
+        for { testData <- List(
+          RegistrationTestData.FidoU2f.BasicAttestation,
+          RegistrationTestData.FidoU2f.SelfAttestation,
+          RegistrationTestData.NoneAttestation.Default,
+          RegistrationTestData.Packed.BasicAttestation
+        ) } {
+          val parallel = rp(executor).finishRegistration(options(testData))
+          val sequential = rp(None).finishRegistration(options(testData))
+
+          parallel should equal (sequential)
+        }
+      }
+    }
+
+    it("reports an invalid signature before an untrusted attestation or a duplicate credential ID.") {
+      withExecutor { executor =>
+        val testData = RegistrationTestData.FidoU2f.BasicAttestation.editClientData("foo", "bar")
+        val outcome = rp(executor, allowUntrustedAttestation = false, credentialRepository = registeredCredentialRepository(testData))
+          .tryFinishRegistration(options(testData))
+
+        outcome.getFailure.get.getReason should equal (CeremonyFailureReason.INVALID_SIGNATURE)
+      }
+    }
+
+    it("reports an untrusted attestation before a duplicate credential ID.") {
+      withExecutor { executor =>
+        val testData = RegistrationTestData.FidoU2f.BasicAttestation
+        val outcome = rp(executor, allowUntrustedAttestation = false, credentialRepository = registeredCredentialRepository(testData))
+          .tryFinishRegistration(options(testData))
+
+        outcome.getFailure.get.getReason should equal (CeremonyFailureReason.UNTRUSTED_ATTESTATION)
+      }
+    }
+
+    it("reports a duplicate credential ID.") {
+      withExecutor { executor =>
+        val testData = RegistrationTestData.FidoU2f.BasicAttestation
+        val outcome = rp(executor, credentialRepository = registeredCredentialRepository(testData))
+          .tryFinishRegistration(options(testData))
+
+        outcome.getFailure.get.getReason should equal (CeremonyFailureReason.CREDENTIAL_ALREADY_REGISTERED)
+      }
+    }
+
+    it("looks up the credential ID concurrently with the metadata service call.") {
+      withExecutor { executor =>
+        val lookedUp = new CountDownLatch(1)
+        val credentialRepository = new CredentialRepository {
+          override def getCredentialIdsForUsername(username: String) = ???
+          override def getUserHandleForUsername(username: String): Optional[ByteArray] = ???
+          override def getUsernameForUserHandle(userHandleBase64: ByteArray): Optional[String] = ???
+          override def lookup(credentialId: ByteArray, userHandle: ByteArray): Optional[RegisteredCredential] = ???
+          override def lookupAll(credentialId: ByteArray): java.util.Set[RegisteredCredential] = {
+            lookedUp.countDown()
+            Set.empty[RegisteredCredential].asJava
+          }
+        }
+        val metadataService = new MetadataService {
+          override def getAttestation(attestationCertificateChain: java.util.List[X509Certificate]): Attestation =
+            Attestation.builder(lookedUp.await(10, TimeUnit.SECONDS)).build()
+        }
+
+        val result = rp(executor, allowUntrustedAttestation = false, credentialRepository = credentialRepository, metadataService = metadataService)
+          .finishRegistration(options(RegistrationTestData.FidoU2f.BasicAttestation))
+
+        result.isAttestationTrusted should be (true)
+      }
+    }
+
+    it("rethrows an exception from the credential repository unwrapped.") {
+      withExecutor { executor =>
+        val credentialRepository = new CredentialRepository {
+          override def getCredentialIdsForUsername(username: String) = ???
+          override def getUserHandleForUsername(username: String): Optional[ByteArray] = ???
+          override def getUsernameForUserHandle(userHandleBase64: ByteArray): Optional[String] = ???
+          override def lookup(credentialId: ByteArray, userHandle: ByteArray): Optional[RegisteredCredential] = ???
+          override def lookupAll(credentialId: ByteArray): java.util.Set[RegisteredCredential] = throw new IllegalStateException("Database is down")
+        }
+
+        an [IllegalStateException] should be thrownBy rp(executor, credentialRepository = credentialRepository)
+          .finishRegistration(options(RegistrationTestData.FidoU2f.BasicAttestation))
+      }
+    }
+
+  }
+
 }
@@ -2,6 +2,9 @@ package com.yubico.webauthn
 
 import java.security.KeyPair
 import java.util.Optional
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 
 import com.fasterxml.jackson.databind.node.JsonNodeFactory
 import com.fasterxml.jackson.databind.node.ObjectNode
@@ -14,7 +17,9 @@ import com.yubico.webauthn.data.RelyingPartyIdentity
 import com.yubico.webauthn.data.PublicKeyCredentialRequestOptions
 import com.yubico.webauthn.data.ByteArray
 import com.yubico.webauthn.data.ClientAssertionExtensionOutputs
+import com.yubico.webauthn.exception.AssertionFailedException
 import org.junit.runner.RunWith
+import org.scalatest.BeforeAndAfterAll
 import org.scalatest.FunSpec
 import org.scalatest.Matchers
 import org.scalatest.junit.JUnitRunner
@@ -26,7 +31,11 @@ import scala.util.Try
 
 
 @RunWith(classOf[JUnitRunner])
-class RelyingPartyUserIdentificationSpec  extends FunSpec with Matchers {
+class RelyingPartyUserIdentificationSpec  extends FunSpec with Matchers with BeforeAndAfterAll {
+
+  private val executor = Executors.newFixedThreadPool(2)
+
+  override def afterAll(): Unit = executor.shutdown()
 
   private def jsonFactory: JsonNodeFactory = JsonNodeFactory.instance
   private val crypto: Crypto = new BouncyCastleCrypto()
@@ -96,7 +105,7 @@ class RelyingPartyUserIdentificationSpec  extends FunSpec with Matchers {
 
   describe("The assertion ceremony") {
 
-    val rp = RelyingParty.builder()
+    val rpBuilder = RelyingParty.builder()
       .allowUntrustedAttestation(false)
       .challengeGenerator(new ChallengeGenerator() { override def generateChallenge(): ByteArray = new ByteArray(Defaults.challenge.getBytes) })
       .origins(List(Defaults.rpId.getId).asJava)
@@ -134,7 +143,8 @@ class RelyingPartyUserIdentificationSpec  extends FunSpec with Matchers {
             None.asJava
       })
       .validateSignatureCounter(true)
-      .build()
+
+    val rp = rpBuilder.build()
 
     it("succeeds for the default test case if a username was given.") {
       val request = rp.startAssertion(StartAssertionOptions.builder()
@@ -176,6 +186,54 @@ class RelyingPartyUserIdentificationSpec  extends FunSpec with Matchers {
       result shouldBe a [Failure[_]]
     }
 
+    describe("in asynchronous mode") {
+
+      val asyncRp = rpBuilder
+        .asyncCredentialRepository(Some(AsyncCredentialRepository.fromBlocking(rp.getCredentialRepository, executor)).asJava)
+        .build()
+
+      def finishAssertionAsync(startOptions: StartAssertionOptions, response: PublicKeyCredential[AuthenticatorAssertionResponse, ClientAssertionExtensionOutputs]) =
+        Try {
+          val request = asyncRp.startAssertionAsync(startOptions).toCompletableFuture.get(10, TimeUnit.SECONDS)
+          asyncRp.finishAssertionAsync(FinishAssertionOptions.builder()
+            .request(request)
+            .response(response)
+            .build()
+          ).toCompletableFuture.get(10, TimeUnit.SECONDS)
+        }
+
+      it("succeeds for the default test case if a username was given.") {
+        val result = finishAssertionAsync(
+          StartAssertionOptions.builder().username(Optional.of(Defaults.username)).build(),
+          Defaults.publicKeyCredential
+        )
+
+        result shouldBe a [Success[_]]
+        result.get.getUserHandle should equal (Defaults.userHandle)
+      }
+
+      it("succeeds if username was not given but userHandle was returned.") {
+        val result = finishAssertionAsync(
+          StartAssertionOptions.builder().build(),
+          Defaults.defaultPublicKeyCredential(userHandle = Some(Defaults.userHandle))
+        )
+
+        result shouldBe a [Success[_]]
+        result.get.getUsername should equal (Defaults.username)
+      }
+
+      it("fails with an AssertionFailedException if no username was given and no userHandle returned.") {
+        val result = finishAssertionAsync(
+          StartAssertionOptions.builder().build(),
+          Defaults.publicKeyCredential
+        )
+
+        result shouldBe a [Failure[_]]
+        result.failed.get shouldBe an [ExecutionException]
+        result.failed.get.getCause shouldBe an [AssertionFailedException]
+      }
+    }
+
   }
 
 }
@@ -0,0 +1,283 @@
+package com.yubico.webauthn
+
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneOffset
+import java.util.Optional
+import javax.crypto.Mac
+import javax.crypto.spec.SecretKeySpec
+
+import com.yubico.internal.util.scala.JavaConverters._
+import com.yubico.webauthn.data.AssertionExtensionInputs
+import com.yubico.webauthn.data.ByteArray
+import com.yubico.webauthn.data.ClientAssertionExtensionOutputs
+import com.yubico.webauthn.data.PublicKeyCredentialDescriptor
+import com.yubico.webauthn.data.RegistrationExtensionInputs
+import com.yubico.webauthn.data.RelyingPartyIdentity
+import com.yubico.webauthn.data.UserIdentity
+import com.yubico.webauthn.data.UserVerificationRequirement
+import com.yubico.webauthn.exception.AssertionFailedException
+import com.yubico.webauthn.exception.RegistrationFailedException
+import com.yubico.webauthn.extension.appid.AppId
+import org.junit.runner.RunWith
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+import org.scalatest.junit.JUnitRunner
+
+import scala.collection.JavaConverters._
+
+
+@RunWith(classOf[JUnitRunner])
+class SealedChallengesSpec extends FunSpec with Matchers {
+
+  private val key0 = new ByteArray(Array.fill(32)(0: Byte))
+  private val key1 = new ByteArray(Array.fill(32)(1: Byte))
+  private val issuedAt = Instant.parse("2018-09-01T12:00:00Z")
+  private val TagLength = 32
+  private val BodyOffset = 3 + 8 + 16
+
+  private def clockAt(instant: Instant): Clock = Clock.fixed(instant, ZoneOffset.UTC)
+
+  private def sealer(currentKeyId: Int = 0, keys: Map[Int, ByteArray] = Map(0 -> key0), clock: Clock = clockAt(issuedAt)): SealedChallenges =
+    SealedChallenges.builder()
+      .currentKeyId(currentKeyId)
+      .keys(keys.map({ case (id, key) => (Integer.valueOf(id), key) }).asJava)
+      .validity(Duration.ofMinutes(5))
+      .clock(clock)
+      .build()
+
+  private val user = UserIdentity.builder()
+    .name("alice")
+    .displayName("Alice")
+    .id(new ByteArray(Array(1, 2, 3, 4)))
+    .build()
+
+  private val credentials: java.util.Set[PublicKeyCredentialDescriptor] = Set(
+    PublicKeyCredentialDescriptor.builder().id(TestAuthenticator.Defaults.credentialId).build(),
+    PublicKeyCredentialDescriptor.builder().id(new ByteArray(Array(9, 9, 9))).build()
+  ).asJava
+
+  private val registrationExtensions = RegistrationExtensionInputs.builder().build()
+  private val appId = new AppId("https://test.example.org/foo")
+  private val assertionExtensions = AssertionExtensionInputs.builder().appid(Some(appId).asJava).build()
+  private val noAssertionExtensions = AssertionExtensionInputs.builder().build()
+
+  describe("SealedChallenges") {
+
+    it("restores the sealed registration parameters.") {
+      val s = sealer()
+      val parameters = s.unsealRegistration(s.sealRegistration(user, true, registrationExtensions))
+
+      parameters.getUser should equal (user)
+      parameters.isRequireResidentKey should be (true)
+      parameters.getExtensions should equal (registrationExtensions)
+    }
+
+    it("restores the sealed assertion parameters.") {
+      val s = sealer()
+      val parameters = s.unsealAssertion(s.sealAssertion(Some("alice").asJava, Some(credentials).asJava, UserVerificationRequirement.REQUIRED, assertionExtensions))
+
+      parameters.getUsername.asScala should equal (Some("alice"))
+      parameters.getAllowCredentialsDigest.asScala should equal (Some(SealedChallenges.digestCredentialIds(credentials)))
+      parameters.getUserVerification should equal (UserVerificationRequirement.REQUIRED)
+      parameters.getExtensions should equal (assertionExtensions)
+    }
+
+    it("restores assertion parameters without a username.") {
+      val s = sealer()
+      val parameters = s.unsealAssertion(s.sealAssertion(None.asJava, None.asJava, UserVerificationRequirement.PREFERRED, noAssertionExtensions))
+
+      parameters.getUsername.asScala should equal (None)
+      parameters.getAllowCredentialsDigest.asScala should equal (None)
+      parameters.getExtensions should equal (noAssertionExtensions)
+    }
+
+    it("restores each user verification requirement, encoded as a fixed byte.") {
+      val s = sealer()
+      val encodings = Map(
+        UserVerificationRequirement.DISCOURAGED -> SealedChallenges.USER_VERIFICATION_DISCOURAGED,
+        UserVerificationRequirement.PREFERRED -> SealedChallenges.USER_VERIFICATION_PREFERRED,
+        UserVerificationRequirement.REQUIRED -> SealedChallenges.USER_VERIFICATION_REQUIRED
+      )
+
+      encodings.keySet should equal (UserVerificationRequirement.values.toSet)
+      for { (userVerification, encoded) <- encodings } {
+        val challenge = s.sealAssertion(None.asJava, None.asJava, userVerification, noAssertionExtensions)
+        challenge.getBytes()(BodyOffset) should equal (encoded)
+        s.unsealAssertion(challenge).getUserVerification should equal (userVerification)
+      }
+    }
+
+    it("rejects an authentic challenge with an unknown user verification requirement.") {
+      val challenge = sealer().sealAssertion(None.asJava, None.asJava, UserVerificationRequirement.PREFERRED, noAssertionExtensions).getBytes
+      val modified = challenge.updated(BodyOffset, 0x7f.toByte)
+      val mac = Mac.getInstance("HmacSHA256")
+      mac.init(new SecretKeySpec(key0.getBytes, "HmacSHA256"))
+      mac.update(modified, 0, modified.length - TagLength)
+      val resealed = new ByteArray(modified.take(modified.length - TagLength) ++ mac.doFinal())
+
+      an [IllegalArgumentException] should be thrownBy sealer().unsealAssertion(resealed)
+    }
+
+    it("issues a different challenge each time.") {
+      val s = sealer()
+      s.sealRegistration(user, false, registrationExtensions) should not equal s.sealRegistration(user, false, registrationExtensions)
+    }
+
+    it("rejects a tampered challenge.") {
+      val s = sealer()
+      val challenge = s.sealRegistration(user, false, registrationExtensions).getBytes
+      val tampered = new ByteArray(challenge.updated(challenge.length - TagLength - 1, (challenge(challenge.length - TagLength - 1) ^ 1).toByte))
+
+      an [IllegalArgumentException] should be thrownBy s.unsealRegistration(tampered)
+    }
+
+    it("rejects a challenge sealed for the other ceremony.") {
+      val s = sealer()
+      an [IllegalArgumentException] should be thrownBy s.unsealAssertion(s.sealRegistration(user, false, registrationExtensions))
+      an [IllegalArgumentException] should be thrownBy s.unsealRegistration(s.sealAssertion(None.asJava, None.asJava, UserVerificationRequirement.PREFERRED, noAssertionExtensions))
+    }
+
+    it("rejects a challenge sealed with an unknown or different key.") {
+      val challenge = sealer().sealRegistration(user, false, registrationExtensions)
+
+      an [IllegalArgumentException] should be thrownBy sealer(currentKeyId = 1, keys = Map(1 -> key1)).unsealRegistration(challenge)
+      an [IllegalArgumentException] should be thrownBy sealer(keys = Map(0 -> key1)).unsealRegistration(challenge)
+    }
+
+    it("accepts challenges sealed with a previous key after a key rotation.") {
+      val challenge = sealer().sealRegistration(user, false, registrationExtensions)
+      sealer(currentKeyId = 1, keys = Map(0 -> key0, 1 -> key1)).unsealRegistration(challenge).getUser should equal (user)
+    }
+
+    it("rejects an expired challenge.") {
+      val challenge = sealer().sealRegistration(user, false, registrationExtensions)
+
+      sealer(clock = clockAt(issuedAt.plus(Duration.ofMinutes(5)))).unsealRegistration(challenge).getUser should equal (user)
+      an [IllegalArgumentException] should be thrownBy sealer(clock = clockAt(issuedAt.plus(Duration.ofMinutes(6)))).unsealRegistration(challenge)
+    }
+
+    it("rejects malformed challenges.") {
+      an [IllegalArgumentException] should be thrownBy sealer().unsealRegistration(new ByteArray(Array.fill(16)(0: Byte)))
+      an [IllegalArgumentException] should be thrownBy sealer().unsealRegistration(new ByteArray(Array.fill(100)(0: Byte)))
+    }
+
+    it("rejects invalid key configurations.") {
+      an [IllegalArgumentException] should be thrownBy sealer(currentKeyId = 1)
+      an [IllegalArgumentException] should be thrownBy sealer(keys = Map(0 -> new ByteArray(Array.fill(8)(0: Byte))))
+      an [IllegalArgumentException] should be thrownBy sealer(currentKeyId = 256, keys = Map(256 -> key0))
+    }
+
+  }
+
+  describe("RelyingParty with sealedChallenges") {
+
+    val username = "alice"
+    val userHandle = new ByteArray(Array(1, 2, 3, 4))
+
+    class UserCredentialRepository(userCredentials: java.util.Set[PublicKeyCredentialDescriptor]) extends CredentialRepository {
+      override def getCredentialIdsForUsername(un: String) = userCredentials
+      override def getUserHandleForUsername(un: String): Optional[ByteArray] = if (un == username) Some(userHandle).asJava else None.asJava
+      override def getUsernameForUserHandle(uh: ByteArray): Optional[String] = if (uh == userHandle) Some(username).asJava else None.asJava
+      override def lookup(credentialId: ByteArray, uh: ByteArray): Optional[RegisteredCredential] = Some(
+        RegisteredCredential.builder()
+          .credentialId(credentialId)
+          .userHandle(uh)
+          .publicKey(TestAuthenticator.Defaults.credentialKey.getPublic)
+          .signatureCount(0)
+          .build()
+      ).asJava
+      override def lookupAll(credentialId: ByteArray) = ???
+    }
+
+    def rp(credentialRepository: CredentialRepository = new UserCredentialRepository(credentials), appId: Option[AppId] = None): RelyingParty = RelyingParty.builder()
+      .rp(RelyingPartyIdentity.builder().id(TestAuthenticator.Defaults.rpId).name("Test party").build())
+      .origins(List(TestAuthenticator.Defaults.rpId).asJava)
+      .preferredPubkeyParams(Nil.asJava)
+      .credentialRepository(credentialRepository)
+      .appId(appId.asJava)
+      .sealedChallenges(Some(sealer(clock = Clock.systemUTC())).asJava)
+      .build()
+
+    it("finishes an assertion started by another instance.") {
+      val request = rp().startAssertion(StartAssertionOptions.builder().username(Some(username).asJava).build())
+      val response = TestAuthenticator.createAssertion(challenge = request.getPublicKeyCredentialRequestOptions.getChallenge)
+
+      val restoredRequest = rp().restoreAssertionRequest(response)
+      restoredRequest.getUsername should equal (request.getUsername)
+      restoredRequest.getPublicKeyCredentialRequestOptions.getAllowCredentials.asScala.map(_.asScala.toSet) should equal (
+        request.getPublicKeyCredentialRequestOptions.getAllowCredentials.asScala.map(_.asScala.toSet)
+      )
+
+      val result = rp().finishAssertion(FinishAssertionOptions.builder()
+        .request(restoredRequest)
+        .response(response)
+        .build()
+      )
+      result.isSuccess should be (true)
+      result.getUsername should equal (username)
+    }
+
+    it("restores the requested extensions, so the extension outputs of an assertion are accepted.") {
+      val request = rp(appId = Some(appId)).startAssertion(StartAssertionOptions.builder().username(Some(username).asJava).build())
+      request.getPublicKeyCredentialRequestOptions.getExtensions.getExtensionIds.asScala should equal (Set("appid"))
+
+      val response = TestAuthenticator.createAssertion(
+        challenge = request.getPublicKeyCredentialRequestOptions.getChallenge,
+        clientExtensions = ClientAssertionExtensionOutputs.builder().appid(Some(java.lang.Boolean.FALSE).asJava).build()
+      )
+
+      val restoredRequest = rp(appId = Some(appId)).restoreAssertionRequest(response)
+      restoredRequest.getPublicKeyCredentialRequestOptions.getExtensions should equal (request.getPublicKeyCredentialRequestOptions.getExtensions)
+
+      val result = rp(appId = Some(appId)).finishAssertion(FinishAssertionOptions.builder()
+        .request(restoredRequest)
+        .response(response)
+        .build()
+      )
+      result.isSuccess should be (true)
+    }
+
+    it("rejects an assertion if the allowed credentials have changed.") {
+      val request = rp().startAssertion(StartAssertionOptions.builder().username(Some(username).asJava).build())
+      val response = TestAuthenticator.createAssertion(challenge = request.getPublicKeyCredentialRequestOptions.getChallenge)
+
+      val failure = the [AssertionFailedException] thrownBy {
+        rp(new UserCredentialRepository(Set.empty[PublicKeyCredentialDescriptor].asJava)).restoreAssertionRequest(response)
+      }
+      failure.getCause.getMessage should equal ("The allowed credentials have changed since the challenge was issued.")
+    }
+
+    it("rejects an assertion with a challenge it did not seal.") {
+      val response = TestAuthenticator.createAssertion()
+      an [AssertionFailedException] should be thrownBy rp().restoreAssertionRequest(response)
+    }
+
+    it("restores the user of a registration request.") {
+      val request = rp().startRegistration(StartRegistrationOptions.builder().user(user).requireResidentKey(true).build())
+
+      val parameters = sealer(clock = Clock.systemUTC()).unsealRegistration(request.getChallenge)
+      parameters.getUser should equal (user)
+      parameters.isRequireResidentKey should be (true)
+      parameters.getExtensions should equal (request.getExtensions)
+    }
+
+    it("rejects a registration with a challenge it did not seal.") {
+      a [RegistrationFailedException] should be thrownBy rp().restoreRegistrationRequest(RegistrationTestData.FidoU2f.BasicAttestation.response)
+    }
+
+    it("cannot restore requests if sealedChallenges is not configured.") {
+      val unsealedRp = RelyingParty.builder()
+        .rp(RelyingPartyIdentity.builder().id(TestAuthenticator.Defaults.rpId).name("Test party").build())
+        .origins(List(TestAuthenticator.Defaults.rpId).asJava)
+        .preferredPubkeyParams(Nil.asJava)
+        .credentialRepository(new UserCredentialRepository(credentials))
+        .build()
+
+      an [IllegalStateException] should be thrownBy unsealedRp.restoreAssertionRequest(TestAuthenticator.createAssertion())
+    }
+
+  }
+
+}
@@ -0,0 +1,54 @@
+package com.yubico.webauthn
+
+import java.nio.ByteBuffer
+import java.nio.ReadOnlyBufferException
+
+import com.yubico.webauthn.data.ByteArray
+import org.junit.runner.RunWith
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+import org.scalatest.junit.JUnitRunner
+
+
+@RunWith(classOf[JUnitRunner])
+class Sha256Spec extends FunSpec with Matchers {
+
+  private val reference = new BouncyCastleCrypto
+
+  describe("Sha256") {
+
+    it("gives the FIPS 180-2 test vector.") {
+      Sha256.hash("abc") should equal (ByteArray.fromHex("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad"))
+    }
+
+    it("computes the same hashes as BouncyCastleCrypto.") {
+      for { length <- List(0, 1, 55, 56, 64, 1000) } {
+        val bytes = new ByteArray(Array.tabulate[Byte](length)(_.toByte))
+        Sha256.hash(bytes) should equal (reference.hash(bytes))
+      }
+    }
+
+    it("hashes strings as UTF-8 regardless of the platform default charset.") {
+      Sha256.hash("räksmörgås.example.org") should equal (reference.hash(new ByteArray("räksmörgås.example.org".getBytes("UTF-8"))))
+    }
+
+    it("hashes slices of buffers as if they were concatenated.") {
+      val whole = new ByteArray("Hello, World!".getBytes("UTF-8"))
+      val buffer = ByteBuffer.wrap("xxHello, World!xx".getBytes("UTF-8"))
+      val head = buffer.duplicate(); head.position(2); head.limit(7)
+      val tail = buffer.duplicate(); tail.position(7); tail.limit(15)
+
+      Sha256.hash(head.slice(), tail.slice()) should equal (reference.hash(whole))
+    }
+
+    it("does not modify the hashed ByteArray.") {
+      val bytes = new ByteArray("Hello, World!".getBytes("UTF-8"))
+      Sha256.hash(bytes)
+      Sha256.hash(bytes) should equal (reference.hash(bytes))
+      bytes.getBytes should equal ("Hello, World!".getBytes("UTF-8"))
+      a [ReadOnlyBufferException] should be thrownBy bytes.asByteBuffer().put(0: Byte)
+    }
+
+  }
+
+}
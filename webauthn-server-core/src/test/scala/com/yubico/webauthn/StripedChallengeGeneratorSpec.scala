@@ -0,0 +1,77 @@
+package com.yubico.webauthn
+
+import java.time.Duration
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+import com.yubico.webauthn.data.ByteArray
+import org.junit.runner.RunWith
+import org.scalatest.FunSpec
+import org.scalatest.Matchers
+import org.scalatest.junit.JUnitRunner
+
+import scala.collection.JavaConverters._
+
+
+@RunWith(classOf[JUnitRunner])
+class StripedChallengeGeneratorSpec extends FunSpec with Matchers {
+
+  describe("StripedChallengeGenerator") {
+
+    it("generates 32-byte challenges by default.") {
+      StripedChallengeGenerator.builder().build().generateChallenge().size should equal (32)
+    }
+
+    it("generates challenges of the configured length.") {
+      StripedChallengeGenerator.builder().challengeLength(64).build().generateChallenge().size should equal (64)
+    }
+
+    it("does not repeat challenges across several blocks.") {
+      val generator = StripedChallengeGenerator.builder().stripes(1).challengesPerBlock(8).build()
+      val challenges = List.fill(1000)(generator.generateChallenge())
+
+      challenges.distinct.size should equal (1000)
+    }
+
+    it("keeps generating distinct challenges across reseeds.") {
+      val clock = new MutableClock
+      val generator = StripedChallengeGenerator.builder()
+        .stripes(1)
+        .challengesPerBlock(4)
+        .reseedInterval(Duration.ofMinutes(1))
+        .clock(clock)
+        .build()
+
+      val challenges = (1 to 100) flatMap { _ =>
+        clock.advance(Duration.ofSeconds(30))
+        List.fill(5)(generator.generateChallenge())
+      }
+
+      challenges.distinct.size should equal (500)
+    }
+
+    it("generates distinct challenges when called from many threads at once.") {
+      val executor = Executors.newFixedThreadPool(16)
+      try {
+        val generator = StripedChallengeGenerator.builder().stripes(4).challengesPerBlock(16).build()
+        val tasks: java.util.List[Callable[List[ByteArray]]] = List.fill(16)(new Callable[List[ByteArray]] {
+          override def call(): List[ByteArray] = List.fill(1000)(generator.generateChallenge())
+        }).asJava
+
+        val challenges = executor.invokeAll(tasks).asScala.flatMap(_.get)
+        challenges.distinct.size should equal (16000)
+      } finally {
+        executor.shutdown()
+      }
+    }
+
+    it("rejects invalid settings.") {
+      an [IllegalArgumentException] should be thrownBy StripedChallengeGenerator.builder().stripes(0).build()
+      an [IllegalArgumentException] should be thrownBy StripedChallengeGenerator.builder().challengeLength(8).build()
+      an [IllegalArgumentException] should be thrownBy StripedChallengeGenerator.builder().challengesPerBlock(0).build()
+      an [IllegalArgumentException] should be thrownBy StripedChallengeGenerator.builder().reseedInterval(Duration.ZERO).build()
+    }
+
+  }
+
+}
@@ -5,6 +5,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.yubico.webauthn.CredentialRepository;
+import com.yubico.webauthn.PublicKeyCache;
 import com.yubico.webauthn.data.AssertionResult;
 import com.yubico.webauthn.data.ByteArray;
 import com.yubico.webauthn.data.PublicKeyCredentialDescriptor;
@@ -34,6 +35,8 @@ public class InMemoryRegistrationStorage implements RegistrationStorage, Credent
         .expireAfterAccess(1, TimeUnit.DAYS)
         .build();
 
+    private final PublicKeyCache publicKeys = PublicKeyCache.builder().build();
+
     private Logger logger = LoggerFactory.getLogger(InMemoryRegistrationStorage.class);
 
     @Override
@@ -115,6 +118,7 @@ public class InMemoryRegistrationStorage implements RegistrationStorage, Credent
     @Override
     public boolean removeRegistrationByUsername(String username, CredentialRegistration credentialRegistration) {
         try {
+            publicKeys.invalidate(credentialRegistration.getRegistration().getKeyId().getId());
             return storage.get(username, HashSet::new).remove(credentialRegistration);
         } catch (ExecutionException e) {
             logger.error("Failed to remove registration", e);
@@ -124,6 +128,9 @@ public class InMemoryRegistrationStorage implements RegistrationStorage, Credent
 
     @Override
     public boolean removeAllRegistrations(String username) {
+        getRegistrationsByUsername(username).forEach(registration ->
+            publicKeys.invalidate(registration.getRegistration().getKeyId().getId())
+        );
         storage.invalidate(username);
         return true;
     }
@@ -141,7 +148,7 @@ public class InMemoryRegistrationStorage implements RegistrationStorage, Credent
             final PublicKey key;
 
             try {
-                key = WebAuthnCodecs.importCoseP256PublicKey(cose);
+                key = publicKeys.importCoseP256PublicKey(credentialId, cose);
             } catch (CoseException | IOException e) {
                 String coseString;
                 try {
@@ -176,7 +183,7 @@ public class InMemoryRegistrationStorage implements RegistrationStorage, Credent
                         return RegisteredCredential.builder()
                             .credentialId(reg.getRegistration().getKeyId().getId())
                             .userHandle(reg.getUserIdentity().getId())
-                            .publicKey(WebAuthnCodecs.importCoseP256PublicKey(reg.getRegistration().getPublicKeyCose()))
+                            .publicKey(publicKeys.importCoseP256PublicKey(reg.getRegistration().getKeyId().getId(), reg.getRegistration().getPublicKeyCose()))
                             .signatureCount(reg.getSignatureCount())
                             .build();
                     } catch (CoseException | IOException e) {
@@ -3,20 +3,20 @@ package demo.webauthn;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Charsets;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.io.CharStreams;
 import com.google.common.io.Closeables;
 import com.yubico.internal.util.CertificateParser;
 import com.yubico.internal.util.WebAuthnCodecs;
 import com.yubico.util.Either;
+import com.yubico.webauthn.CeremonyStateStore;
 import com.yubico.webauthn.ChallengeGenerator;
 import com.yubico.webauthn.FinishAssertionOptions;
 import com.yubico.webauthn.FinishRegistrationOptions;
-import com.yubico.webauthn.RandomChallengeGenerator;
+import com.yubico.webauthn.InMemoryCeremonyStateStore;
 import com.yubico.webauthn.RelyingParty;
 import com.yubico.webauthn.StartAssertionOptions;
 import com.yubico.webauthn.StartRegistrationOptions;
+import com.yubico.webauthn.StripedChallengeGenerator;
 import com.yubico.webauthn.attestation.Attestation;
 import com.yubico.webauthn.attestation.MetadataResolver;
 import com.yubico.webauthn.attestation.MetadataService;
@@ -50,12 +50,12 @@ import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.time.Clock;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import lombok.NonNull;
@@ -66,12 +66,12 @@ import org.slf4j.LoggerFactory;
 public class WebAuthnServer {
     private static final Logger logger = LoggerFactory.getLogger(WebAuthnServer.class);
 
-    private final Cache<ByteArray, AssertionRequest> assertRequestStorage;
-    private final Cache<ByteArray, RegistrationRequest> registerRequestStorage;
+    private final CeremonyStateStore<ByteArray, AssertionRequest> assertRequestStorage;
+    private final CeremonyStateStore<ByteArray, RegistrationRequest> registerRequestStorage;
     private final RegistrationStorage userStorage;
-    private final Cache<AssertionRequest, AuthenticatedAction> authenticatedActions = newCache();
+    private final CeremonyStateStore<AssertionRequest, AuthenticatedAction> authenticatedActions = newStore();
 
-    private final ChallengeGenerator challengeGenerator = new RandomChallengeGenerator();
+    private final ChallengeGenerator challengeGenerator = StripedChallengeGenerator.builder().build();
 
     private final MetadataService metadataService = new StandardMetadataService(
         new CompositeResolver(Arrays.asList(
@@ -86,10 +86,10 @@ public class WebAuthnServer {
     private final RelyingParty rp;
 
     public WebAuthnServer() throws InvalidAppIdException {
-        this(new InMemoryRegistrationStorage(), newCache(), newCache(), Config.getRpIdentity(), Config.getOrigins(), Config.getAppId());
+        this(new InMemoryRegistrationStorage(), newStore(), newStore(), Config.getRpIdentity(), Config.getOrigins(), Config.getAppId());
     }
 
-    public WebAuthnServer(RegistrationStorage userStorage, Cache<ByteArray, RegistrationRequest> registerRequestStorage, Cache<ByteArray, AssertionRequest> assertRequestStorage, RelyingPartyIdentity rpIdentity, List<String> origins, Optional<AppId> appId) throws InvalidAppIdException {
+    public WebAuthnServer(RegistrationStorage userStorage, CeremonyStateStore<ByteArray, RegistrationRequest> registerRequestStorage, CeremonyStateStore<ByteArray, AssertionRequest> assertRequestStorage, RelyingPartyIdentity rpIdentity, List<String> origins, Optional<AppId> appId) throws InvalidAppIdException {
         this.userStorage = userStorage;
         this.registerRequestStorage = registerRequestStorage;
         this.assertRequestStorage = assertRequestStorage;
@@ -127,10 +127,9 @@ public class WebAuthnServer {
         return resolver;
     }
 
-    private static <K, V> Cache<K, V> newCache() {
-        return CacheBuilder.newBuilder()
-            .maximumSize(100)
-            .expireAfterAccess(10, TimeUnit.MINUTES)
+    private static <K, V> CeremonyStateStore<K, V> newStore() {
+        return InMemoryCeremonyStateStore.<K, V>builder()
+            .timeToLive(Duration.ofMinutes(10))
             .build();
     }
 
@@ -275,8 +274,7 @@ public class WebAuthnServer {
             return Either.left(Arrays.asList("Registration failed!", "Failed to decode response object.", e.getMessage()));
         }
 
-        RegistrationRequest request = registerRequestStorage.getIfPresent(response.getRequestId());
-        registerRequestStorage.invalidate(response.getRequestId());
+        RegistrationRequest request = registerRequestStorage.take(response.getRequestId()).orElse(null);
 
         if (request == null) {
             logger.debug("fail finishRegistration responseJson: {}", responseJson);
@@ -335,8 +333,7 @@ public class WebAuthnServer {
             return Either.left(Arrays.asList("Registration failed!", "Failed to decode response object.", e.getMessage()));
         }
 
-        RegistrationRequest request = registerRequestStorage.getIfPresent(response.getRequestId());
-        registerRequestStorage.invalidate(response.getRequestId());
+        RegistrationRequest request = registerRequestStorage.take(response.getRequestId()).orElse(null);
 
         if (request == null) {
             logger.debug("fail insecureFinishU2fRegistration responseJson: {}", responseJson);
@@ -424,8 +421,7 @@ public class WebAuthnServer {
             return Either.left(Arrays.asList("Assertion failed!", "Failed to decode response object.", e.getMessage()));
         }
 
-        AssertionRequest request = assertRequestStorage.getIfPresent(response.getRequestId());
-        assertRequestStorage.invalidate(response.getRequestId());
+        AssertionRequest request = assertRequestStorage.take(response.getRequestId()).orElse(null);
 
         if (request == null) {
             return Either.left(Arrays.asList("Assertion failed!", "No such assertion in progress."));
@@ -474,9 +470,7 @@ public class WebAuthnServer {
     public Either<List<String>, AssertionRequest> startAuthenticatedAction(Optional<String> username, AuthenticatedAction<?> action) {
         return startAuthentication(username)
             .map(request -> {
-                synchronized (authenticatedActions) {
-                    authenticatedActions.put(request, action);
-                }
+                authenticatedActions.put(request, action);
                 return request;
             });
     }
@@ -484,8 +478,7 @@ public class WebAuthnServer {
     public Either<List<String>, ?> finishAuthenticatedAction(String responseJson) {
         return finishAuthentication(responseJson)
             .flatMap(result -> {
-                AuthenticatedAction<?> action = authenticatedActions.getIfPresent(result.request);
-                authenticatedActions.invalidate(result.request);
+                AuthenticatedAction<?> action = authenticatedActions.take(result.request).orElse(null);
                 if (action == null) {
                     return Either.left(Collections.singletonList(
                         "No action was associated with assertion request ID: " + result.getRequest().getRequestId()
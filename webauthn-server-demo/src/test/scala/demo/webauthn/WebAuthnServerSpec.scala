@@ -4,12 +4,11 @@ import java.util
 import java.security.KeyPair
 import java.time.Instant
 import java.util.Optional
-import java.util.concurrent.TimeUnit
 
-import com.google.common.cache.Cache
-import com.google.common.cache.CacheBuilder
 import com.yubico.internal.util.WebAuthnCodecs
 import com.yubico.internal.util.scala.JavaConverters._
+import com.yubico.webauthn.CeremonyStateStore
+import com.yubico.webauthn.InMemoryCeremonyStateStore
 import com.yubico.webauthn.RegistrationTestData
 import com.yubico.webauthn.TestAuthenticator
 import com.yubico.webauthn.RegisteredCredential
@@ -121,7 +120,7 @@ class WebAuthnServerSpec extends FunSpec with Matchers {
       }
 
       def newServerWithAuthenticationRequest(testData: RegistrationTestData) = {
-        val assertionRequests: Cache[ByteArray, AssertionRequest] = newCache()
+        val assertionRequests: CeremonyStateStore[ByteArray, AssertionRequest] = newStore()
 
         assertionRequests.put(requestId, new AssertionRequest(
             requestId,
@@ -145,7 +144,7 @@ class WebAuthnServerSpec extends FunSpec with Matchers {
           .build()
         ).asJava)
 
-        new WebAuthnServer(userStorage, newCache(), assertionRequests, rpId, origins, appId)
+        new WebAuthnServer(userStorage, newStore(), assertionRequests, rpId, origins, appId)
       }
     }
 
@@ -156,7 +155,7 @@ class WebAuthnServerSpec extends FunSpec with Matchers {
   private def newServerWithUser(testData: RegistrationTestData) = {
     val userStorage: RegistrationStorage = makeUserStorage(testData)
 
-    new WebAuthnServer(userStorage, newCache(), newCache(), rpId, origins, appId)
+    new WebAuthnServer(userStorage, newStore(), newStore(), rpId, origins, appId)
   }
 
   private def makeUserStorage(testData: RegistrationTestData) = {
@@ -190,7 +189,7 @@ class WebAuthnServerSpec extends FunSpec with Matchers {
   }
 
   private def newServerWithRegistrationRequest(testData: RegistrationTestData) = {
-    val registrationRequests: Cache[ByteArray, RegistrationRequest] = newCache()
+    val registrationRequests: CeremonyStateStore[ByteArray, RegistrationRequest] = newStore()
 
     registrationRequests.put(requestId, new RegistrationRequest(
       testData.userId.getName,
@@ -199,13 +198,10 @@ class WebAuthnServerSpec extends FunSpec with Matchers {
       testData.request
     ))
 
-    new WebAuthnServer(new InMemoryRegistrationStorage, registrationRequests, newCache(), rpId, origins, appId)
+    new WebAuthnServer(new InMemoryRegistrationStorage, registrationRequests, newStore(), rpId, origins, appId)
   }
 
-  private def newCache[K <: Object, V <: Object](): Cache[K, V] =
-    CacheBuilder.newBuilder()
-      .maximumSize(100)
-      .expireAfterAccess(10, TimeUnit.MINUTES)
-      .build()
+  private def newStore[K <: Object, V <: Object](): CeremonyStateStore[K, V] =
+    InMemoryCeremonyStateStore.builder[K, V]().build()
 
 }
@@ -0,0 +1,245 @@
+package com.yubico.internal.util;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ * Emits Java Flight Recorder events through the <code>jdk.jfr</code> API when the running JVM has it, without
+ * depending on it at compile time.
+ * <p>
+ * Event types are created with <code>jdk.jfr.EventFactory</code>. On a JVM without <code>jdk.jfr</code>, every {@link
+ * EventType} is a no-op, and so is every {@link EventType#begin()} while no recording has the event type enabled:
+ * {@link Event#NONE} is returned, and nothing is allocated.
+ * <p>
+ * The methods called for every event are invoked through {@link MethodHandle}s with primitive return types, so that
+ * checking whether an event type is enabled does not go through reflection or box the result.
+ */
+@Slf4j
+public final class FlightRecorder {
+
+    private static final Api API = Api.load();
+
+    private FlightRecorder() {
+    }
+
+    /**
+     * @return <code>true</code> if the running JVM has the <code>jdk.jfr</code> API.
+     */
+    public static boolean isAvailable() {
+        return API != null;
+    }
+
+    /**
+     * Create an event type. Event types should be created once and kept in a static field.
+     *
+     * @param name the event name, for example <code>com.example.Thing</code>.
+     * @param label a human-readable name.
+     * @param category the category the event is shown under in JDK Mission Control.
+     * @param fields the names and types of the event's fields, in order. Types must be primitives or {@link String}.
+     */
+    public static EventType eventType(String name, String label, String category, Map<String, Class<?>> fields) {
+        if (API == null) {
+            return EventType.DISABLED;
+        }
+
+        try {
+            final List<Object> annotations = new ArrayList<>();
+            annotations.add(API.annotationElement.newInstance(API.nameAnnotation, name));
+            annotations.add(API.annotationElement.newInstance(API.labelAnnotation, label));
+            annotations.add(API.annotationElement.newInstance(API.categoryAnnotation, (Object) new String[] { category }));
+            annotations.add(API.annotationElement.newInstance(API.stackTraceAnnotation, false));
+
+            final List<Object> descriptors = new ArrayList<>(fields.size());
+            final Map<String, Integer> indices = new HashMap<>(fields.size() * 2);
+            for (Map.Entry<String, Class<?>> field : fields.entrySet()) {
+                indices.put(field.getKey(), descriptors.size());
+                descriptors.add(API.valueDescriptor.newInstance(field.getValue(), field.getKey()));
+            }
+
+            final Object factory = API.create.invoke(null, annotations, descriptors);
+            return new EventType(
+                API.isEnabled.bindTo(API.getEventType.invoke(factory)),
+                API.newEvent.bindTo(factory),
+                indices
+            );
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Failed to create flight recorder event type {}", name, e);
+            return EventType.DISABLED;
+        }
+    }
+
+    public static final class EventType {
+        private static final EventType DISABLED = new EventType(null, null, Collections.emptyMap());
+
+        /**
+         * <code>jdk.jfr.EventType.isEnabled()</code> bound to this event type, of type <code>()boolean</code>.
+         */
+        private final MethodHandle isEnabled;
+
+        /**
+         * <code>jdk.jfr.EventFactory.newEvent()</code> bound to this event type's factory, of type
+         * <code>()Object</code>.
+         */
+        private final MethodHandle newEvent;
+
+        private final Map<String, Integer> indices;
+
+        private EventType(MethodHandle isEnabled, MethodHandle newEvent, Map<String, Integer> indices) {
+            this.isEnabled = isEnabled;
+            this.newEvent = newEvent;
+            this.indices = indices;
+        }
+
+        /**
+         * Begin timing a new event of this type.
+         *
+         * @return the new event, or {@link Event#NONE} if no recording has this event type enabled.
+         */
+        public Event begin() {
+            if (isEnabled == null) {
+                return Event.NONE;
+            }
+            try {
+                if (!(boolean) isEnabled.invokeExact()) {
+                    return Event.NONE;
+                }
+                final Object event = (Object) newEvent.invokeExact();
+                API.begin.invokeExact(event);
+                return new Event(this, event);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                log.debug("Failed to begin flight recorder event", e);
+                return Event.NONE;
+            }
+        }
+    }
+
+    public static final class Event {
+        /**
+         * An event that is never recorded.
+         */
+        public static final Event NONE = new Event(null, null);
+
+        private final EventType type;
+        private final Object event;
+
+        private Event(EventType type, Object event) {
+            this.type = type;
+            this.event = event;
+        }
+
+        /**
+         * Set the field named <code>field</code>. Unknown fields are ignored.
+         *
+         * @return this event.
+         */
+        public Event set(String field, Object value) {
+            if (event != null) {
+                final Integer index = type.indices.get(field);
+                if (index != null) {
+                    try {
+                        API.set.invokeExact(event, index.intValue(), value);
+                    } catch (Error e) {
+                        throw e;
+                    } catch (Throwable e) {
+                        log.debug("Failed to set flight recorder event field {}", field, e);
+                    }
+                }
+            }
+            return this;
+        }
+
+        /**
+         * End timing this event and write it to the recordings that have it enabled.
+         */
+        public void commit() {
+            if (event != null) {
+                try {
+                    API.end.invokeExact(event);
+                    if ((boolean) API.shouldCommit.invokeExact(event)) {
+                        API.commit.invokeExact(event);
+                    }
+                } catch (Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    log.debug("Failed to commit flight recorder event", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * The parts of the <code>jdk.jfr</code> API used here. The method handles take the receiver as an {@link Object}
+     * so that they can be invoked exactly without referring to the <code>jdk.jfr</code> types.
+     */
+    private static final class Api {
+        private Method create;
+        private Method getEventType;
+        private MethodHandle newEvent;
+        private MethodHandle isEnabled;
+        private MethodHandle begin;
+        private MethodHandle end;
+        private MethodHandle set;
+        private MethodHandle shouldCommit;
+        private MethodHandle commit;
+        private Constructor<?> annotationElement;
+        private Constructor<?> valueDescriptor;
+        private Class<? extends Annotation> nameAnnotation;
+        private Class<? extends Annotation> labelAnnotation;
+        private Class<? extends Annotation> categoryAnnotation;
+        private Class<? extends Annotation> stackTraceAnnotation;
+
+        /**
+         * @return the API, or <code>null</code> if it is not available.
+         */
+        private static Api load() {
+            try {
+                final Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+                final Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType");
+                final Class<?> eventClass = Class.forName("jdk.jfr.Event");
+                final Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+
+                final MethodType toVoid = MethodType.methodType(void.class, Object.class);
+                final MethodType toBoolean = MethodType.methodType(boolean.class, Object.class);
+
+                final Api api = new Api();
+                api.create = eventFactoryClass.getMethod("create", List.class, List.class);
+                api.getEventType = eventFactoryClass.getMethod("getEventType");
+                api.newEvent = handle(eventFactoryClass.getMethod("newEvent"), MethodType.methodType(Object.class, Object.class));
+                api.isEnabled = handle(eventTypeClass.getMethod("isEnabled"), toBoolean);
+                api.begin = handle(eventClass.getMethod("begin"), toVoid);
+                api.end = handle(eventClass.getMethod("end"), toVoid);
+                api.set = handle(eventClass.getMethod("set", int.class, Object.class), MethodType.methodType(void.class, Object.class, int.class, Object.class));
+                api.shouldCommit = handle(eventClass.getMethod("shouldCommit"), toBoolean);
+                api.commit = handle(eventClass.getMethod("commit"), toVoid);
+                api.annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+                api.valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class);
+                api.nameAnnotation = Class.forName("jdk.jfr.Name").asSubclass(Annotation.class);
+                api.labelAnnotation = Class.forName("jdk.jfr.Label").asSubclass(Annotation.class);
+                api.categoryAnnotation = Class.forName("jdk.jfr.Category").asSubclass(Annotation.class);
+                api.stackTraceAnnotation = Class.forName("jdk.jfr.StackTrace").asSubclass(Annotation.class);
+                return api;
+            } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+                log.debug("Java Flight Recorder API not available; flight recorder events are disabled.", e);
+                return null;
+            }
+        }
+
+        private static MethodHandle handle(Method method, MethodType type) throws IllegalAccessException {
+            return MethodHandles.publicLookup().unreflect(method).asType(type);
+        }
+    }
+
+}
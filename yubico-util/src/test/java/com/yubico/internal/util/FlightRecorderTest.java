@@ -0,0 +1,60 @@
+package com.yubico.internal.util;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeTrue;
+
+public class FlightRecorderTest {
+
+    private static final FlightRecorder.EventType EVENT_TYPE = FlightRecorder.eventType(
+        "com.yubico.internal.util.FlightRecorderTest",
+        "Flight Recorder Test",
+        "Test",
+        ImmutableMap.of(
+            "outcome", String.class,
+            "length", int.class
+        )
+    );
+
+    @Test
+    public void isAvailableIffJvmHasFlightRecorderApi() {
+        boolean hasApi;
+        try {
+            Class.forName("jdk.jfr.EventFactory");
+            hasApi = true;
+        } catch (ClassNotFoundException e) {
+            hasApi = false;
+        }
+        assertEquals(hasApi, FlightRecorder.isAvailable());
+    }
+
+    @Test
+    public void beginReturnsNoneWhenNotRecording() {
+        final FlightRecorder.Event event = EVENT_TYPE.begin();
+        assertSame(FlightRecorder.Event.NONE, event);
+        event.set("outcome", "SUCCESS").set("length", 16).commit();
+    }
+
+    @Test
+    public void beginReturnsEventWhenRecording() throws Exception {
+        assumeTrue(FlightRecorder.isAvailable());
+
+        // Use reflection so that this test compiles without the flight recorder API
+        final Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        final Object recording = recordingClass.newInstance();
+        recordingClass.getMethod("enable", String.class).invoke(recording, "com.yubico.internal.util.FlightRecorderTest");
+        recordingClass.getMethod("start").invoke(recording);
+        try {
+            final FlightRecorder.Event event = EVENT_TYPE.begin();
+            assertNotSame(FlightRecorder.Event.NONE, event);
+            event.set("outcome", "SUCCESS").set("length", 16).set("unknown", true).commit();
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+        }
+    }
+
+}